@@ -0,0 +1,34 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point of the benchmarks JAR. Accepts the same arguments as the JMH
+ * command line runner, but excludes the end-to-end benchmarks in
+ * {@link XvfbLifecycleBenchmark} if Xvfb is not installed, so that
+ * the CPU-only benchmarks can run anywhere.
+ */
+public class BenchmarksMain {
+
+    public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListProfilers()
+                || cmdOptions.shouldListResultFormats() || cmdOptions.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+        if (!XvfbLifecycleBenchmark.isXvfbInstalled()) {
+            System.err.println("Xvfb not found; excluding end-to-end benchmarks");
+            options.exclude(XvfbLifecycleBenchmark.class.getName());
+        }
+        new Runner(options.build()).run();
+    }
+}
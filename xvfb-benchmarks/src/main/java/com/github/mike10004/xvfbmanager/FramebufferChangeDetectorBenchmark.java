@@ -0,0 +1,79 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a change-detection scan of a memory-mapped 1920x1080 32-bit
+ * framebuffer file (about 8 MB) in which nothing changed. Runs without X.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramebufferChangeDetectorBenchmark {
+
+    private static final int WIDTH = 1920, HEIGHT = 1080;
+
+    @Param({"16", "64"})
+    public int tileSize;
+
+    private File framebufferFile;
+    private FramebufferChangeDetector detector;
+
+    @Setup
+    public void createFramebuffer() throws IOException {
+        int bytesPerLine = WIDTH * 4;
+        String name = "bench\0";
+        int headerSize = XwdHeader.FIXED_SIZE + name.length();
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(headerSize).putInt(XwdHeader.VERSION).putInt(XwdHeader.Z_PIXMAP).putInt(24)
+                .putInt(WIDTH).putInt(HEIGHT).putInt(0).putInt(XwdHeader.LSB_FIRST)
+                .putInt(32).putInt(XwdHeader.LSB_FIRST).putInt(32).putInt(32).putInt(bytesPerLine)
+                .putInt(XwdHeader.TRUE_COLOR).putInt(0xff0000).putInt(0xff00).putInt(0xff)
+                .putInt(8).putInt(256).putInt(0)
+                .putInt(WIDTH).putInt(HEIGHT).putInt(0).putInt(0).putInt(0);
+        for (char c : name.toCharArray()) {
+            header.put((byte) c);
+        }
+        byte[] pixels = new byte[bytesPerLine * HEIGHT];
+        new Random(WIDTH).nextBytes(pixels);
+        framebufferFile = File.createTempFile("Xvfb_screen", ".xwd");
+        try (RandomAccessFile file = new RandomAccessFile(framebufferFile, "rw")) {
+            file.write(header.array());
+            file.write(pixels);
+        }
+        detector = new FramebufferChangeDetector(FramebufferReader.open(framebufferFile), null, tileSize, tileSize);
+        detector.scan((x, y, width, height) -> {});
+    }
+
+    @TearDown
+    public void deleteFramebuffer() {
+        //noinspection ResultOfMethodCallIgnored
+        framebufferFile.delete();
+    }
+
+    @Benchmark
+    public int scan() {
+        return detector.scan((x, y, width, height) -> {});
+    }
+}
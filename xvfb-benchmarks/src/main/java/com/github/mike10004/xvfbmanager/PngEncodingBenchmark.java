@@ -0,0 +1,67 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of sequential and parallel PNG encoding of a synthetic 4K screen.
+ * Runs without X.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngEncodingBenchmark {
+
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+
+    @Param({"1", "-1"})
+    public int deflateLevel;
+
+    @Param({"SUB", "ADAPTIVE"})
+    public PngEncoder.Filter filter;
+
+    private int[] pixels;
+    private PngEncoder sequential;
+    private ParallelPngEncoder parallel;
+
+    @Setup
+    public void createImage() {
+        BufferedImage image = PnmToPngConversionBenchmark.createSyntheticImage(WIDTH, HEIGHT);
+        pixels = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        sequential = new PngEncoder(deflateLevel, filter);
+        parallel = new ParallelPngEncoder(deflateLevel, filter, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public void sequential() throws IOException {
+        try (PngEncoder.RowWriter writer = sequential.begin(WIDTH, HEIGHT, ByteStreams.nullOutputStream())) {
+            for (int y = 0; y < HEIGHT; y++) {
+                writer.writeRow(pixels, y * WIDTH);
+            }
+            writer.finish();
+        }
+    }
+
+    @Benchmark
+    public void parallel() throws IOException {
+        parallel.encode(pixels, WIDTH, HEIGHT, ByteStreams.nullOutputStream());
+    }
+}
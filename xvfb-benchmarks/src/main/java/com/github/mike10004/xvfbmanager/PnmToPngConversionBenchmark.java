@@ -0,0 +1,101 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteSource;
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the PNM-to-PNG step of {@link XwdFileToPngConverter}, which
+ * runs in-process after {@code xwdtopnm} has produced a PNM file. Runs without X.
+ * The {@code example} input is the small fixture image; the {@code 1280x1024}
+ * input is a synthetic image the size of the default screen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PnmToPngConversionBenchmark {
+
+    @Param({"example", "1280x1024"})
+    public String input;
+
+    private XwdFileToPngConverter converter;
+    private ByteSource pnm;
+
+    @Setup
+    public void createFixture() throws IOException {
+        converter = new XwdFileToPngConverter(new BasicProcessTracker(), Paths.get(System.getProperty("java.io.tmpdir")));
+        BufferedImage image;
+        if ("example".equals(input)) {
+            image = ImageIO.read(getClass().getResource("/example.jpg"));
+        } else {
+            String[] dims = input.split("x");
+            image = createSyntheticImage(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        }
+        pnm = ByteSource.wrap(toPpm(image));
+    }
+
+    @Benchmark
+    public byte[] convertPnmToPng() throws IOException {
+        return converter.convertPnmToPng(pnm);
+    }
+
+    /**
+     * Creates an image with gradients and flat regions, which compresses
+     * more like a screen capture than random noise does.
+     */
+    static BufferedImage createSyntheticImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb;
+                if ((y / 64) % 2 == 0) {
+                    rgb = ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | 0x80;
+                } else {
+                    rgb = (x / 128) % 2 == 0 ? 0xf0f0f0 : 0x202020;
+                }
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encodes an image as a binary PPM, which is what {@code xwdtopnm} produces.
+     */
+    static byte[] toPpm(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        byte[] header = String.format("P6\n%d %d\n255\n", width, height).getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(header.length + width * height * 3);
+        out.write(header, 0, header.length);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                out.write((rgb >> 16) & 0xff);
+                out.write((rgb >> 8) & 0xff);
+                out.write(rgb & 0xff);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.mike10004.xvfbmanager;
+
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks that start real Xvfb processes. These require Xvfb
+ * and the X utilities ({@code xdpyinfo}, {@code xwdtopnm}) to be installed;
+ * {@link BenchmarksMain} excludes them if Xvfb is not found.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XvfbLifecycleBenchmark {
+
+    /**
+     * Checks whether the end-to-end benchmarks can run in this environment.
+     * @return true if the Xvfb executable is found
+     */
+    static boolean isXvfbInstalled() {
+        try {
+            XvfbManager.resolveXvfbExecutable();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Manager {
+
+        XvfbManager manager;
+
+        @Setup
+        public void setUp() {
+            if (!isXvfbInstalled()) {
+                throw new IllegalStateException("Xvfb must be installed to run end-to-end benchmarks");
+            }
+            manager = new XvfbManager();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RunningDisplay {
+
+        XvfbController controller;
+        XwdFileToPngConverter converter;
+        Screenshot screenshot;
+        ByteBuffer reusableBuffer;
+
+        @Setup
+        public void setUp(Manager manager) throws IOException, InterruptedException {
+            controller = manager.manager.start();
+            controller.waitUntilReady();
+            converter = new XwdFileToPngConverter(new BasicProcessTracker(), Paths.get(System.getProperty("java.io.tmpdir")));
+            screenshot = controller.getScreenshooter().capture();
+        }
+
+        @TearDown
+        public void tearDown() {
+            if (controller != null) {
+                controller.stop();
+            }
+            deleteScreenshot(screenshot);
+        }
+    }
+
+    private static void deleteScreenshot(Screenshot screenshot) {
+        if (screenshot instanceof XwdFileScreenshot) {
+            File file = ((XwdFileScreenshot) screenshot).asByteSource().file;
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Measures {@link XvfbManager#start()} followed by {@link XvfbController#waitUntilReady()},
+     * including the stop at the end of each invocation.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 20)
+    public String startAndWaitUntilReady(Manager manager) throws IOException, InterruptedException {
+        try (XvfbController controller = manager.manager.start()) {
+            controller.waitUntilReady();
+            return controller.getDisplay();
+        }
+    }
+
+    /**
+     * Measures capture of a screenshot by the controller's screenshooter, which
+     * by default copies the framebuffer file.
+     */
+    @Benchmark
+    public long capture(RunningDisplay display) throws IOException {
+        Screenshot screenshot = display.controller.getScreenshooter().capture();
+        try {
+            return screenshot.asByteSource().size();
+        } finally {
+            deleteScreenshot(screenshot);
+        }
+    }
+
+    /**
+     * Measures capture of a screenshot into a reused buffer through the memory-mapped
+     * framebuffer file, for comparison with {@link #capture(RunningDisplay)}.
+     */
+    @Benchmark
+    public int captureToBuffer(RunningDisplay display) throws IOException {
+        FramebufferDirScreenshooter screenshooter = (FramebufferDirScreenshooter) display.controller.getScreenshooter();
+        XwdBufferScreenshot screenshot = screenshooter.captureToBuffer(display.reusableBuffer);
+        display.reusableBuffer = screenshot.getBuffer();
+        return display.reusableBuffer.remaining();
+    }
+
+    /**
+     * Measures conversion of a screenshot to PNG, including the {@code xwdtopnm} invocation.
+     */
+    @Benchmark
+    public ImageioReadableScreenshot convert(RunningDisplay display) throws IOException {
+        return display.converter.convert(display.screenshot);
+    }
+}
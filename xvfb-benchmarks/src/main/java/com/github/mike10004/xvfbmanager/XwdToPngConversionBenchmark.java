@@ -0,0 +1,70 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Benchmark of in-process decoding of the 1280x1024 XWD fixture and of its
+ * conversion to PNG by {@link XwdToPngConverter}, at a fast and the default
+ * encoder setting. Runs without X.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XwdToPngConversionBenchmark {
+
+    @Param({"1", "-1"})
+    public int deflateLevel;
+
+    @Param({"SUB", "ADAPTIVE"})
+    public PngEncoder.Filter filter;
+
+    private XwdDecoder decoder;
+    private XwdToPngConverter converter;
+    private ByteBuffer xwd;
+    private int[] pixels;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        try (InputStream in = new GZIPInputStream(getClass().getResourceAsStream("/example.xwd.gz"))) {
+            xwd = ByteBuffer.wrap(ByteStreams.toByteArray(in));
+        }
+        decoder = new XwdDecoder();
+        converter = new XwdToPngConverter(decoder, new PngEncoder(deflateLevel, filter));
+    }
+
+    @Benchmark
+    public int[] decodePixels() throws IOException {
+        pixels = decoder.decodePixels(xwd, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public ImageioReadableScreenshot convert() throws IOException {
+        return converter.convert(new XwdBufferScreenshot(xwd));
+    }
+
+    @Benchmark
+    public void convertToStream() throws IOException {
+        converter.convert(new XwdBufferScreenshot(xwd), ByteStreams.nullOutputStream());
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.DefaultXvfbController.XwininfoXwindowParser;
+import com.github.mike10004.xvfbmanager.XvfbController.XWindow;
+import com.google.common.io.CharSource;
+import com.google.common.io.Resources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of parsing the output of {@code xwininfo -tree}, which happens on
+ * every attempt to poll for a window. Runs without X.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XwininfoParsingBenchmark {
+
+    private CharSource xwininfoOutput;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        String text = Resources.toString(getClass().getResource("/xwininfo-output.txt"), StandardCharsets.UTF_8);
+        xwininfoOutput = CharSource.wrap(text);
+    }
+
+    @Benchmark
+    public TreeNode<XWindow> parse() throws IOException {
+        return xwininfoOutput.readLines(new XwininfoXwindowParser());
+    }
+
+    @Benchmark
+    public List<String> parseAndListTopLevelWindows() throws IOException {
+        return DefaultXvfbController.getTopLevelWindowIds(parse());
+    }
+}
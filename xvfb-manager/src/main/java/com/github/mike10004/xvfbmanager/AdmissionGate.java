@@ -0,0 +1,102 @@
+package com.github.mike10004.xvfbmanager;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Gate that limits the number of asynchronous tasks in flight. A task is
+ * admitted immediately if fewer than the maximum number of tasks are in flight;
+ * otherwise it is queued and started when an earlier task completes. No thread
+ * is blocked while a task waits for admission.
+ */
+class AdmissionGate {
+
+    private final int maxInFlight;
+    private final Queue<Runnable> waiting;
+    private int inFlight;
+
+    public AdmissionGate(int maxInFlight) {
+        checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+        waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * Submits a task to the gate. The task supplier is invoked when the task is
+     * admitted, and the task is considered in flight until the supplied future completes.
+     * @param task supplier of the task's future
+     * @param <T> result type
+     * @return a future that is completed with the result of the task's future
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletableFuture<T>> task) {
+        checkNotNull(task);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable admission = () -> start(task, result);
+        boolean admitted;
+        synchronized (this) {
+            admitted = inFlight < maxInFlight;
+            if (admitted) {
+                inFlight++;
+            } else {
+                waiting.add(admission);
+            }
+        }
+        if (admitted) {
+            admission.run();
+        }
+        return result;
+    }
+
+    private <T> void start(Supplier<? extends CompletableFuture<T>> task, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = checkNotNull(task.get(), "task supplied null future");
+        } catch (RuntimeException e) {
+            release();
+            result.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((value, t) -> {
+            release();
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Gets the number of tasks currently in flight.
+     * @return the count of tasks in flight
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of tasks waiting for admission.
+     * @return the count of waiting tasks
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Result of starting many displays at once with {@link XvfbManager#startAll(int, int)}.
+ * Each display has its own future, which is completed with the controller
+ * when the display becomes ready. The {@link #summary() summary} future is completed
+ * when every display is either ready or has failed.
+ */
+public class BatchStart {
+
+    private final ImmutableList<CompletableFuture<XvfbController>> controllers;
+    private final CompletableFuture<Summary> summary;
+
+    BatchStart(List<CompletableFuture<XvfbController>> controllers) {
+        this.controllers = ImmutableList.copyOf(controllers);
+        summary = CompletableFuture.allOf(this.controllers.toArray(new CompletableFuture<?>[0]))
+                .handle((ignore, t) -> summarize(this.controllers));
+    }
+
+    /**
+     * Gets the futures of the controllers, one for each display. A future is completed
+     * when its display is ready, or completed exceptionally if the process could not be
+     * launched or the display never became ready. Displays that never became ready are stopped.
+     * @return list of controller futures
+     */
+    public List<CompletableFuture<XvfbController>> getControllers() {
+        return controllers;
+    }
+
+    /**
+     * Gets a future that is completed with a summary when all displays are ready or have failed.
+     * The future itself is never completed exceptionally.
+     * @return the summary future
+     */
+    public CompletableFuture<Summary> summary() {
+        return summary;
+    }
+
+    private static Summary summarize(List<CompletableFuture<XvfbController>> controllers) {
+        List<XvfbController> ready = new ArrayList<>(controllers.size());
+        List<Throwable> failures = new ArrayList<>();
+        for (CompletableFuture<XvfbController> future : controllers) {
+            try {
+                ready.add(future.join());
+            } catch (CompletionException e) {
+                failures.add(unwrap(e));
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        return new Summary(ready, failures);
+    }
+
+    static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Summary of a batch start.
+     */
+    public static class Summary {
+
+        private final ImmutableList<XvfbController> ready;
+        private final ImmutableList<Throwable> failures;
+
+        private Summary(List<XvfbController> ready, List<Throwable> failures) {
+            this.ready = ImmutableList.copyOf(ready);
+            this.failures = ImmutableList.copyOf(failures);
+        }
+
+        /**
+         * Gets the controllers of the displays that became ready.
+         * @return list of controllers
+         */
+        public List<XvfbController> getReady() {
+            return ready;
+        }
+
+        /**
+         * Gets the exceptions that caused displays to fail to start or become ready.
+         * @return list of exceptions
+         */
+        public List<Throwable> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Checks whether every display in the batch became ready.
+         * @return true iff there were no failures
+         */
+        public boolean isAllReady() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * Throws an exception if any display failed. The first failure is the
+         * cause and the others are suppressed exceptions.
+         * @return this instance
+         * @throws XvfbException if any display failed
+         */
+        public Summary checkAllReady() throws XvfbException {
+            if (!failures.isEmpty()) {
+                XvfbException e = new XvfbException(failures.size() + " of " + (ready.size() + failures.size()) + " displays failed to start", failures.get(0));
+                for (Throwable failure : failures.subList(1, failures.size())) {
+                    e.addSuppressed(checkNotNull(failure));
+                }
+                throw e;
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                    "ready=" + ready.size() +
+                    ", failures=" + failures.size() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Screenshooter that captures into buffers taken from a pool, so that a
+ * buffer the size of the framebuffer is not allocated for every screenshot.
+ * A buffer returns to the pool when its screenshot is {@link #recycle(XwdBufferScreenshot) recycled}.
+ * In a {@link ScreenshotPipeline}, set {@code recycle} as the
+ * {@link ScreenshotPipeline.Builder#disposer(ScreenshotPipeline.Disposer) disposer}.
+ * The pipeline then recycles each screenshot after it has been converted
+ * or dropped.
+ *
+ * <pre>{@code
+ * BufferRecyclingScreenshooter screenshooter = new BufferRecyclingScreenshooter(framebufferDirScreenshooter, 4);
+ * ScreenshotPipeline<XwdBufferScreenshot, ImageioReadableScreenshot> pipeline =
+ *         ScreenshotPipeline.builder(screenshooter, new XwdToPngConverter())
+ *                 .disposer(screenshooter::recycle)
+ *                 .build();
+ * }</pre>
+ */
+public class BufferRecyclingScreenshooter implements Screenshooter<XwdBufferScreenshot> {
+
+    private final FramebufferDirScreenshooter delegate;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    /**
+     * Constructs an instance.
+     * @param delegate the screenshooter that captures into the buffers
+     * @param maxPooledBuffers maximum number of idle buffers kept for reuse;
+     * buffers recycled while the pool is full are left to the garbage collector
+     */
+    public BufferRecyclingScreenshooter(FramebufferDirScreenshooter delegate, int maxPooledBuffers) {
+        this.delegate = checkNotNull(delegate);
+        checkArgument(maxPooledBuffers > 0, "maxPooledBuffers must be positive");
+        pool = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    @Override
+    public XwdBufferScreenshot capture() throws IOException, XvfbException {
+        @Nullable ByteBuffer reuse = pool.poll();
+        return delegate.captureToBuffer(reuse);
+    }
+
+    /**
+     * Returns the buffer of a screenshot to the pool. The screenshot must not
+     * be used afterwards.
+     * @param screenshot a screenshot captured by this instance
+     */
+    public void recycle(XwdBufferScreenshot screenshot) {
+        pool.offer(screenshot.getBuffer());
+    }
+
+    /**
+     * Gets the number of idle buffers in the pool.
+     * @return the count
+     */
+    public int getPooledBufferCount() {
+        return pool.size();
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import io.github.mike10004.subprocess.ProcessTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Process tracker backed by a concurrent set. Unlike {@link ShutdownHookProcessTracker},
+ * adding and removing processes does not acquire a global lock, and the shutdown hook
+ * is registered once, when the first process is added, instead of being added and
+ * removed whenever the set of processes becomes non-empty or empty.
+ *
+ * <p>Processes are destroyed in parallel: all are sent a termination signal at once,
+ * all are awaited against a single deadline, and those still alive at the deadline are
+ * killed forcibly. The time to destroy many processes is therefore bounded by the
+ * timeout, not by the timeout times the number of processes.</p>
+ */
+public class ConcurrentProcessTracker implements ProcessTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentProcessTracker.class);
+
+    /**
+     * Default time in milliseconds that the shutdown hook waits for processes to terminate
+     * before killing them forcibly.
+     */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 1000;
+
+    private static final Supplier<ConcurrentProcessTracker> INSTANCE = Suppliers.memoize(ConcurrentProcessTracker::new);
+
+    private final Set<Process> processes;
+    private final AtomicBoolean shutdownHookAdded;
+    private final Consumer<Thread> shutdownHookRegistrar;
+    private final long shutdownTimeoutMs;
+
+    /**
+     * Constructs an instance whose shutdown hook waits for the default time.
+     */
+    public ConcurrentProcessTracker() {
+        this(DEFAULT_SHUTDOWN_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param shutdownTimeoutMs time in milliseconds that the shutdown hook waits for processes
+     * to terminate before killing them forcibly
+     */
+    public ConcurrentProcessTracker(long shutdownTimeoutMs) {
+        this(shutdownTimeoutMs, hook -> Runtime.getRuntime().addShutdownHook(hook));
+    }
+
+    @VisibleForTesting
+    ConcurrentProcessTracker(long shutdownTimeoutMs, Consumer<Thread> shutdownHookRegistrar) {
+        checkArgument(shutdownTimeoutMs >= 0, "shutdownTimeoutMs must be nonnegative");
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.shutdownHookRegistrar = checkNotNull(shutdownHookRegistrar);
+        processes = ConcurrentHashMap.newKeySet();
+        shutdownHookAdded = new AtomicBoolean(false);
+    }
+
+    /**
+     * Gets the shared instance.
+     * @return the shared instance
+     */
+    public static ConcurrentProcessTracker getInstance() {
+        return INSTANCE.get();
+    }
+
+    @Override
+    public void add(Process process) {
+        checkNotNull(process);
+        if (shutdownHookAdded.compareAndSet(false, true)) {
+            addShutdownHook();
+        }
+        processes.add(process);
+    }
+
+    private void addShutdownHook() {
+        Thread hook = new Thread(() -> {
+            ProcessTeardown.Report report = teardown(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!report.getForceKilledPids().isEmpty()) {
+                System.err.format("processes killed forcibly by shutdown hook: %s%n", report.getForceKilledPids()); //NOSONAR
+            }
+            if (!report.getUndestroyed().isEmpty()) {
+                System.err.format("%d processes still alive after shutdown hook%n", report.getUndestroyed().size()); //NOSONAR
+            }
+        }, "ConcurrentProcessTracker Shutdown Hook");
+        try {
+            shutdownHookRegistrar.accept(hook);
+        } catch (IllegalStateException e) {
+            log.debug("shutdown already in progress; shutdown hook not added");
+        }
+    }
+
+    @Override
+    public boolean remove(Process process) {
+        boolean removed = processes.remove(process);
+        if (!removed) {
+            log.debug("not removed (probably not still in processes set): {}", process);
+        }
+        return removed;
+    }
+
+    @Override
+    public int activeCount() {
+        return processes.size();
+    }
+
+    /**
+     * Destroys all tracked processes. All processes are sent a termination signal, then
+     * awaited until the timeout elapses. Processes still alive at that time are killed forcibly
+     * and awaited for up to the timeout again. Destroyed processes are no longer tracked.
+     * @param timeout time to wait for processes to terminate before killing them forcibly
+     * @param unit unit of the timeout
+     * @return the processes that were still alive after being killed forcibly
+     * @see #teardown(long, TimeUnit)
+     */
+    public List<Process> destroyAll(long timeout, TimeUnit unit) {
+        return teardown(timeout, unit).getUndestroyed();
+    }
+
+    /**
+     * Destroys all tracked processes as described by {@link ProcessTeardown}.
+     * Destroyed processes are no longer tracked.
+     * @param timeout time to wait for processes to terminate before killing them forcibly
+     * @param unit unit of the timeout
+     * @return a report of the teardown, including the IDs of processes that were killed forcibly
+     */
+    public ProcessTeardown.Report teardown(long timeout, TimeUnit unit) {
+        ProcessTeardown.Report report = ProcessTeardown.terminateAll(new ArrayList<>(processes), timeout, unit);
+        List<Process> undestroyed = report.getUndestroyed();
+        report.getProcesses().stream().filter(p -> !undestroyed.contains(p)).forEach(processes::remove);
+        return report;
+    }
+
+    @VisibleForTesting
+    boolean isShutdownHookAdded() {
+        return shutdownHookAdded.get();
+    }
+}
@@ -48,7 +48,8 @@ public class DefaultDisplayReadinessChecker implements XvfbManager.DisplayReadin
      */
     @Override
     public boolean checkReadiness(String display) {
-        ProcessMonitor<String, String> monitor = Subprocess.running("xdpyinfo")
+        long launchNanos = System.nanoTime();
+        ProcessMonitor<String, String> monitor = Subprocess.running(PROG_XDPYINFO)
                 .args("-display", display)
                 .build()
                 .launcher(processTracker)
@@ -56,7 +57,7 @@ public class DefaultDisplayReadinessChecker implements XvfbManager.DisplayReadin
                 .launch();
         ProcessResult<String, String> result;
         try {
-            result = monitor.await();
+            result = HelperMetrics.await(PROG_XDPYINFO, display, launchNanos, monitor);
         } catch (InterruptedException e) {
             log.error("interrupted while waiting for check readiness", e);
             ProcessKilling.termOrKill(monitor.destructor(), XDPYINFO_SIGTERM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
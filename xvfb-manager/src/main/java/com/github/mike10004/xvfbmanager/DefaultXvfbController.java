@@ -19,13 +19,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -45,7 +57,12 @@ public class DefaultXvfbController implements XvfbController {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultXvfbController.class);
 
-    private static final Iterable<String> requiredPrograms = Iterables.concat(XWindowPoller.getRequiredPrograms());
+    private static final String PROG_XWININFO = "xwininfo";
+    private static final String PROG_XKILL = "xkill";
+
+    private static final ImmutableSet<String> resetPrograms = ImmutableSet.of(PROG_XKILL, PROG_XWININFO);
+
+    private static final Iterable<String> requiredPrograms = ImmutableSet.copyOf(Iterables.concat(XWindowPoller.getRequiredPrograms(), resetPrograms));
 
     public static Iterable<String> getRequiredPrograms() {
         return requiredPrograms;
@@ -70,25 +87,66 @@ public class DefaultXvfbController implements XvfbController {
     private final XLockFileChecker lockFileChecker;
     private final Screenshooter<?> screenshooter;
     private final Sleeper sleeper;
+    @Nullable
+    private final CompletableFuture<Integer> displayNumberSignal;
     private final AtomicBoolean abort;
+    private volatile StartupTimings startupTimings;
 
     public DefaultXvfbController(ProcessMonitor<?, ?> xvfbMonitor, String display,
                                  DisplayReadinessChecker displayReadinessChecker,
                                  Screenshooter<?> screenshooter, Sleeper sleeper) {
-        this(xvfbMonitor, display, displayReadinessChecker, screenshooter, sleeper, new PollingXLockFileChecker(LOCK_FILE_CLEANUP_POLL_INTERVAL_MS, sleeper));
+        this(xvfbMonitor, display, displayReadinessChecker, screenshooter, sleeper, WatchingXLockFileChecker.getInstance());
     }
 
     @VisibleForTesting
     protected DefaultXvfbController(ProcessMonitor<?, ?> xvfbMonitor, String display,
                                     DisplayReadinessChecker displayReadinessChecker,
                                     Screenshooter<?> screenshooter, Sleeper sleeper, XLockFileChecker lockFileChecker) {
+        this(xvfbMonitor, display, displayReadinessChecker, screenshooter, sleeper, lockFileChecker, null);
+    }
+
+    /**
+     * Constructs an instance whose readiness may be signaled by {@code Xvfb} printing
+     * the display number. If the signal is not null, waiting for readiness waits for
+     * the signal instead of polling, and the readiness checker is executed once,
+     * after the number has been printed, to confirm it.
+     * @param xvfbMonitor the process monitor
+     * @param display the display
+     * @param displayReadinessChecker the readiness checker
+     * @param screenshooter the screenshooter
+     * @param sleeper the sleeper
+     * @param lockFileChecker the lock file checker
+     * @param displayNumberSignal future that is completed with the number {@code Xvfb} prints on
+     * the {@code -displayfd} descriptor, or null to poll the readiness checker
+     */
+    protected DefaultXvfbController(ProcessMonitor<?, ?> xvfbMonitor, String display,
+                                    DisplayReadinessChecker displayReadinessChecker,
+                                    Screenshooter<?> screenshooter, Sleeper sleeper, XLockFileChecker lockFileChecker,
+                                    @Nullable CompletableFuture<Integer> displayNumberSignal) {
         this.xvfbMonitor = requireNonNull(xvfbMonitor);
+        this.displayNumberSignal = displayNumberSignal;
         this.display = checkNotNull(display);
         this.displayReadinessChecker = checkNotNull(displayReadinessChecker);
         this.screenshooter = checkNotNull(screenshooter);
         this.sleeper = checkNotNull(sleeper);
         abort = new AtomicBoolean(false);
         this.lockFileChecker = checkNotNull(lockFileChecker);
+        startupTimings = new StartupTimings();
+        startupTimings.setDisplay(display);
+    }
+
+    void setStartupTimings(StartupTimings startupTimings) {
+        this.startupTimings = checkNotNull(startupTimings);
+    }
+
+    /**
+     * Gets the lifecycle timings of the process. If this controller was not created by
+     * an {@link XvfbManager}, the timings are measured from the construction of the controller.
+     * @return the timings
+     */
+    @Override
+    public Optional<StartupTimings> getStartupTimings() {
+        return Optional.of(startupTimings);
     }
 
     void setAbort(@SuppressWarnings("SameParameterValue") boolean abort) {
@@ -99,6 +157,15 @@ public class DefaultXvfbController implements XvfbController {
         waitUntilReady(DEFAULT_POLL_INTERVAL_MS, DEFAULT_MAX_NUM_POLLS);
     }
 
+    /**
+     * Checks whether the Xvfb process is still running and has not been aborted.
+     * @return true if the process is alive
+     */
+    @Override
+    public boolean isAlive() {
+        return !abort.get() && xvfbMonitor.process().isAlive();
+    }
+
     @Override
     public String getDisplay() {
         return display;
@@ -147,7 +214,78 @@ public class DefaultXvfbController implements XvfbController {
     }
 
     public void waitUntilReady(long pollIntervalMs, int maxNumPolls) throws InterruptedException {
-        PollOutcome<Boolean> pollResult = new Poller<Boolean>(sleeper) {
+        if (displayNumberSignal != null) {
+            awaitDisplayNumberSignal(displayNumberSignal, pollIntervalMs * maxNumPolls);
+            return;
+        }
+        PollOutcome<Boolean> pollResult = createReadinessPoller().poll(pollIntervalMs, maxNumPolls);
+        requireDisplayReady(pollResult);
+    }
+
+    /**
+     * Waits until the display is ready, polling at the given intervals until the display
+     * is ready or the timeout elapses.
+     * @param intervalsMs sequence of interval lengths in milliseconds; see {@link PollIntervals}
+     * @param timeout the time after which polling stops
+     * @throws InterruptedException if waiting is interrupted
+     */
+    public void waitUntilReady(Iterable<Long> intervalsMs, Duration timeout) throws InterruptedException {
+        if (displayNumberSignal != null) {
+            awaitDisplayNumberSignal(displayNumberSignal, timeout.toMillis());
+            return;
+        }
+        PollOutcome<Boolean> pollResult = createReadinessPoller().poll(intervalsMs, timeout);
+        requireDisplayReady(pollResult);
+    }
+
+    /**
+     * Waits asynchronously until the display is ready, using the default poll interval
+     * and maximum number of polls. Readiness checks are timed by the
+     * {@link #getScheduler() scheduler} and executed on the
+     * {@link #getBlockingExecutor() blocking executor}, and no thread is blocked between checks.
+     * @return a future that is completed when the display is ready
+     */
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync() {
+        return waitUntilReadyAsync(DEFAULT_POLL_INTERVAL_MS, DEFAULT_MAX_NUM_POLLS);
+    }
+
+    /**
+     * Waits asynchronously until the display is ready. Readiness checks are timed by the
+     * {@link #getScheduler() scheduler} and executed on the
+     * {@link #getBlockingExecutor() blocking executor}, and no thread is blocked between checks.
+     * @param pollIntervalMs interval between polls in milliseconds
+     * @param maxNumPolls maximum number of polls to execute
+     * @return a future that is completed when the display is ready
+     */
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync(long pollIntervalMs, int maxNumPolls) {
+        if (displayNumberSignal != null) {
+            return awaitDisplayNumberSignalAsync(displayNumberSignal, pollIntervalMs * maxNumPolls);
+        }
+        return createReadinessPoller()
+                .pollAsync(pollIntervalMs, maxNumPolls, getScheduler(), getBlockingExecutor())
+                .thenApply(this::requireDisplayReady);
+    }
+
+    /**
+     * Waits asynchronously until the display is ready, polling at the given intervals
+     * until the display is ready or the timeout elapses.
+     * @param intervalsMs sequence of interval lengths in milliseconds; see {@link PollIntervals}
+     * @param timeout the time after which polling stops
+     * @return a future that is completed when the display is ready
+     */
+    public CompletableFuture<Void> waitUntilReadyAsync(Iterable<Long> intervalsMs, Duration timeout) {
+        if (displayNumberSignal != null) {
+            return awaitDisplayNumberSignalAsync(displayNumberSignal, timeout.toMillis());
+        }
+        return createReadinessPoller()
+                .pollAsync(intervalsMs, timeout, getScheduler(), getBlockingExecutor())
+                .thenApply(this::requireDisplayReady);
+    }
+
+    private Poller<Boolean> createReadinessPoller() {
+        return new Poller<Boolean>(sleeper) {
             @Override
             protected PollAnswer<Boolean> check(int pollAttemptsSoFar) {
                 if (isXvfbAlreadyDone()) {
@@ -159,11 +297,96 @@ public class DefaultXvfbController implements XvfbController {
                 boolean ready = displayReadinessChecker.checkReadiness(display);
                 return ready ? resolve(true) : continuePolling();
             }
-        }.poll(pollIntervalMs, maxNumPolls);
+        };
+    }
+
+    @Nullable
+    private Void requireDisplayReady(PollOutcome<Boolean> pollResult) throws XvfbException {
         boolean displayReady = (pollResult.reason == StopReason.RESOLVED) && pollResult.content != null && pollResult.content;
         if (!displayReady) {
             throw new XvfbException("display never became ready: " + pollResult);
         }
+        recordReady(pollResult.duration);
+        return null;
+    }
+
+    private void recordReady(Duration waitDuration) {
+        StartupTimings timings = startupTimings;
+        if (timings.record(StartupTimings.Phase.READY)) {
+            timings.setReadinessPollDuration(waitDuration);
+        }
+    }
+
+    /**
+     * Waits for the display number to be printed and then confirms readiness with the checker.
+     */
+    private void awaitDisplayNumberSignal(CompletableFuture<Integer> signal, long timeoutMs) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        try {
+            signal.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new XvfbException("display never became ready: " + display, e.getCause());
+        } catch (TimeoutException e) {
+            throw new XvfbException(String.format("display never became ready: %s number not printed within %d ms", display, timeoutMs));
+        }
+        confirmSignaledReadiness(startNanos);
+    }
+
+    /**
+     * Waits asynchronously for the display number to be printed. The timeout is timed
+     * by the {@link #getScheduler() scheduler}, and the readiness checker is executed
+     * on the {@link #getBlockingExecutor() blocking executor}.
+     */
+    private CompletableFuture<Void> awaitDisplayNumberSignalAsync(CompletableFuture<Integer> signal, long timeoutMs) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<Integer> bounded = new CompletableFuture<>();
+        ScheduledFuture<?> timeout;
+        try {
+            timeout = getScheduler().schedule(() -> bounded.completeExceptionally(new XvfbException(
+                    String.format("display never became ready: %s number not printed within %d ms", display, timeoutMs))),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        signal.whenComplete((displayNumber, t) -> {
+            timeout.cancel(false);
+            if (t != null) {
+                bounded.completeExceptionally(new XvfbException("display never became ready: " + display, t));
+            } else {
+                bounded.complete(displayNumber);
+            }
+        });
+        return bounded.thenApplyAsync(displayNumber -> {
+            confirmSignaledReadiness(startNanos);
+            return null;
+        }, getBlockingExecutor());
+    }
+
+    private void confirmSignaledReadiness(long startNanos) {
+        if (checkAbort() || !displayReadinessChecker.checkReadiness(display)) {
+            throw new XvfbException("display never became ready: " + display + " not ready after number was printed");
+        }
+        recordReady(Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Gets the scheduler that times asynchronous operations. Only short tasks
+     * are executed on the scheduler.
+     * @return the scheduler
+     */
+    protected ScheduledExecutorService getScheduler() {
+        return Scheduling.sharedScheduler();
+    }
+
+    /**
+     * Gets the executor on which asynchronous operations execute checks that may block,
+     * such as readiness checks and window polls that run X client programs.
+     * @return the executor
+     */
+    protected Executor getBlockingExecutor() {
+        return Scheduling.sharedBlockingExecutor();
     }
 
     private static final int SIGTERM_TIMEOUT_MILLIS = 500;
@@ -171,14 +394,58 @@ public class DefaultXvfbController implements XvfbController {
     @Override
     public void stop() {
         if (xvfbMonitor.process().isAlive()) {
+            startupTimings.record(StartupTimings.Phase.STOP_REQUESTED);
             xvfbMonitor.destructor().sendTermSignal().await(SIGTERM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).kill();
             waitForXLockFileCleanup();
+            startupTimings.record(StartupTimings.Phase.LOCK_RELEASED);
         }
     }
 
+    private static final long STOP_POLL_INTERVAL_MS = 25;
+
+    /**
+     * Stops the process asynchronously. The process is sent SIGTERM, and then,
+     * if it has not exited within a short time, SIGKILL. The returned future is
+     * completed after the X lock file has been cleaned up. No thread is blocked
+     * while waiting.
+     * @return a future that is completed when the process has been stopped
+     */
+    @Override
+    public CompletableFuture<Void> stopAsync() {
+        if (!xvfbMonitor.process().isAlive()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        StartupTimings timings = startupTimings;
+        timings.record(StartupTimings.Phase.STOP_REQUESTED);
+        xvfbMonitor.destructor().sendTermSignal();
+        int maxNumPolls = Math.toIntExact(SIGTERM_TIMEOUT_MILLIS / STOP_POLL_INTERVAL_MS);
+        return Poller.checking(() -> !xvfbMonitor.process().isAlive())
+                .pollAsync(STOP_POLL_INTERVAL_MS, maxNumPolls, getScheduler())
+                .thenCompose(outcome -> {
+                    if (outcome.reason != StopReason.RESOLVED) {
+                        xvfbMonitor.destructor().sendKillSignal();
+                    }
+                    return waitForXLockFileCleanupAsync();
+                })
+                .thenRun(() -> timings.record(StartupTimings.Phase.LOCK_RELEASED));
+    }
+
     protected interface XLockFileChecker {
         void waitForCleanup(String display, long timeoutMs) throws LockFileCheckingException;
 
+        /**
+         * Waits asynchronously for the lock file to be cleaned up. The default
+         * implementation executes {@link #waitForCleanup(String, long)} in the
+         * common fork-join pool.
+         * @param display the display
+         * @param timeoutMs the timeout in milliseconds
+         * @param scheduler scheduler that implementations may use to poll
+         * @return a future that is completed when the lock file has been cleaned up
+         */
+        default CompletableFuture<Void> waitForCleanupAsync(String display, long timeoutMs, ScheduledExecutorService scheduler) {
+            return CompletableFuture.runAsync(() -> waitForCleanup(display, timeoutMs));
+        }
+
         @SuppressWarnings("unused")
         class LockFileCheckingException extends XvfbException {
             public LockFileCheckingException() {
@@ -209,11 +476,38 @@ public class DefaultXvfbController implements XvfbController {
         lockFileChecker.waitForCleanup(display, LOCK_FILE_CLEANUP_TIMEOUT_MS);
     }
 
+    protected CompletableFuture<Void> waitForXLockFileCleanupAsync() {
+        return lockFileChecker.waitForCleanupAsync(display, LOCK_FILE_CLEANUP_TIMEOUT_MS, getScheduler());
+    }
+
     @Override
     public Screenshooter<?> getScreenshooter() throws XvfbException {
         return screenshooter;
     }
 
+    /**
+     * Waits until the pixels of the screen, or of a region of it, have been unchanged
+     * for a quiet period. If the screenshooter is a {@link FramebufferDirScreenshooter},
+     * the memory-mapped framebuffer is hashed in place; otherwise a screenshot is
+     * captured and decoded for every check, which requires the screenshooter to
+     * capture XWD images, as the {@link XwdScreenshooter} does.
+     * @see ScreenStabilityPoller
+     */
+    @Override
+    public void waitForScreenStable(Duration quietPeriod, Duration timeout, @Nullable Rectangle region) throws InterruptedException {
+        if (screenshooter instanceof FramebufferDirScreenshooter) {
+            FramebufferReader reader;
+            try {
+                reader = ((FramebufferDirScreenshooter) screenshooter).getFramebufferReader();
+            } catch (IOException e) {
+                throw new XvfbException("cannot map framebuffer of " + display, e);
+            }
+            ScreenStabilityPoller.waitForStable(reader, quietPeriod, timeout, region);
+        } else {
+            XvfbController.super.waitForScreenStable(quietPeriod, timeout, region);
+        }
+    }
+
     /**
      * Invokes {@link #stop()}.
      */
@@ -222,6 +516,94 @@ public class DefaultXvfbController implements XvfbController {
         stop();
     }
 
+    /**
+     * Default time to wait for the root window to become empty in {@link #reset()}.
+     */
+    public static final long DEFAULT_RESET_TIMEOUT_MS = 2000;
+
+    private static final long RESET_POLL_INTERVAL_MS = 25;
+
+    /**
+     * Resets the display with the default timeout.
+     * @throws InterruptedException if waiting is interrupted
+     * @throws ResetFailedException if top-level windows remain after the timeout
+     * @see #reset(long)
+     */
+    public void reset() throws InterruptedException {
+        reset(DEFAULT_RESET_TIMEOUT_MS);
+    }
+
+    /**
+     * Resets the display so that it can be reused without restarting {@code Xvfb}.
+     * The clients that own top-level windows are disconnected by executing
+     * {@code xkill -id} for each window, which destroys all of their windows and other
+     * resources. The root window is then polled with {@code xwininfo} until it has
+     * no children. Clients that own no windows are not disconnected. Unless
+     * {@code Xvfb} was started with {@code -noreset}, the server also regenerates
+     * its state when the last client disconnects.
+     *
+     * <p>This requires the {@code xwininfo} and {@code xkill} programs.</p>
+     * @param timeoutMs time to wait for the root window to become empty
+     * @throws InterruptedException if waiting is interrupted
+     * @throws ResetFailedException if the process has exited or top-level windows remain after the timeout
+     */
+    public void reset(long timeoutMs) throws InterruptedException {
+        if (isXvfbAlreadyDone()) {
+            throw new ResetFailedException("xvfb process has exited; cannot reset " + display);
+        }
+        ProcessTracker processTracker = xvfbMonitor.tracker();
+        @Nullable TreeNode<XWindow> root = queryWindowTree(processTracker, display);
+        if (root == null) {
+            throw new ResetFailedException("could not query window tree of " + display);
+        }
+        List<String> windowIds = getTopLevelWindowIds(root);
+        log.debug("killing clients of {} top-level windows on {}", windowIds.size(), display);
+        for (String windowId : windowIds) {
+            killClient(processTracker, windowId);
+        }
+        AtomicReference<List<String>> remaining = new AtomicReference<>(windowIds);
+        PollOutcome<Void> outcome = Poller.checking(() -> {
+            @Nullable TreeNode<XWindow> current = queryWindowTree(processTracker, display);
+            if (current == null) {
+                return false;
+            }
+            remaining.set(getTopLevelWindowIds(current));
+            return remaining.get().isEmpty();
+        }).poll(PollIntervals.regular(RESET_POLL_INTERVAL_MS), Duration.ofMillis(timeoutMs));
+        if (outcome.reason != StopReason.RESOLVED) {
+            throw new ResetFailedException(String.format("top-level windows remain on %s after %d ms: %s", display, timeoutMs, remaining.get()));
+        }
+    }
+
+    /**
+     * Disconnects the client that owns a resource. Failure is not an error,
+     * because the client may already have been disconnected while killing
+     * the owner of another window.
+     */
+    private void killClient(ProcessTracker processTracker, String resourceId) throws InterruptedException {
+        long launchNanos = System.nanoTime();
+        ProcessMonitor<String, String> xkillMonitor = Subprocess.running(PROG_XKILL)
+                .args("-display", display)
+                .args("-id", resourceId)
+                .build()
+                .launcher(processTracker)
+                .outputStrings(Charset.defaultCharset())
+                .launch();
+        ProcessResult<String, String> result = HelperMetrics.await(PROG_XKILL, display, launchNanos, xkillMonitor);
+        if (result.exitCode() != 0) {
+            log.debug("xkill -id {} exited with code {}: {}", resourceId, result.exitCode(), result.content().stderr().trim());
+        }
+    }
+
+    /**
+     * Exception thrown if a display cannot be reset.
+     */
+    public static class ResetFailedException extends XvfbException {
+        public ResetFailedException(String message) {
+            super(message);
+        }
+    }
+
     @Override
     public Optional<TreeNode<XWindow>> pollForWindow(java.util.function.Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) throws InterruptedException {
         XWindowPoller poller = new XWindowPoller(xvfbMonitor.tracker(), display, windowFinder);
@@ -229,9 +611,22 @@ public class DefaultXvfbController implements XvfbController {
         return Optional.ofNullable(pollResult.content);
     }
 
-    private static class XWindowPoller extends Poller<TreeNode<XWindow>> {
+    /**
+     * Polls for a window asynchronously. Each check executes {@code xwininfo} on the
+     * {@link #getBlockingExecutor() blocking executor}, and no thread is blocked between checks.
+     * @param windowFinder predicate that matches the window
+     * @param intervalMs interval between polls in milliseconds
+     * @param maxPollAttempts maximum number of polls
+     * @return a future that is completed with the window, if found
+     */
+    @Override
+    public CompletableFuture<Optional<TreeNode<XWindow>>> pollForWindowAsync(java.util.function.Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) {
+        XWindowPoller poller = new XWindowPoller(xvfbMonitor.tracker(), display, windowFinder);
+        return poller.pollAsync(intervalMs, maxPollAttempts, getScheduler(), getBlockingExecutor())
+                .thenApply(pollResult -> Optional.ofNullable(pollResult.content));
+    }
 
-        private static final String PROG_XWININFO = "xwininfo";
+    private static class XWindowPoller extends Poller<TreeNode<XWindow>> {
 
         private static final ImmutableSet<String> requiredPrograms = ImmutableSet.of(PROG_XWININFO);
 
@@ -250,46 +645,24 @@ public class DefaultXvfbController implements XvfbController {
             this.evaluator = checkNotNull(evaluator);
         }
 
-        private static final int XWININFO_SIGTERM_TIMEOUT_MILLIS = 1000;
-
         @Override
         protected PollAnswer<TreeNode<XWindow>> check(int pollAttemptsSoFar) {
-            ProcessMonitor<String, String> xwininfoMonitor = Subprocess.running(PROG_XWININFO)
-                    .args("-display", display)
-                    .args("-root", "-tree")
-                    .build()
-                    .launcher(processTracker)
-                    .outputStrings(Charset.defaultCharset()) // presumably writes in system charset
-                    .launch();
-            ProcessResult<String, String> result = null;
-            try {
-                result = xwininfoMonitor.await();
-            } catch (InterruptedException e) {
-                log.error("interrupted while waiting for xwininfo result", e);
-                xwininfoMonitor.destructor().sendTermSignal()
-                        .await(XWININFO_SIGTERM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
-                        .kill();
-            }
-            if (result != null && result.exitCode() == 0) {
-                try {
-                    TreeNode<XWindow> root = CharSource.wrap(result.content().stdout()).readLines(new XwininfoXwindowParser());
-                    @Nullable XWindow evaluatedNode = null;
-                    for (TreeNode<XWindow> node : root.breadthFirstTraversal()) {
-                        if (evaluator.test(node.getLabel())) {
-                            evaluatedNode = node.getLabel();
-                            break;
-                        }
-                    }
-                    final @Nullable XWindow match = evaluatedNode;
-                    if (match != null) {
-                        //noinspection StaticPseudoFunctionalStyleMethod
-                        TreeNode<XWindow> targetWindowNode = Iterables.find(Utils.<XWindow>traverser().breadthFirst(root), input -> match == checkNotNull(input).getLabel());
-                        return resolve(targetWindowNode);
-                    } else {
-                        return continuePolling();
+            @Nullable TreeNode<XWindow> root = queryWindowTree(processTracker, display);
+            if (root != null) {
+                @Nullable XWindow evaluatedNode = null;
+                for (TreeNode<XWindow> node : root.breadthFirstTraversal()) {
+                    if (evaluator.test(node.getLabel())) {
+                        evaluatedNode = node.getLabel();
+                        break;
                     }
-                } catch (IOException e) {
-                    throw new XvfbException(e);
+                }
+                final @Nullable XWindow match = evaluatedNode;
+                if (match != null) {
+                    //noinspection StaticPseudoFunctionalStyleMethod
+                    TreeNode<XWindow> targetWindowNode = Iterables.find(Utils.<XWindow>traverser().breadthFirst(root), input -> match == checkNotNull(input).getLabel());
+                    return resolve(targetWindowNode);
+                } else {
+                    return continuePolling();
                 }
             } else {
                 return continuePolling();
@@ -297,6 +670,54 @@ public class DefaultXvfbController implements XvfbController {
         }
     }
 
+    private static final int XWININFO_SIGTERM_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Executes {@code xwininfo} to get the window tree of a display.
+     * @return the root of the tree, or null if {@code xwininfo} failed
+     */
+    @Nullable
+    private static TreeNode<XWindow> queryWindowTree(ProcessTracker processTracker, String display) {
+        long launchNanos = System.nanoTime();
+        ProcessMonitor<String, String> xwininfoMonitor = Subprocess.running(PROG_XWININFO)
+                .args("-display", display)
+                .args("-root", "-tree")
+                .build()
+                .launcher(processTracker)
+                .outputStrings(Charset.defaultCharset()) // presumably writes in system charset
+                .launch();
+        ProcessResult<String, String> result = null;
+        try {
+            result = HelperMetrics.await(PROG_XWININFO, display, launchNanos, xwininfoMonitor);
+        } catch (InterruptedException e) {
+            log.error("interrupted while waiting for xwininfo result", e);
+            xwininfoMonitor.destructor().sendTermSignal()
+                    .await(XWININFO_SIGTERM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .kill();
+        }
+        if (result != null && result.exitCode() == 0) {
+            try {
+                return CharSource.wrap(result.content().stdout()).readLines(new XwininfoXwindowParser());
+            } catch (IOException e) {
+                throw new XvfbException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the IDs of the children of the root window.
+     * @param root the root of a window tree
+     * @return the IDs of the top-level windows
+     */
+    static List<String> getTopLevelWindowIds(TreeNode<XWindow> root) {
+        List<String> ids = new ArrayList<>(root.getChildCount());
+        for (TreeNode<XWindow> child : root.children()) {
+            ids.add(child.getLabel().id);
+        }
+        return ids;
+    }
+
     static class XwininfoXwindowParser extends XwininfoParser<XWindow> {
 
         static final Pattern linePattern = Pattern.compile("\\s*(0x[a-f0-9]+)\\s((?:\\Q(has no name)\\E)|(?:\".+\")):", Pattern.CASE_INSENSITIVE);
@@ -0,0 +1,303 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Allocator of display numbers that does not collide with other processes.
+ * The range of display numbers is divided into blocks. An allocator claims a
+ * block by acquiring an exclusive lock on a file in a registry directory shared
+ * by all processes on the host, and hands out numbers from its claimed blocks
+ * without further coordination. Locks are released by the operating system when
+ * a process exits, so a crashed process does not leak its blocks. Numbers whose
+ * X lock files name a live process are skipped, so displays started by programs
+ * that do not use an allocator are avoided too.
+ *
+ * <p>Use an allocator with {@link XvfbManager#start(DisplayNumberAllocator)},
+ * or {@link #reserve() reserve} a number and pass it to {@link XvfbManager#start(int)}.</p>
+ */
+public class DisplayNumberAllocator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DisplayNumberAllocator.class);
+
+    /**
+     * Default first display number that may be allocated.
+     */
+    public static final int DEFAULT_FIRST_DISPLAY = 100;
+
+    /**
+     * Default number of display numbers in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    /**
+     * Default number of blocks.
+     */
+    public static final int DEFAULT_NUM_BLOCKS = 256;
+
+    private static final String REGISTRY_DIR_NAME = "xvfb-manager-displays";
+
+    private final Path registryDir;
+    private final int firstDisplay;
+    private final int blockSize;
+    private final int numBlocks;
+    private final XLockFileUtility lockFileUtility;
+    private final List<FileLock> blockLocks;
+    private final Deque<Integer> available;
+    private final Set<Integer> reserved;
+    private int nextBlockIndex;
+    private boolean closed;
+
+    /**
+     * Constructs an instance with the default registry directory and range of display numbers.
+     * The registry directory is in the same directory as X lock files.
+     * @throws IOException if the X lock file directory cannot be determined
+     */
+    public DisplayNumberAllocator() throws IOException {
+        this(XLockFileUtility.getInstance());
+    }
+
+    private DisplayNumberAllocator(XLockFileUtility lockFileUtility) throws IOException {
+        this(new File(lockFileUtility.getXLockFileParentPath(), REGISTRY_DIR_NAME).toPath(), DEFAULT_FIRST_DISPLAY, DEFAULT_BLOCK_SIZE, DEFAULT_NUM_BLOCKS, lockFileUtility);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param registryDir directory in which block lock files are created; all processes must use the same directory
+     * @param firstDisplay first display number that may be allocated
+     * @param blockSize number of display numbers in a block
+     * @param numBlocks number of blocks
+     */
+    public DisplayNumberAllocator(Path registryDir, int firstDisplay, int blockSize, int numBlocks) {
+        this(registryDir, firstDisplay, blockSize, numBlocks, XLockFileUtility.getInstance());
+    }
+
+    @VisibleForTesting
+    DisplayNumberAllocator(Path registryDir, int firstDisplay, int blockSize, int numBlocks, XLockFileUtility lockFileUtility) {
+        this.registryDir = checkNotNull(registryDir);
+        checkArgument(firstDisplay >= 0, "firstDisplay must be nonnegative");
+        checkArgument(blockSize > 0, "blockSize must be positive");
+        checkArgument(numBlocks > 0, "numBlocks must be positive");
+        checkArgument((long) firstDisplay + (long) blockSize * numBlocks <= Integer.MAX_VALUE, "range of display numbers too large");
+        this.firstDisplay = firstDisplay;
+        this.blockSize = blockSize;
+        this.numBlocks = numBlocks;
+        this.lockFileUtility = checkNotNull(lockFileUtility);
+        blockLocks = new ArrayList<>();
+        available = new ArrayDeque<>();
+        reserved = new HashSet<>();
+    }
+
+    /**
+     * Reserves a display number. Numbers are taken from blocks already claimed by this
+     * allocator if possible; otherwise another block is claimed.
+     * @return the reservation
+     * @throws IOException if the registry directory cannot be created
+     * @throws DisplayNumbersExhaustedException if all blocks are claimed or in use
+     */
+    public synchronized Reservation reserve() throws IOException {
+        checkState(!closed, "allocator closed");
+        for (;;) {
+            @Nullable Integer displayNumber;
+            while ((displayNumber = available.pollFirst()) != null) {
+                if (isDisplayInUse(displayNumber)) {
+                    log.debug("skipping display {} because its X lock file names a live process", displayNumber);
+                    continue;
+                }
+                reserved.add(displayNumber);
+                return new Reservation(displayNumber);
+            }
+            if (!claimBlock()) {
+                throw new DisplayNumbersExhaustedException("no unclaimed display number blocks among " + numBlocks + " in " + registryDir);
+            }
+        }
+    }
+
+    private synchronized void release(int displayNumber) {
+        if (reserved.remove(displayNumber) && !closed) {
+            available.addFirst(displayNumber);
+        }
+    }
+
+    /**
+     * Claims the next available block.
+     * @return true if a block was claimed
+     */
+    private boolean claimBlock() throws IOException {
+        Files.createDirectories(registryDir);
+        while (nextBlockIndex < numBlocks) {
+            int blockIndex = nextBlockIndex++;
+            @Nullable FileLock lock = tryLockBlock(blockIndex);
+            if (lock != null) {
+                blockLocks.add(lock);
+                int blockStart = firstDisplay + blockIndex * blockSize;
+                for (int n = blockStart; n < blockStart + blockSize; n++) {
+                    available.addLast(n);
+                }
+                log.debug("claimed displays {} through {}", blockStart, blockStart + blockSize - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private FileLock tryLockBlock(int blockIndex) {
+        Path blockFile = registryDir.resolve(String.format("block-%d-%d.lock", firstDisplay + blockIndex * blockSize, blockSize));
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(blockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            log.debug("block {} unavailable: {}", blockFile, e.toString());
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an X server holds the given display. The display is considered held
+     * if its lock file exists and names a live process, or if the process cannot be determined.
+     */
+    @VisibleForTesting
+    boolean isDisplayInUse(int displayNumber) {
+        File lockFile;
+        try {
+            lockFile = lockFileUtility.constructLockFilePathname(XvfbManager.toDisplayValue(displayNumber));
+        } catch (IOException e) {
+            return true;
+        }
+        if (!lockFile.exists()) {
+            return false;
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(lockFile.toPath()), StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            return true;
+        }
+        if (!content.matches("\\d+")) {
+            return true;
+        }
+        File procDir = new File("/proc");
+        if (!procDir.isDirectory()) {
+            return true;
+        }
+        return new File(procDir, content).exists();
+    }
+
+    /**
+     * Releases this allocator's claimed blocks. Outstanding reservations remain
+     * valid as display numbers, but they are no longer protected from
+     * allocation by other processes.
+     * @throws IOException if releasing a lock fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        available.clear();
+        IOException failure = null;
+        for (FileLock lock : blockLocks) {
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        blockLocks.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reservation of a display number. Closing the reservation returns the number
+     * to the allocator.
+     */
+    public final class Reservation implements Closeable {
+
+        private final int displayNumber;
+
+        private Reservation(int displayNumber) {
+            this.displayNumber = displayNumber;
+        }
+
+        public int getDisplayNumber() {
+            return displayNumber;
+        }
+
+        /**
+         * Gets the display, in the format {@code :N}.
+         * @return the display
+         */
+        public String getDisplay() {
+            return XvfbManager.toDisplayValue(displayNumber);
+        }
+
+        /**
+         * Returns the display number to the allocator. Repeated invocations have no effect.
+         */
+        @Override
+        public void close() {
+            release(displayNumber);
+        }
+
+        @Override
+        public String toString() {
+            return "Reservation{displayNumber=" + displayNumber + "}";
+        }
+    }
+
+    /**
+     * Exception thrown if no display number can be allocated.
+     */
+    public static class DisplayNumbersExhaustedException extends XvfbException {
+        public DisplayNumbersExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DisplayNumberAllocator{" +
+                "registryDir=" + registryDir +
+                ", firstDisplay=" + firstDisplay +
+                ", blockSize=" + blockSize +
+                ", numBlocks=" + numBlocks +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Readiness checker that considers a display ready once {@code Xvfb} has printed
+ * the display number on the {@code -displayfd} descriptor and the process is still
+ * alive. {@code Xvfb} only prints the number after it has begun accepting connections,
+ * so no X client program has to be executed. Checks never wait for the number to be
+ * printed; if it has not been printed yet, an optional fallback checker is consulted.
+ */
+public class DisplayfdReadinessChecker implements XvfbManager.DisplayReadinessChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(DisplayfdReadinessChecker.class);
+
+    private final Future<Integer> displayNumberSignal;
+    private final Supplier<Boolean> processAlive;
+    @Nullable
+    private final XvfbManager.DisplayReadinessChecker fallback;
+
+    /**
+     * Constructs an instance.
+     * @param displayNumberSignal future that is completed with the printed display number
+     * @param processAlive supplier of the liveness of the {@code Xvfb} process
+     * @param fallback checker to consult if the number has not been printed; null means report not ready
+     */
+    public DisplayfdReadinessChecker(Future<Integer> displayNumberSignal, Supplier<Boolean> processAlive, @Nullable XvfbManager.DisplayReadinessChecker fallback) {
+        this.displayNumberSignal = checkNotNull(displayNumberSignal);
+        this.processAlive = checkNotNull(processAlive);
+        this.fallback = fallback;
+    }
+
+    @Override
+    public boolean checkReadiness(String display) {
+        if (displayNumberSignal.isDone()) {
+            @Nullable Integer displayNumber = getSignal();
+            if (displayNumber != null) {
+                if (!display.equals(XvfbManager.toDisplayValue(displayNumber))) {
+                    log.warn("display {} expected but Xvfb printed {}", display, displayNumber);
+                    return false;
+                }
+                return processAlive.get();
+            }
+        }
+        return fallback != null && fallback.checkReadiness(display);
+    }
+
+    @Nullable
+    private Integer getSignal() {
+        try {
+            return displayNumberSignal.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            log.debug("display number was not printed: {}", e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DisplayfdReadinessChecker{" +
+                "fallback=" + fallback +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.mike10004.xvfbmanager;
+
+import io.github.mike10004.subprocess.StreamContent;
+import io.github.mike10004.subprocess.StreamContext;
+import io.github.mike10004.subprocess.StreamControl;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stream context that writes process output to files and watches the output
+ * stream that {@code Xvfb} was told to print the display number on. The
+ * subprocess library drains each output pipe with a blocking reader thread,
+ * so the display number is available as soon as {@code Xvfb} writes it, without
+ * re-reading the output file. The {@link #displayNumber() display number future}
+ * is completed exceptionally if the stream is closed before a number is printed.
+ */
+class DisplayfdStreamContext implements StreamContext<StreamControl, File, File> {
+
+    private final File stdoutFile;
+    private final File stderrFile;
+    private final int displayfd;
+    private final CompletableFuture<Integer> displayNumber;
+
+    /**
+     * Constructs an instance.
+     * @param stdoutFile file to which standard output is written
+     * @param stderrFile file to which standard error is written
+     * @param displayfd descriptor on which the display number is printed; must be 1 or 2
+     */
+    public DisplayfdStreamContext(File stdoutFile, File stderrFile, int displayfd) {
+        this.stdoutFile = checkNotNull(stdoutFile);
+        this.stderrFile = checkNotNull(stderrFile);
+        XvfbManager.selectCorrespondingFile(displayfd, stdoutFile, stderrFile);
+        this.displayfd = displayfd;
+        displayNumber = new CompletableFuture<>();
+    }
+
+    /**
+     * Gets the future that is completed with the display number printed by the process.
+     * @return the display number future
+     */
+    public CompletableFuture<Integer> displayNumber() {
+        return displayNumber;
+    }
+
+    @Override
+    public StreamControl produceControl() {
+        return new StreamControl() {
+            @Override
+            public OutputStream openStdoutSink() throws IOException {
+                return openSink(1, stdoutFile);
+            }
+
+            @Override
+            public OutputStream openStderrSink() throws IOException {
+                return openSink(2, stderrFile);
+            }
+
+            @Override
+            public @Nullable InputStream openStdinSource() {
+                return null;
+            }
+        };
+    }
+
+    private OutputStream openSink(int fd, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (fd == displayfd) {
+            out = new DisplayNumberSniffingOutputStream(out, displayNumber);
+        }
+        return out;
+    }
+
+    @Override
+    public StreamContent<File, File> transform(int exitCode, StreamControl context) {
+        return StreamContent.direct(stdoutFile, stderrFile);
+    }
+
+    /**
+     * Output stream that forwards all bytes to a delegate and completes a future
+     * with the first line that consists only of decimal digits.
+     */
+    static class DisplayNumberSniffingOutputStream extends FilterOutputStream {
+
+        private static final int MAX_DIGITS = 9;
+
+        private final CompletableFuture<Integer> displayNumber;
+        private final StringBuilder line;
+        private boolean lineIsNumeric;
+
+        public DisplayNumberSniffingOutputStream(OutputStream out, CompletableFuture<Integer> displayNumber) {
+            super(out);
+            this.displayNumber = checkNotNull(displayNumber);
+            line = new StringBuilder(MAX_DIGITS);
+            lineIsNumeric = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            sniff((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (!displayNumber.isDone()) {
+                for (int i = off; i < off + len; i++) {
+                    sniff(b[i]);
+                }
+            }
+        }
+
+        private void sniff(byte b) {
+            if (b == '\n') {
+                if (lineIsNumeric && line.length() > 0) {
+                    displayNumber.complete(Integer.parseInt(line.toString()));
+                }
+                line.setLength(0);
+                lineIsNumeric = true;
+            } else if (b != '\r' && lineIsNumeric) {
+                if (b >= '0' && b <= '9' && line.length() < MAX_DIGITS) {
+                    line.append((char) b);
+                } else {
+                    lineIsNumeric = false;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                displayNumber.completeExceptionally(new XvfbException("output stream closed before display number was printed"));
+            }
+        }
+    }
+}
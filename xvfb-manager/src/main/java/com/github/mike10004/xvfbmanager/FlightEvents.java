@@ -0,0 +1,49 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+
+/**
+ * Emitter of Java Flight Recorder events. This version, used on Java 8, emits nothing.
+ * The library JAR is a multi-release JAR that contains another version of this class,
+ * built from {@code src/main/java11}, that emits {@code jdk.jfr} events on Java 11 and later.
+ *
+ * <p>Each {@code begin} method returns a token that must be passed to the
+ * corresponding {@code end} method. The token may be null, for example if
+ * the event is disabled.</p>
+ */
+final class FlightEvents {
+
+    private FlightEvents() {}
+
+    @Nullable
+    static Object beginStart() {
+        return null;
+    }
+
+    static void endStart(@Nullable Object token, @Nullable String display, boolean success) {
+    }
+
+    @Nullable
+    static Object beginPoll() {
+        return null;
+    }
+
+    static void endPoll(@Nullable Object token, Class<?> pollerClass, int attempts, String outcome) {
+    }
+
+    @Nullable
+    static Object beginCapture() {
+        return null;
+    }
+
+    static void endCapture(@Nullable Object token, Class<?> screenshooterClass, @Nullable String display, long bytes, boolean success) {
+    }
+
+    @Nullable
+    static Object beginConvert() {
+        return null;
+    }
+
+    static void endConvert(@Nullable Object token, Class<?> converterClass, long inputBytes, long outputBytes, boolean success) {
+    }
+}
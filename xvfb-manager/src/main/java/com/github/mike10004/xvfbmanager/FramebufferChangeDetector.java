@@ -0,0 +1,201 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.XwdDecoder.UnsupportedXwdFormatException;
+
+import javax.annotation.Nullable;
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Detector of changes to the pixels of a memory-mapped framebuffer. The screen,
+ * or a region of it, is divided into tiles, and a 64-bit hash of the pixel data
+ * of each tile is kept between scans. A {@link #scan(DirtyRegionHandler) scan}
+ * reads the pixel data once, in place, and reports the tiles whose hashes
+ * changed since the previous scan, merged into rectangles of adjacent tiles
+ * in the same row. No images are decoded, and scans that report to a handler
+ * do not allocate.
+ *
+ * <p>The first scan, and the first scan after {@link #reset()}, reports every
+ * tile as changed. Instances are not thread-safe.</p>
+ */
+public class FramebufferChangeDetector {
+
+    /**
+     * Default width and height of a tile, in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final long SEED = 0xcbf29ce484222325L;
+    private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Interface of a callback that receives changed regions.
+     */
+    public interface DirtyRegionHandler {
+
+        /**
+         * Receives a changed region, in screen coordinates.
+         * @param x the left edge
+         * @param y the top edge
+         * @param width the width
+         * @param height the height
+         */
+        void dirty(int x, int y, int width, int height);
+    }
+
+    private final ByteBuffer pixels;
+    private final int bytesPerPixel;
+    private final int bytesPerLine;
+    private final Rectangle region;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int columns;
+    private final int rows;
+    private final long[] hashes;
+    private final long[] rowHashes;
+    private final boolean[] dirtyColumns;
+    private boolean baseline;
+
+    /**
+     * Constructs an instance that divides the whole screen into tiles of the default size.
+     * @param reader the framebuffer reader
+     * @throws UnsupportedXwdFormatException if the framebuffer is not a Z pixmap with a whole number of bytes per pixel
+     */
+    public FramebufferChangeDetector(FramebufferReader reader) throws UnsupportedXwdFormatException {
+        this(reader, null, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param reader the framebuffer reader
+     * @param region the region to divide into tiles, or null for the whole screen; clipped to the screen
+     * @param tileWidth the tile width, in pixels
+     * @param tileHeight the tile height, in pixels
+     * @throws UnsupportedXwdFormatException if the framebuffer is not a Z pixmap with a whole number of bytes per pixel
+     */
+    public FramebufferChangeDetector(FramebufferReader reader, @Nullable Rectangle region, int tileWidth, int tileHeight) throws UnsupportedXwdFormatException {
+        checkArgument(tileWidth > 0 && tileHeight > 0, "invalid tile size %sx%s", tileWidth, tileHeight);
+        XwdHeader header = reader.getHeader();
+        if (header.getPixmapFormat() != XwdHeader.Z_PIXMAP) {
+            throw new UnsupportedXwdFormatException("pixmap format " + header.getPixmapFormat() + " is not supported");
+        }
+        if (header.getBitsPerPixel() % 8 != 0) {
+            throw new UnsupportedXwdFormatException(header.getBitsPerPixel() + " bits per pixel is not supported");
+        }
+        Rectangle screen = new Rectangle(0, 0, header.getWidth(), header.getHeight());
+        this.region = region == null ? screen : screen.intersection(region);
+        checkArgument(!this.region.isEmpty(), "region %s does not intersect screen %s", region, screen);
+        this.pixels = reader.getPixels();
+        this.bytesPerPixel = header.getBitsPerPixel() / 8;
+        this.bytesPerLine = header.getBytesPerLine();
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        columns = (this.region.width + tileWidth - 1) / tileWidth;
+        rows = (this.region.height + tileHeight - 1) / tileHeight;
+        hashes = new long[Math.multiplyExact(columns, rows)];
+        rowHashes = new long[columns];
+        dirtyColumns = new boolean[columns];
+    }
+
+    /**
+     * Gets the region that is divided into tiles.
+     * @return a copy of the region
+     */
+    public Rectangle getRegion() {
+        return new Rectangle(region);
+    }
+
+    /**
+     * Forgets the hashes of the previous scan, so that the next scan reports every tile as changed.
+     */
+    public void reset() {
+        baseline = false;
+    }
+
+    /**
+     * Scans the framebuffer and reports the regions that changed since the previous scan.
+     * @param handler the handler that receives the changed regions
+     * @return the number of changed tiles
+     */
+    public int scan(DirtyRegionHandler handler) {
+        checkNotNull(handler);
+        int changed = 0;
+        for (int row = 0; row < rows; row++) {
+            int top = region.y + row * tileHeight;
+            int bottom = Math.min(region.y + region.height, top + tileHeight);
+            hashRow(top, bottom);
+            int base = row * columns;
+            for (int column = 0; column < columns; column++) {
+                boolean dirty = !baseline || hashes[base + column] != rowHashes[column];
+                hashes[base + column] = rowHashes[column];
+                dirtyColumns[column] = dirty;
+                if (dirty) {
+                    changed++;
+                }
+            }
+            reportRow(handler, top, bottom - top);
+        }
+        baseline = true;
+        return changed;
+    }
+
+    /**
+     * Scans the framebuffer and returns the regions that changed since the previous scan.
+     * @return a list of changed regions, empty if nothing changed
+     * @see #scan(DirtyRegionHandler)
+     */
+    public List<Rectangle> scan() {
+        List<Rectangle> regions = new ArrayList<>();
+        scan((x, y, width, height) -> regions.add(new Rectangle(x, y, width, height)));
+        return regions;
+    }
+
+    private void hashRow(int top, int bottom) {
+        Arrays.fill(rowHashes, SEED);
+        int left = region.x, right = region.x + region.width;
+        for (int y = top; y < bottom; y++) {
+            int lineStart = y * bytesPerLine;
+            for (int column = 0; column < columns; column++) {
+                int x0 = left + column * tileWidth;
+                int x1 = Math.min(right, x0 + tileWidth);
+                rowHashes[column] = hash(rowHashes[column], lineStart + x0 * bytesPerPixel, lineStart + x1 * bytesPerPixel);
+            }
+        }
+    }
+
+    private long hash(long h, int start, int end) {
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            h = (h ^ pixels.getLong(i)) * MULTIPLIER;
+            h ^= h >>> 29;
+        }
+        for (; i < end; i++) {
+            h = (h ^ (pixels.get(i) & 0xff)) * MULTIPLIER;
+        }
+        return h;
+    }
+
+    private void reportRow(DirtyRegionHandler handler, int y, int height) {
+        int right = region.x + region.width;
+        int column = 0;
+        while (column < columns) {
+            if (!dirtyColumns[column]) {
+                column++;
+                continue;
+            }
+            int first = column;
+            while (column < columns && dirtyColumns[column]) {
+                column++;
+            }
+            int x0 = region.x + first * tileWidth;
+            int x1 = Math.min(right, region.x + column * tileWidth);
+            handler.dirty(x0, y, x1 - x0, height);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.github.mike10004.xvfbmanager;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -9,12 +11,20 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Screenshooter implementation that copies the framebuffer file from the
  * framebuffer directory. See the {@code -fbdir} option to {@code Xvfb}
  * in the manual.
+ *
+ * <p>Besides copying the file with {@link #capture()}, instances can capture
+ * into a buffer with {@link #captureToBuffer(ByteBuffer)}, which reads the
+ * framebuffer file through a {@link FramebufferReader} that is mapped
+ * into memory on first use.</p>
  */
 public class FramebufferDirScreenshooter implements Screenshooter<XwdFileScreenshot> {
 
     private final File outputDir;
     private final File framebufferDir;
     private final int screen;
+    private final Object readerLock = new Object();
+    @Nullable
+    private volatile FramebufferReader reader;
 
     /**
      * Constructs a new instance of the class.
@@ -33,13 +43,62 @@ public class FramebufferDirScreenshooter implements Screenshooter<XwdFileScreens
         return String.format("Xvfb_screen%d", screen);
     }
 
+    protected File getFramebufferFile() {
+        return new File(framebufferDir, constructFramebufferFilename());
+    }
+
+    /**
+     * Gets the reader of the framebuffer file, mapping the file if this is the first call.
+     * @return the reader
+     * @throws IOException if the file cannot be mapped
+     */
+    public FramebufferReader getFramebufferReader() throws IOException {
+        FramebufferReader r = reader;
+        if (r == null) {
+            synchronized (readerLock) {
+                r = reader;
+                if (r == null) {
+                    r = FramebufferReader.open(getFramebufferFile());
+                    reader = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Captures a screenshot into a buffer in memory instead of a file.
+     * @param reuse a buffer to reuse, such as the buffer of a screenshot previously
+     * returned by this method that is no longer needed, or null to allocate a new one
+     * @return the screenshot
+     * @throws IOException if the framebuffer file cannot be mapped
+     * @see FramebufferReader#snapshot(ByteBuffer)
+     */
+    public XwdBufferScreenshot captureToBuffer(@Nullable ByteBuffer reuse) throws IOException {
+        @Nullable Object event = FlightEvents.beginCapture();
+        @Nullable ByteBuffer buffer = null;
+        try {
+            buffer = getFramebufferReader().snapshot(reuse);
+            return new XwdBufferScreenshot(buffer);
+        } finally {
+            FlightEvents.endCapture(event, getClass(), null, buffer == null ? -1 : buffer.remaining(), buffer != null);
+        }
+    }
+
     @Override
     public XwdFileScreenshot capture() throws IOException, XvfbException {
-        File outputFile = constructOutputPathname(outputDir);
-        String framebufferFilename = constructFramebufferFilename();
-        File framebufferFile = new File(framebufferDir, framebufferFilename);
-        com.google.common.io.Files.copy(framebufferFile, outputFile);
-        return XwdFileScreenshot.from(outputFile);
+        @Nullable Object event = FlightEvents.beginCapture();
+        @Nullable File outputFile = null;
+        boolean success = false;
+        try {
+            outputFile = constructOutputPathname(outputDir);
+            File framebufferFile = getFramebufferFile();
+            com.google.common.io.Files.copy(framebufferFile, outputFile);
+            success = true;
+            return XwdFileScreenshot.from(outputFile);
+        } finally {
+            FlightEvents.endCapture(event, getClass(), null, success ? outputFile.length() : -1, success);
+        }
     }
 
     /**
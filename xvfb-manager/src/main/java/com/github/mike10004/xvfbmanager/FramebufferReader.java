@@ -0,0 +1,130 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reader of a screen file in an {@code Xvfb} framebuffer directory. The file
+ * is memory-mapped once, so the pixels can be read as the server draws them,
+ * without copying the file for each screenshot.
+ *
+ * <p>The size of the screen file is fixed for the life of the server, so
+ * the mapping remains valid until the server exits. Buffers returned by
+ * this class must not be used after the server has exited.</p>
+ */
+public class FramebufferReader {
+
+    private final File framebufferFile;
+    private final MappedByteBuffer mapped;
+    private final XwdHeader header;
+
+    protected FramebufferReader(File framebufferFile, MappedByteBuffer mapped, XwdHeader header) {
+        this.framebufferFile = checkNotNull(framebufferFile);
+        this.mapped = checkNotNull(mapped);
+        this.header = checkNotNull(header);
+    }
+
+    /**
+     * Maps a framebuffer file into memory and parses its header.
+     * @param framebufferFile the screen file, e.g. {@code Xvfb_screen0} in the framebuffer directory
+     * @return a new reader
+     * @throws IOException if the file cannot be mapped or is not a valid XWD image
+     */
+    public static FramebufferReader open(File framebufferFile) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(framebufferFile.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        XwdHeader header = XwdHeader.parse(mapped);
+        long end = header.getPixelDataOffset() + header.getPixelDataLength();
+        if (end > mapped.capacity()) {
+            throw new IOException(String.format("framebuffer file %s is %d bytes but header %s requires %d", framebufferFile, mapped.capacity(), header, end));
+        }
+        return new FramebufferReader(framebufferFile, mapped, header);
+    }
+
+    /**
+     * Gets the framebuffer file.
+     * @return the file
+     */
+    public File getFramebufferFile() {
+        return framebufferFile;
+    }
+
+    /**
+     * Gets the header of the framebuffer image.
+     * @return the header
+     */
+    public XwdHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Gets a read-only view of the live pixel data. The view is positioned
+     * at the first pixel and its limit is the end of the pixel data.
+     * Its byte order is the byte order of the pixel data.
+     * @return a new view of the pixel data
+     */
+    public ByteBuffer getPixels() {
+        ByteBuffer view = mapped.asReadOnlyBuffer();
+        view.position(header.getPixelDataOffset());
+        view.limit(Math.toIntExact(header.getPixelDataOffset() + header.getPixelDataLength()));
+        return view.slice().order(header.getPixelByteOrder());
+    }
+
+    /**
+     * Gets a read-only view of the live image, including the header and colormap.
+     * @return a new view of the image
+     */
+    public ByteBuffer getImage() {
+        ByteBuffer view = mapped.asReadOnlyBuffer();
+        view.limit(getImageLength());
+        return view;
+    }
+
+    /**
+     * Gets the length of the image, including the header and colormap.
+     * @return the length in bytes
+     */
+    public int getImageLength() {
+        return Math.toIntExact(header.getPixelDataOffset() + header.getPixelDataLength());
+    }
+
+    /**
+     * Copies the current image, including the header and colormap, into a buffer.
+     * If the given buffer has enough capacity, it is cleared and reused; otherwise
+     * a new heap buffer is allocated. The returned buffer is positioned at zero
+     * and its limit is the length of the image.
+     *
+     * <p>The server may be drawing while the copy is made, so the copy may
+     * contain parts of successive frames.</p>
+     * @param reuse buffer to reuse, or null to allocate a new one
+     * @return the buffer containing the copy
+     */
+    public ByteBuffer snapshot(@Nullable ByteBuffer reuse) {
+        int length = getImageLength();
+        ByteBuffer destination = reuse;
+        if (destination == null || destination.capacity() < length || destination.isReadOnly()) {
+            destination = ByteBuffer.allocate(length);
+        }
+        destination.clear();
+        destination.put(getImage());
+        destination.flip();
+        return destination;
+    }
+
+    @Override
+    public String toString() {
+        return "FramebufferReader{" +
+                "framebufferFile=" + framebufferFile +
+                ", header=" + header +
+                '}';
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.mike10004.xvfbmanager;
+
+import io.github.mike10004.subprocess.ProcessMonitor;
+import io.github.mike10004.subprocess.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.OptionalInt;
+import java.util.ServiceLoader;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holder of the installed {@link HelperProgramMetrics} implementation. Unless one
+ * is {@link #install(HelperProgramMetrics) installed} programmatically, the first
+ * implementation found by {@link ServiceLoader} is used, and if none is found,
+ * invocations are not recorded.
+ */
+public final class HelperMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(HelperMetrics.class);
+
+    private static volatile HelperProgramMetrics installed;
+
+    private HelperMetrics() {}
+
+    /**
+     * Installs a metrics implementation, replacing any previously installed.
+     * @param metrics the implementation
+     */
+    public static void install(HelperProgramMetrics metrics) {
+        installed = checkNotNull(metrics);
+    }
+
+    /**
+     * Gets the installed metrics implementation.
+     * @return the implementation
+     */
+    public static HelperProgramMetrics installed() {
+        HelperProgramMetrics metrics = installed;
+        if (metrics == null) {
+            synchronized (HelperMetrics.class) {
+                metrics = installed;
+                if (metrics == null) {
+                    metrics = loadService();
+                    installed = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private static HelperProgramMetrics loadService() {
+        try {
+            Iterator<HelperProgramMetrics> services = ServiceLoader.load(HelperProgramMetrics.class).iterator();
+            if (services.hasNext()) {
+                HelperProgramMetrics service = services.next();
+                log.debug("using helper program metrics {}", service);
+                return service;
+            }
+        } catch (java.util.ServiceConfigurationError e) {
+            log.warn("failed to load helper program metrics service", e);
+        }
+        return HelperProgramMetrics.noop();
+    }
+
+    /**
+     * Awaits a helper program and records the invocation.
+     * @param program the program name
+     * @param display the display, or null if not applicable
+     * @param launchNanos the value of {@link System#nanoTime()} just before the program was launched
+     * @param monitor the process monitor
+     * @return the process result
+     * @throws InterruptedException if waiting is interrupted; the invocation is recorded without an exit code
+     */
+    static <SO, SE> ProcessResult<SO, SE> await(String program, @Nullable String display, long launchNanos, ProcessMonitor<SO, SE> monitor) throws InterruptedException {
+        OptionalInt exitCode = OptionalInt.empty();
+        try {
+            ProcessResult<SO, SE> result = monitor.await();
+            exitCode = OptionalInt.of(result.exitCode());
+            return result;
+        } finally {
+            record(program, display, launchNanos, exitCode);
+        }
+    }
+
+    private static void record(String program, @Nullable String display, long launchNanos, OptionalInt exitCode) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - launchNanos);
+        try {
+            installed().invocationCompleted(program, display, elapsed, exitCode);
+        } catch (RuntimeException e) {
+            log.warn("helper program metrics threw exception", e);
+        }
+    }
+}
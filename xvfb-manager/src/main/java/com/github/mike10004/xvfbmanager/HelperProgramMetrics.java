@@ -0,0 +1,39 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.OptionalInt;
+
+/**
+ * Service interface for recording invocations of the X helper programs this library
+ * executes, such as {@code xdpyinfo}, {@code xwininfo}, {@code xwd} and {@code xwdtopnm}.
+ * Implementations adapt invocations to a metrics library of your choice; no metrics
+ * library is required by this library. Install an implementation with
+ * {@link HelperMetrics#install(HelperProgramMetrics)}, or declare it in
+ * {@code META-INF/services/com.github.mike10004.xvfbmanager.HelperProgramMetrics}
+ * to have it loaded by {@link java.util.ServiceLoader}.
+ *
+ * <p>Implementations are invoked synchronously on the thread that awaited the
+ * program, so they must be thread-safe and should return quickly.</p>
+ *
+ * @see TallyingHelperProgramMetrics
+ */
+public interface HelperProgramMetrics {
+
+    /**
+     * Records a completed invocation.
+     * @param program the program name, e.g. {@code xdpyinfo}
+     * @param display the display the program was executed against, or null if not applicable
+     * @param elapsed time from launch until the program exited or waiting was abandoned
+     * @param exitCode the exit code, or empty if waiting was interrupted before the program exited
+     */
+    void invocationCompleted(String program, @Nullable String display, Duration elapsed, OptionalInt exitCode);
+
+    /**
+     * Returns an instance that records nothing.
+     * @return an instance that records nothing
+     */
+    static HelperProgramMetrics noop() {
+        return (program, display, elapsed, exitCode) -> {};
+    }
+}
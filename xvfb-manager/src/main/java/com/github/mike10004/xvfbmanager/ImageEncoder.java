@@ -0,0 +1,54 @@
+package com.github.mike10004.xvfbmanager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Interface of an encoder of RGB images. The pixels are supplied by a
+ * {@link PixelSource}, which can provide them either one row at a time or
+ * all at once, so that each encoder can read them in the way that suits it.
+ * @see PngEncoder
+ * @see ParallelPngEncoder
+ */
+public interface ImageEncoder {
+
+    /**
+     * Encodes an image.
+     * @param pixels the source of the pixels
+     * @param out the output stream; not closed
+     * @throws IOException if the pixels cannot be read or on I/O error
+     */
+    void encode(PixelSource pixels, OutputStream out) throws IOException;
+
+    /**
+     * Interface of a source of the pixels of an image, packed as RGB integers.
+     */
+    interface PixelSource {
+
+        /**
+         * Gets the image width.
+         * @return the width
+         */
+        int getWidth();
+
+        /**
+         * Gets the image height.
+         * @return the height
+         */
+        int getHeight();
+
+        /**
+         * Passes the rows of the image to a handler, top to bottom.
+         * @param handler the row handler
+         * @throws IOException if the pixels cannot be read or the handler throws it
+         */
+        void readRows(XwdDecoder.RowHandler handler) throws IOException;
+
+        /**
+         * Reads all pixels of the image in row-major order.
+         * @return an array whose first {@code width * height} elements are the pixels
+         * @throws IOException if the pixels cannot be read
+         */
+        int[] readPixels() throws IOException;
+    }
+}
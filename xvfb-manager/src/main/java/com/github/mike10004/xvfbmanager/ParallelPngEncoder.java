@@ -0,0 +1,270 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.PngEncoder.Filter;
+import com.github.mike10004.xvfbmanager.PngEncoder.IdatOutputStream;
+import com.github.mike10004.xvfbmanager.PngEncoder.RowFilterer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encoder of 8-bit RGB PNG images that compresses horizontal stripes of the
+ * image in parallel. Each stripe is filtered and deflated on a fork-join pool
+ * with its own compressor, and the compressed stripes are concatenated into a
+ * single zlib stream, as in {@code pigz}. Every stripe but the last ends with
+ * a sync flush, so the stripes join at byte boundaries, and the checksums of
+ * the stripes are combined into the checksum of the whole stream.
+ *
+ * <p>Because each stripe starts with an empty history, the output is slightly
+ * larger than that of {@link PngEncoder} at the same settings. Unlike that
+ * class, this one needs the whole image in memory.</p>
+ */
+public class ParallelPngEncoder implements ImageEncoder {
+
+    /**
+     * Default minimum number of uncompressed bytes per stripe.
+     */
+    public static final int DEFAULT_STRIPE_SIZE = 256 * 1024;
+
+    private static final int ADLER_BASE = 65521;
+
+    private final int deflateLevel;
+    private final Filter filter;
+    private final ForkJoinPool pool;
+    private final int stripeSize;
+
+    /**
+     * Constructs an instance with the default deflate level and adaptive filtering
+     * that uses the common fork-join pool.
+     */
+    public ParallelPngEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, Filter.ADAPTIVE, ForkJoinPool.commonPool());
+    }
+
+    public ParallelPngEncoder(int deflateLevel, Filter filter, ForkJoinPool pool) {
+        this(deflateLevel, filter, pool, DEFAULT_STRIPE_SIZE);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param deflateLevel the deflate level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param filter the filter strategy
+     * @param pool the pool on which stripes are compressed
+     * @param stripeSize minimum number of uncompressed bytes per stripe; stripes are whole rows
+     */
+    public ParallelPngEncoder(int deflateLevel, Filter filter, ForkJoinPool pool, int stripeSize) {
+        checkArgument(deflateLevel == Deflater.DEFAULT_COMPRESSION || (deflateLevel >= 0 && deflateLevel <= 9), "deflate level %s", deflateLevel);
+        checkArgument(stripeSize > 0, "stripe size must be positive");
+        this.deflateLevel = deflateLevel;
+        this.filter = checkNotNull(filter);
+        this.pool = checkNotNull(pool);
+        this.stripeSize = stripeSize;
+    }
+
+    /**
+     * Encodes an image, reading all of its pixels first.
+     * @param pixels the source of the pixels
+     * @param out the output stream; not closed
+     * @throws IOException if the pixels cannot be read, on I/O error, or if encoding is interrupted
+     */
+    @Override
+    public void encode(PixelSource pixels, OutputStream out) throws IOException {
+        encode(pixels.readPixels(), pixels.getWidth(), pixels.getHeight(), out);
+    }
+
+    /**
+     * Encodes an image.
+     * @param image the image
+     * @param out the output stream; not closed
+     * @throws IOException on I/O error or if encoding is interrupted
+     */
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        encode(rgb, width, height, out);
+    }
+
+    /**
+     * Encodes an image whose pixels are packed as RGB integers in row-major order.
+     * @param rgb the pixels
+     * @param width the image width
+     * @param height the image height
+     * @param out the output stream; not closed
+     * @throws IOException on I/O error or if encoding is interrupted
+     */
+    public void encode(int[] rgb, int width, int height, OutputStream out) throws IOException {
+        checkArgument(width > 0 && height > 0, "invalid dimensions %sx%s", width, height);
+        checkArgument(rgb.length >= (long) width * height, "array too small for %sx%s", width, height);
+        int rowLength = Math.multiplyExact(width, PngEncoder.BYTES_PER_PIXEL);
+        int rowsPerStripe = Math.max(1, stripeSize / (rowLength + 1));
+        List<ForkJoinTask<Stripe>> tasks = new ArrayList<>();
+        for (int startRow = 0; startRow < height; startRow += rowsPerStripe) {
+            int endRow = Math.min(height, startRow + rowsPerStripe);
+            StripeCompressor compressor = new StripeCompressor(rgb, width, startRow, endRow, endRow == height);
+            tasks.add(pool.submit(ForkJoinTask.adapt(compressor::compress)));
+        }
+        out.write(PngEncoder.SIGNATURE);
+        PngEncoder.writeChunk(out, "IHDR", PngEncoder.header(width, height), 13);
+        IdatOutputStream idat = new IdatOutputStream(out);
+        idat.write(zlibHeader(deflateLevel));
+        long adler = 1;
+        try {
+            for (ForkJoinTask<Stripe> task : tasks) {
+                Stripe stripe = join(task);
+                idat.write(stripe.compressed, 0, stripe.compressedLength);
+                adler = combineAdler32(adler, stripe.adler32, stripe.uncompressedLength);
+            }
+        } finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+        byte[] trailer = new byte[4];
+        PngEncoder.putInt(trailer, 0, (int) adler);
+        idat.write(trailer);
+        idat.flush();
+        PngEncoder.writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private static Stripe join(ForkJoinTask<Stripe> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException("interrupted while compressing");
+            ie.initCause(e);
+            throw ie;
+        } catch (ExecutionException e) {
+            throw new IOException("failed to compress stripe", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the two-byte zlib stream header for a deflate level. The compression
+     * level field is only informative.
+     */
+    static byte[] zlibHeader(int deflateLevel) {
+        int flg;
+        if (deflateLevel == Deflater.DEFAULT_COMPRESSION || deflateLevel == 6) {
+            flg = 0x9c;
+        } else if (deflateLevel <= 1) {
+            flg = 0x01;
+        } else if (deflateLevel <= 5) {
+            flg = 0x5e;
+        } else {
+            flg = 0xda;
+        }
+        return new byte[]{0x78, (byte) flg};
+    }
+
+    /**
+     * Combines two Adler-32 checksums into the checksum of the concatenated data.
+     * See {@code adler32_combine} in zlib.
+     * @param adler1 checksum of the first part
+     * @param adler2 checksum of the second part
+     * @param len2 length of the second part
+     * @return checksum of the concatenation
+     */
+    static long combineAdler32(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static final class Stripe {
+
+        final byte[] compressed;
+        final int compressedLength;
+        final long uncompressedLength;
+        final long adler32;
+
+        Stripe(byte[] compressed, int compressedLength, long uncompressedLength, long adler32) {
+            this.compressed = compressed;
+            this.compressedLength = compressedLength;
+            this.uncompressedLength = uncompressedLength;
+            this.adler32 = adler32;
+        }
+    }
+
+    private final class StripeCompressor {
+
+        private final int[] rgb;
+        private final int width;
+        private final int startRow;
+        private final int endRow;
+        private final boolean last;
+
+        StripeCompressor(int[] rgb, int width, int startRow, int endRow, boolean last) {
+            this.rgb = rgb;
+            this.width = width;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.last = last;
+        }
+
+        Stripe compress() {
+            int rowLength = width * PngEncoder.BYTES_PER_PIXEL;
+            byte[] previous = new byte[rowLength];
+            byte[] current = new byte[rowLength];
+            if (startRow > 0) {
+                PngEncoder.toRgbBytes(rgb, (startRow - 1) * width, width, previous);
+            }
+            RowFilterer filterer = new RowFilterer(filter, rowLength);
+            Adler32 adler = new Adler32();
+            long uncompressedLength = 0;
+            Deflater deflater = new Deflater(deflateLevel, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, (endRow - startRow) * (rowLength + 1) / 4));
+            byte[] buffer = new byte[32 * 1024];
+            try {
+                for (int y = startRow; y < endRow; y++) {
+                    PngEncoder.toRgbBytes(rgb, y * width, width, current);
+                    byte[] filtered = filterer.filter(current, previous);
+                    adler.update(filtered, 0, filtered.length);
+                    uncompressedLength += filtered.length;
+                    deflater.setInput(filtered, 0, filtered.length);
+                    while (!deflater.needsInput()) {
+                        int n = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+                        out.write(buffer, 0, n);
+                    }
+                    byte[] tmp = previous;
+                    previous = current;
+                    current = tmp;
+                }
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        out.write(buffer, 0, n);
+                    }
+                } else {
+                    int n;
+                    do {
+                        n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        out.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+            } finally {
+                deflater.end();
+            }
+            return new Stripe(out.toByteArray(), out.size(), uncompressedLength, adler.getValue());
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.github.mike10004.xvfbmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Encoder of 8-bit RGB PNG images that streams scanlines to an output stream.
+ * Rows are filtered and compressed as they are written, so the image is never
+ * held in memory in full, either decoded or encoded. The deflate level and the
+ * filter strategy trade size for throughput; level 1 with {@link Filter#SUB}
+ * is fast, and the default level with {@link Filter#ADAPTIVE} is small.
+ */
+public class PngEncoder implements ImageEncoder {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    static final int BYTES_PER_PIXEL = 3;
+
+    static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Scanline filter strategies. See section 6 of the PNG specification.
+     */
+    public enum Filter {
+        NONE(0), SUB(1), UP(2), AVERAGE(3), PAETH(4),
+
+        /**
+         * Chooses a filter for each row by the minimum sum of absolute differences heuristic.
+         */
+        ADAPTIVE(-1);
+
+        private final int type;
+
+        Filter(int type) {
+            this.type = type;
+        }
+    }
+
+    private final int deflateLevel;
+    private final Filter filter;
+
+    /**
+     * Constructs an instance with the default deflate level and adaptive filtering.
+     */
+    public PngEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, Filter.ADAPTIVE);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param deflateLevel the deflate level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param filter the filter strategy
+     */
+    public PngEncoder(int deflateLevel, Filter filter) {
+        checkArgument(deflateLevel == Deflater.DEFAULT_COMPRESSION || (deflateLevel >= 0 && deflateLevel <= 9), "deflate level %s", deflateLevel);
+        this.deflateLevel = deflateLevel;
+        this.filter = checkNotNull(filter);
+    }
+
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Encodes an image, reading the pixels one row at a time.
+     * @param pixels the source of the pixels
+     * @param out the output stream; not closed
+     * @throws IOException if the pixels cannot be read or on I/O error
+     */
+    @Override
+    public void encode(PixelSource pixels, OutputStream out) throws IOException {
+        try (RowWriter writer = begin(pixels.getWidth(), pixels.getHeight(), out)) {
+            pixels.readRows((y, rgb) -> writer.writeRow(rgb, 0));
+            writer.finish();
+        }
+    }
+
+    /**
+     * Starts encoding an image. The signature and header are written immediately.
+     * Write the rows with the returned writer, top to bottom, and then invoke
+     * {@link RowWriter#finish()}. The output stream is not closed.
+     * @param width the image width
+     * @param height the image height
+     * @param out the output stream
+     * @return the row writer
+     * @throws IOException on I/O error
+     */
+    public RowWriter begin(int width, int height, OutputStream out) throws IOException {
+        checkArgument(width > 0 && height > 0, "invalid dimensions %sx%s", width, height);
+        return new RowWriter(width, height, checkNotNull(out));
+    }
+
+    /**
+     * Writer of the rows of an image. Instances should be closed, which releases the
+     * native resources of the compressor, whether or not the image was finished.
+     */
+    public final class RowWriter implements Closeable {
+
+        private final int width;
+        private final int height;
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final DeflaterOutputStream idat;
+        private byte[] previous;
+        private byte[] current;
+        private final RowFilterer filterer;
+        private int rowsWritten;
+        private boolean finished;
+
+        private RowWriter(int width, int height, OutputStream out) throws IOException {
+            this.width = width;
+            this.height = height;
+            this.out = out;
+            int rowLength = Math.multiplyExact(width, BYTES_PER_PIXEL);
+            previous = new byte[rowLength];
+            current = new byte[rowLength];
+            filterer = new RowFilterer(filter, rowLength);
+            out.write(SIGNATURE);
+            writeChunk(out, "IHDR", header(width, height), 13);
+            deflater = new Deflater(deflateLevel);
+            idat = new DeflaterOutputStream(new IdatOutputStream(out), deflater, IDAT_CHUNK_SIZE);
+        }
+
+        /**
+         * Writes a row of pixels packed as RGB integers, as in {@link java.awt.image.BufferedImage#TYPE_INT_RGB}.
+         * @param rgb array containing the pixels
+         * @param offset index of the first pixel of the row
+         * @throws IOException on I/O error
+         */
+        public void writeRow(int[] rgb, int offset) throws IOException {
+            toRgbBytes(rgb, offset, width, current);
+            writeCurrentRow();
+        }
+
+        /**
+         * Writes a row of pixels as consecutive red, green and blue bytes.
+         * @param rgb array containing the row
+         * @param offset index of the red byte of the first pixel
+         * @throws IOException on I/O error
+         */
+        public void writeRgbRow(byte[] rgb, int offset) throws IOException {
+            System.arraycopy(rgb, offset, current, 0, current.length);
+            writeCurrentRow();
+        }
+
+        private void writeCurrentRow() throws IOException {
+            checkState(!finished, "already finished");
+            checkState(rowsWritten < height, "all %s rows already written", height);
+            byte[] chosen = filterer.filter(current, previous);
+            idat.write(chosen, 0, chosen.length);
+            byte[] tmp = previous;
+            previous = current;
+            current = tmp;
+            rowsWritten++;
+        }
+
+        /**
+         * Writes the end of the image. All rows must have been written.
+         * @throws IOException on I/O error
+         */
+        public void finish() throws IOException {
+            checkState(!finished, "already finished");
+            checkState(rowsWritten == height, "%s of %s rows written", rowsWritten, height);
+            finished = true;
+            try {
+                idat.finish();
+                idat.flush();
+            } finally {
+                deflater.end();
+            }
+            writeChunk(out, "IEND", new byte[0], 0);
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    static void toRgbBytes(int[] rgb, int offset, int width, byte[] dest) {
+        for (int x = 0, i = 0; x < width; x++) {
+            int p = rgb[offset + x];
+            dest[i++] = (byte) (p >> 16);
+            dest[i++] = (byte) (p >> 8);
+            dest[i++] = (byte) p;
+        }
+    }
+
+    /**
+     * Applier of a filter strategy to rows. Each filtered row is the filter
+     * type byte followed by the filtered bytes. Not thread-safe.
+     */
+    static final class RowFilterer {
+
+        private final Filter filter;
+        private final byte[][] filtered;
+
+        RowFilterer(Filter filter, int rowLength) {
+            this.filter = checkNotNull(filter);
+            filtered = new byte[Filter.values().length - 1][rowLength + 1];
+        }
+
+        /**
+         * Filters a row.
+         * @param cur the row
+         * @param prev the previous row, or all zeros for the first row
+         * @return the filtered row, valid until the next invocation
+         */
+        byte[] filter(byte[] cur, byte[] prev) {
+            if (filter != Filter.ADAPTIVE) {
+                byte[] dest = filtered[filter.type];
+                applyFilter(filter.type, cur, prev, dest);
+                return dest;
+            }
+            byte[] best = null;
+            long bestSum = Long.MAX_VALUE;
+            for (int type = 0; type < filtered.length; type++) {
+                byte[] dest = filtered[type];
+                applyFilter(type, cur, prev, dest);
+                long sum = 0;
+                for (int i = 1; i < dest.length && sum < bestSum; i++) {
+                    sum += Math.abs((int) dest[i]);
+                }
+                if (sum < bestSum) {
+                    bestSum = sum;
+                    best = dest;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static void applyFilter(int type, byte[] cur, byte[] prev, byte[] dest) {
+        dest[0] = (byte) type;
+        int n = cur.length;
+        switch (type) {
+            case 0:
+                System.arraycopy(cur, 0, dest, 1, n);
+                break;
+            case 1:
+                for (int i = 0; i < n; i++) {
+                    int left = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] : 0;
+                    dest[i + 1] = (byte) (cur[i] - left);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    dest[i + 1] = (byte) (cur[i] - prev[i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < n; i++) {
+                    int left = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    dest[i + 1] = (byte) (cur[i] - ((left + (prev[i] & 0xff)) >>> 1));
+                }
+                break;
+            case 4:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    int b = prev[i] & 0xff;
+                    int c = i >= BYTES_PER_PIXEL ? prev[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    dest[i + 1] = (byte) (cur[i] - paeth(a, b, c));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("filter type " + type);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Estimates the size of the PNG encoding of an image, for sizing an output buffer.
+     * @param rawLength length of the uncompressed pixel data, or 0 if unknown
+     * @return an initial buffer capacity
+     */
+    static int estimateEncodedSize(long rawLength) {
+        // compressed screenshots are usually much smaller than the raw pixels
+        return Math.max(4096, (int) Math.min(rawLength / 8, Integer.MAX_VALUE));
+    }
+
+    static byte[] header(int width, int height) {
+        byte[] h = new byte[13];
+        putInt(h, 0, width);
+        putInt(h, 4, height);
+        h[8] = 8; // bit depth
+        h[9] = 2; // color type: truecolor
+        h[10] = 0; // compression: deflate
+        h[11] = 0; // filter method: adaptive
+        h[12] = 0; // interlace: none
+        return h;
+    }
+
+    static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    /**
+     * Stream that writes its content as a sequence of IDAT chunks.
+     */
+    static final class IdatOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count;
+
+        IdatOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static factory methods for sequences of intervals to wait between polls.
+ * Each sequence is an {@link Iterable} whose iterators start from the
+ * beginning of the sequence, so a sequence can be reused for many polls.
+ * The basic sequences are infinite; bound them with {@link #limit(Iterable, int)}
+ * or {@link #until(Iterable, Duration)} before passing them to a {@link Poller}.
+ */
+public final class PollIntervals {
+
+    private PollIntervals() {}
+
+    /**
+     * Returns an infinite sequence of equal intervals.
+     * @param intervalMs the interval in milliseconds
+     * @return the sequence
+     */
+    public static Iterable<Long> regular(long intervalMs) {
+        checkArgument(intervalMs > 0, "interval must be > 0, not %s", intervalMs);
+        return () -> new InfiniteIterator() {
+            @Override
+            protected long nextInterval() {
+                return intervalMs;
+            }
+        };
+    }
+
+    /**
+     * Returns an infinite sequence of exponentially increasing intervals. Each interval is
+     * the previous interval times the multiplier, up to a maximum.
+     * @param initialMs the first interval in milliseconds
+     * @param multiplier factor by which each interval exceeds the previous; must be at least 1
+     * @param capMs maximum interval in milliseconds
+     * @return the sequence
+     */
+    public static Iterable<Long> exponential(long initialMs, double multiplier, long capMs) {
+        checkArgument(initialMs > 0, "initial interval must be > 0, not %s", initialMs);
+        checkArgument(multiplier >= 1, "multiplier must be >= 1, not %s", multiplier);
+        checkArgument(capMs >= initialMs, "cap %s must be >= initial interval %s", capMs, initialMs);
+        return () -> new InfiniteIterator() {
+
+            private double current = initialMs;
+
+            @Override
+            protected long nextInterval() {
+                long interval = Math.min(capMs, Math.round(current));
+                current = Math.min(capMs, current * multiplier);
+                return interval;
+            }
+        };
+    }
+
+    /**
+     * Returns an infinite sequence of randomized intervals with decorrelated jitter.
+     * Each interval is chosen uniformly between the base interval and three times
+     * the previous interval, up to a maximum. Randomization keeps many pollers
+     * that start at the same time from polling in lockstep.
+     * @param baseMs the minimum interval in milliseconds
+     * @param capMs the maximum interval in milliseconds
+     * @return the sequence
+     */
+    public static Iterable<Long> decorrelatedJitter(long baseMs, long capMs) {
+        return decorrelatedJitter(baseMs, capMs, ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    static Iterable<Long> decorrelatedJitter(long baseMs, long capMs, Supplier<? extends Random> randomSupplier) {
+        checkArgument(baseMs > 0, "base interval must be > 0, not %s", baseMs);
+        checkArgument(capMs >= baseMs, "cap %s must be >= base interval %s", capMs, baseMs);
+        checkNotNull(randomSupplier);
+        return () -> new InfiniteIterator() {
+
+            private long previous = baseMs;
+
+            @Override
+            protected long nextInterval() {
+                long upper = Math.min(capMs, Math.max(baseMs, previous * 3));
+                long interval = upper <= baseMs ? baseMs : baseMs + (long) (randomSupplier.get().nextDouble() * (upper - baseMs + 1));
+                previous = interval;
+                return interval;
+            }
+        };
+    }
+
+    /**
+     * Returns an infinite sequence that starts with a number of short intervals
+     * and continues with long intervals. This suits conditions that are usually
+     * satisfied quickly but occasionally take much longer.
+     * @param fastIntervalMs the short interval in milliseconds
+     * @param numFastIntervals the number of short intervals
+     * @param slowIntervalMs the long interval in milliseconds
+     * @return the sequence
+     */
+    public static Iterable<Long> fastThenSlow(long fastIntervalMs, int numFastIntervals, long slowIntervalMs) {
+        checkArgument(fastIntervalMs > 0, "fast interval must be > 0, not %s", fastIntervalMs);
+        checkArgument(numFastIntervals >= 0, "number of fast intervals must be nonnegative");
+        checkArgument(slowIntervalMs > 0, "slow interval must be > 0, not %s", slowIntervalMs);
+        return () -> new InfiniteIterator() {
+
+            private int count;
+
+            @Override
+            protected long nextInterval() {
+                return count++ < numFastIntervals ? fastIntervalMs : slowIntervalMs;
+            }
+        };
+    }
+
+    /**
+     * Returns a sequence that ends after a maximum number of intervals.
+     * @param intervals the sequence to limit
+     * @param maxNumPolls the maximum number of intervals, and therefore of polls
+     * @return the limited sequence
+     */
+    public static Iterable<Long> limit(Iterable<Long> intervals, int maxNumPolls) {
+        checkNotNull(intervals);
+        checkArgument(maxNumPolls >= 0, "maxNumPolls must be nonnegative");
+        return () -> new Iterator<Long>() {
+
+            private final Iterator<Long> delegate = intervals.iterator();
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                return count < maxNumPolls && delegate.hasNext();
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                count++;
+                return delegate.next();
+            }
+        };
+    }
+
+    /**
+     * Returns a sequence that ends when a deadline passes. The deadline is measured
+     * from the time an iterator is created, using {@link System#nanoTime()}, so the
+     * timeout does not depend on how long each poll takes. Each interval is shortened
+     * if necessary so that the last wait does not extend far past the deadline, and
+     * a wait that was shortened to end at the deadline is followed by one more
+     * element, so that a final poll is executed at the deadline. The interval after
+     * that final poll is the minimum of one millisecond. The first interval is always
+     * returned, so at least one poll is executed.
+     * @param intervals the sequence to bound
+     * @param timeout the time after which no further polls are executed
+     * @return the bounded sequence
+     */
+    public static Iterable<Long> until(Iterable<Long> intervals, Duration timeout) {
+        return until(intervals, timeout, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    static Iterable<Long> until(Iterable<Long> intervals, Duration timeout, Ticker ticker) {
+        checkNotNull(intervals);
+        checkArgument(!timeout.isNegative(), "timeout must be nonnegative");
+        checkNotNull(ticker);
+        long timeoutNanos = timeout.toNanos();
+        return () -> new Iterator<Long>() {
+
+            private final Iterator<Long> delegate = intervals.iterator();
+            private final long deadline = ticker.read() + timeoutNanos;
+            private boolean first = true;
+            private boolean finalPollPending;
+
+            private long remainingNanos() {
+                return deadline - ticker.read();
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (first || remainingNanos() > 0) {
+                    return delegate.hasNext();
+                }
+                return finalPollPending;
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long remainingNanos = remainingNanos();
+                if (!first && remainingNanos <= 0) {
+                    finalPollPending = false;
+                    return 1L;
+                }
+                first = false;
+                long intervalMs = checkNotNull(delegate.next(), "interval iterator must return non-nulls");
+                long remainingMs = Math.max(1, (remainingNanos + 999999) / 1000000);
+                if (remainingNanos > 0 && intervalMs >= remainingMs) {
+                    finalPollPending = true;
+                    return remainingMs;
+                }
+                return intervalMs;
+            }
+        };
+    }
+
+    private static abstract class InfiniteIterator implements Iterator<Long> {
+
+        @Override
+        public final boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public final Long next() {
+            return nextInterval();
+        }
+
+        protected abstract long nextInterval();
+    }
+}
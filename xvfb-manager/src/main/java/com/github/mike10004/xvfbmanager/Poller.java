@@ -1,11 +1,19 @@
 package com.github.mike10004.xvfbmanager;
 
 import com.github.mike10004.xvfbmanager.Sleeper.DefaultSleeper;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -80,6 +88,20 @@ public abstract class Poller<T> {
         }
     }
 
+    /**
+     * Polls at the given intervals until the timeout elapses. The timeout is a
+     * deadline measured with {@link System#nanoTime()} from the start of polling,
+     * rather than a number of attempts, so it does not depend on how long each
+     * check takes.
+     * @param intervalsMs sequence of interval lengths in milliseconds; see {@link PollIntervals}
+     * @param timeout the time after which no further checks are executed
+     * @return the poll outcome
+     * @throws InterruptedException if waiting is interrupted
+     */
+    public PollOutcome<T> poll(Iterable<Long> intervalsMs, Duration timeout) throws InterruptedException {
+        return poll(PollIntervals.until(intervalsMs, timeout).iterator());
+    }
+
     /**
      * Starts polling and returns an outcome when polling stops.
      * @param intervalsMs an iterator of interval lengths in milliseconds
@@ -87,6 +109,17 @@ public abstract class Poller<T> {
      * @throws InterruptedException if waiting is interrupted
      */
     public PollOutcome<T> poll(Iterator<Long> intervalsMs) throws InterruptedException {
+        @Nullable Object event = FlightEvents.beginPoll();
+        PollOutcome<T> outcome = null;
+        try {
+            outcome = doPoll(intervalsMs);
+            return outcome;
+        } finally {
+            FlightEvents.endPoll(event, getClass(), outcome == null ? 0 : outcome.getNumAttempts(), outcome == null ? "EXCEPTION" : outcome.reason.name());
+        }
+    }
+
+    private PollOutcome<T> doPoll(Iterator<Long> intervalsMs) throws InterruptedException {
         long startTime = System.currentTimeMillis();
         int numPreviousPollAttempts = 0;
         PollAnswer<T> evaluation = null;
@@ -119,6 +152,214 @@ public abstract class Poller<T> {
         return new PollOutcome<>(pollResult, maybeGetContent(evaluation), duration, numPreviousPollAttempts);
     }
 
+    /**
+     * Starts polling at regular intervals on the {@link #sharedScheduler() shared scheduler}.
+     * @param intervalMs the interval in milliseconds
+     * @param maxNumPolls the maximum number of polls to be executed
+     * @return a future that is completed with the poll outcome
+     * @see #pollAsync(Iterator, ScheduledExecutorService)
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(long intervalMs, int maxNumPolls) {
+        return pollAsync(intervalMs, maxNumPolls, sharedScheduler());
+    }
+
+    /**
+     * Starts polling at regular intervals on the given scheduler.
+     * @param intervalMs the interval in milliseconds
+     * @param maxNumPolls the maximum number of polls to be executed
+     * @param scheduler the scheduler on which checks are executed
+     * @return a future that is completed with the poll outcome
+     * @see #pollAsync(Iterator, ScheduledExecutorService)
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(long intervalMs, int maxNumPolls, ScheduledExecutorService scheduler) {
+        return pollAsync(new RegularIntervals(intervalMs, maxNumPolls), scheduler);
+    }
+
+    /**
+     * Starts polling at the given intervals on the given scheduler until the timeout elapses.
+     * @param intervalsMs sequence of interval lengths in milliseconds; see {@link PollIntervals}
+     * @param timeout the time after which no further checks are executed
+     * @param scheduler the scheduler on which checks are executed
+     * @return a future that is completed with the poll outcome
+     * @see #poll(Iterable, Duration)
+     * @see #pollAsync(Iterator, ScheduledExecutorService)
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(Iterable<Long> intervalsMs, Duration timeout, ScheduledExecutorService scheduler) {
+        return pollAsync(PollIntervals.until(intervalsMs, timeout).iterator(), scheduler);
+    }
+
+    /**
+     * Starts polling at regular intervals, timed by the given scheduler, with each check
+     * executed by the given executor.
+     * @param intervalMs the interval in milliseconds
+     * @param maxNumPolls the maximum number of polls to be executed
+     * @param scheduler the scheduler that times checks
+     * @param checkExecutor the executor on which checks are executed
+     * @return a future that is completed with the poll outcome
+     * @see #pollAsync(Iterator, ScheduledExecutorService, Executor)
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(long intervalMs, int maxNumPolls, ScheduledExecutorService scheduler, Executor checkExecutor) {
+        return pollAsync(new RegularIntervals(intervalMs, maxNumPolls), scheduler, checkExecutor);
+    }
+
+    /**
+     * Starts polling at the given intervals until the timeout elapses, with checks timed
+     * by the given scheduler and executed by the given executor.
+     * @param intervalsMs sequence of interval lengths in milliseconds; see {@link PollIntervals}
+     * @param timeout the time after which no further checks are executed
+     * @param scheduler the scheduler that times checks
+     * @param checkExecutor the executor on which checks are executed
+     * @return a future that is completed with the poll outcome
+     * @see #pollAsync(Iterator, ScheduledExecutorService, Executor)
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(Iterable<Long> intervalsMs, Duration timeout, ScheduledExecutorService scheduler, Executor checkExecutor) {
+        return pollAsync(PollIntervals.until(intervalsMs, timeout).iterator(), scheduler, checkExecutor);
+    }
+
+    /**
+     * Starts polling without blocking the calling thread. Each check is executed
+     * on the given scheduler, and the interval between checks is a scheduled delay
+     * rather than a sleep, so no thread is occupied while waiting. Many polls can
+     * therefore share a scheduler with a few threads, provided that checks are short.
+     * The sequence of checks is the same as that of {@link #poll(Iterator)}, but
+     * this poller's {@link Sleeper} is not used.
+     *
+     * <p>The returned future is completed exceptionally if a check throws an exception
+     * or the scheduler rejects a task. Cancelling the future stops polling: a
+     * scheduled check that has not started is cancelled, and a check that is running
+     * when the future is cancelled is not followed by another.</p>
+     * @param intervalsMs an iterator of interval lengths in milliseconds
+     * @param scheduler the scheduler on which checks are executed
+     * @return a future that is completed with the poll outcome
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(Iterator<Long> intervalsMs, ScheduledExecutorService scheduler) {
+        return pollAsync(intervalsMs, scheduler, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Starts polling without blocking the calling thread, with checks that may block.
+     * The scheduler only times the checks, and each check is handed to the given
+     * executor, so that a check that blocks, for example by executing a program,
+     * does not occupy a scheduler thread. Otherwise this is the same as
+     * {@link #pollAsync(Iterator, ScheduledExecutorService)}.
+     * @param intervalsMs an iterator of interval lengths in milliseconds
+     * @param scheduler the scheduler that times checks
+     * @param checkExecutor the executor on which checks are executed
+     * @return a future that is completed with the poll outcome
+     */
+    public CompletableFuture<PollOutcome<T>> pollAsync(Iterator<Long> intervalsMs, ScheduledExecutorService scheduler, Executor checkExecutor) {
+        AsyncPoll asyncPoll = new AsyncPoll(intervalsMs, scheduler, checkExecutor);
+        asyncPoll.schedule(0);
+        return asyncPoll.result;
+    }
+
+    /**
+     * Gets the scheduler shared by asynchronous polls that do not specify a scheduler.
+     * Its threads are daemon threads, so it does not need to be shut down.
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return Scheduling.sharedScheduler();
+    }
+
+    private class AsyncPoll implements Runnable {
+
+        private final Iterator<Long> intervalsMs;
+        private final ScheduledExecutorService scheduler;
+        private final Executor checkExecutor;
+        private final CompletableFuture<PollOutcome<T>> result;
+        private final long startTime;
+        private volatile Future<?> pending;
+        private int numPreviousPollAttempts;
+
+        public AsyncPoll(Iterator<Long> intervalsMs, ScheduledExecutorService scheduler, Executor checkExecutor) {
+            this.intervalsMs = checkNotNull(intervalsMs);
+            this.scheduler = checkNotNull(scheduler);
+            this.checkExecutor = checkNotNull(checkExecutor);
+            result = new CompletableFuture<>();
+            startTime = System.currentTimeMillis();
+            @Nullable Object event = FlightEvents.beginPoll();
+            result.whenComplete((outcome, t) -> {
+                cancelPending();
+                FlightEvents.endPoll(event, Poller.this.getClass(), outcome == null ? numPreviousPollAttempts : outcome.getNumAttempts(), describeOutcome(outcome, t));
+            });
+        }
+
+        private void cancelPending() {
+            Future<?> pending_ = pending;
+            if (pending_ != null) {
+                pending_.cancel(false);
+            }
+        }
+
+        public void schedule(long delayMs) {
+            try {
+                pending = scheduler.schedule(this::dispatch, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (result.isDone()) {
+                cancelPending();
+            }
+        }
+
+        private void dispatch() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                checkExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                if (!intervalsMs.hasNext()) {
+                    finish(StopReason.TIMEOUT, null);
+                    return;
+                }
+                long intervalMs = checkNotNull(intervalsMs.next(), "interval iterator must return non-nulls").longValue();
+                checkArgument(intervalMs > 0, "intervals iterator must return positive values; got %s", intervalMs);
+                PollAnswer<T> evaluation = checkAndForceNotNull(numPreviousPollAttempts);
+                numPreviousPollAttempts++;
+                switch (evaluation.action) {
+                    case CONTINUE:
+                        schedule(intervalMs);
+                        break;
+                    case ABORT:
+                        finish(StopReason.ABORTED, evaluation.content);
+                        break;
+                    case RESOLVE:
+                        finish(StopReason.RESOLVED, evaluation.content);
+                        break;
+                    default:
+                        throw new IllegalStateException("bug: unhandled enum " + evaluation.action);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void finish(StopReason reason, @Nullable T content) {
+            Duration duration = Duration.of(System.currentTimeMillis() - startTime, ChronoUnit.MILLIS);
+            result.complete(new PollOutcome<>(reason, content, duration, numPreviousPollAttempts));
+        }
+    }
+
+    private static String describeOutcome(@Nullable PollOutcome<?> outcome, @Nullable Throwable t) {
+        if (outcome != null) {
+            return outcome.reason.name();
+        }
+        return t instanceof CancellationException ? "CANCELLED" : "EXCEPTION";
+    }
+
     private PollAnswer<T> checkAndForceNotNull(int numPreviousPollAttempts) {
         PollAnswer<T> answer = check(numPreviousPollAttempts);
         checkNotNull(answer, "check() must return non-null with non-null action");
@@ -360,7 +601,6 @@ public abstract class Poller<T> {
      *                  keep polling
      * @return the poller
      */
-    @SuppressWarnings("unused")
     public static Poller<Void> checking(final Supplier<Boolean> condition) {
         return new SimplePoller(condition);
     }
@@ -8,57 +8,94 @@ package com.github.mike10004.xvfbmanager;
 import com.github.mike10004.xvfbmanager.Poller.PollOutcome;
 import com.github.mike10004.xvfbmanager.Poller.StopReason;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.primitives.Ints;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class PollingXLockFileChecker implements DefaultXvfbController.XLockFileChecker {
 
-    private final long pollIntervalMs;
+    private final Iterable<Long> pollIntervalsMs;
     private final Sleeper sleeper;
     private final XLockFileUtility lockFileUtility;
 
     public PollingXLockFileChecker(long pollIntervalMs, Sleeper sleeper) {
-        this(pollIntervalMs, sleeper, XLockFileUtility.getInstance());
+        this(PollIntervals.regular(pollIntervalMs), sleeper);
+    }
+
+    /**
+     * Constructs an instance that polls at the given intervals.
+     * @param pollIntervalsMs sequence of intervals in milliseconds; see {@link PollIntervals}
+     * @param sleeper the sleeper
+     */
+    public PollingXLockFileChecker(Iterable<Long> pollIntervalsMs, Sleeper sleeper) {
+        this(pollIntervalsMs, sleeper, XLockFileUtility.getInstance());
     }
 
     @VisibleForTesting
-    PollingXLockFileChecker(long pollIntervalMs, Sleeper sleeper, XLockFileUtility lockFileUtility) {
-        this.pollIntervalMs = pollIntervalMs;
+    PollingXLockFileChecker(Iterable<Long> pollIntervalsMs, Sleeper sleeper, XLockFileUtility lockFileUtility) {
+        this.pollIntervalsMs = checkNotNull(pollIntervalsMs);
         this.sleeper = sleeper;
         this.lockFileUtility = checkNotNull(lockFileUtility);
     }
 
     @Override
     public void waitForCleanup(String display, long timeoutMs) throws LockFileCheckingException {
-        File lockFile;
+        File lockFile = constructLockFilePathname(display);
+        PollOutcome<?> pollOutcome;
         try {
-            lockFile = lockFileUtility.constructLockFilePathname(display);
-        } catch (IOException e) {
+            pollOutcome = createPoller(lockFile).poll(pollIntervalsMs, Duration.ofMillis(timeoutMs));
+        } catch (InterruptedException e) {
             throw new LockFileCheckingException(e);
         }
-        int maxNumPolls = Ints.checkedCast(Math.round(Math.ceil((float) timeoutMs / (float) pollIntervalMs)));
-        long startTime = System.currentTimeMillis();
-        PollOutcome<?> pollOutcome;
+        checkOutcome(pollOutcome);
+    }
+
+    /**
+     * Polls for lock file cleanup on the given scheduler, without blocking a thread between polls.
+     */
+    @Override
+    public CompletableFuture<Void> waitForCleanupAsync(String display, long timeoutMs, ScheduledExecutorService scheduler) {
+        File lockFile;
         try {
-            pollOutcome = new Poller<Void>(sleeper) {
-                @Override
-                protected PollAnswer<Void> check(int pollAttemptsSoFar) {
-                    long now = System.currentTimeMillis();
-                    if (now - startTime > timeoutMs) {
-                        return abortPolling();
-                    }
-                    return lockFile.exists() ? continuePolling() : resolve(null);
-                }
-            }.poll(pollIntervalMs, maxNumPolls);
-        } catch (InterruptedException e) {
+            lockFile = constructLockFilePathname(display);
+        } catch (LockFileCheckingException e) {
+            CompletableFuture<Void> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            return failure;
+        }
+        return createPoller(lockFile)
+                .pollAsync(pollIntervalsMs, Duration.ofMillis(timeoutMs), scheduler)
+                .thenApply(this::checkOutcome);
+    }
+
+    private File constructLockFilePathname(String display) throws LockFileCheckingException {
+        try {
+            return lockFileUtility.constructLockFilePathname(display);
+        } catch (IOException e) {
             throw new LockFileCheckingException(e);
         }
+    }
+
+    private Poller<Void> createPoller(File lockFile) {
+        return new Poller<Void>(sleeper) {
+            @Override
+            protected PollAnswer<Void> check(int pollAttemptsSoFar) {
+                return lockFile.exists() ? continuePolling() : resolve(null);
+            }
+        };
+    }
+
+    @Nullable
+    private Void checkOutcome(PollOutcome<?> pollOutcome) throws LockFileCleanupTimeoutException {
         if (pollOutcome.reason == StopReason.ABORTED || pollOutcome.reason == StopReason.TIMEOUT) {
             throw new LockFileCleanupTimeoutException(String.format("%s after %s (%d attempts)", pollOutcome.reason, pollOutcome.duration, pollOutcome.getNumAttempts()));
         }
+        return null;
     }
 }
@@ -0,0 +1,267 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.github.mike10004.subprocess.ProcessMonitor;
+import io.github.mike10004.subprocess.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reactor that invokes callbacks when process futures complete. A single thread
+ * watches all registered futures, so the number of threads does not grow with
+ * the number of processes, unlike adapting each future with
+ * {@link com.google.common.util.concurrent.JdkFutureAdapters#listenInPoolThread(Future)},
+ * which blocks a thread per future. On Java 9 and later, a watched process's exit
+ * is signaled by {@code Process.onExit()}, so the thread sleeps until a process exits
+ * and only then sweeps for the future, which is completed soon after the exit. Futures
+ * without such a signal are swept at a regular interval. The thread sleeps indefinitely
+ * while no future needs to be swept.
+ */
+public class ProcessExitReactor {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessExitReactor.class);
+
+    /**
+     * Default interval between sweeps of the watched futures.
+     */
+    public static final long DEFAULT_SWEEP_INTERVAL_MS = 50;
+
+    @Nullable
+    private static final Method PROCESS_ON_EXIT_METHOD = findOnExitMethod();
+
+    private final long sweepIntervalMs;
+    private final ThreadFactory threadFactory;
+    private final Object lock = new Object();
+    private final List<Watch<?>> watches;
+    private boolean nudged;
+    private long sweepCount;
+    @Nullable
+    private Thread thread;
+
+    private static final ProcessExitReactor INSTANCE = new ProcessExitReactor(DEFAULT_SWEEP_INTERVAL_MS, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("xvfb-process-exit-reactor-%d")
+            .build());
+
+    /**
+     * Gets the reactor shared by all managers.
+     * @return the shared instance
+     */
+    public static ProcessExitReactor getInstance() {
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    ProcessExitReactor(long sweepIntervalMs, ThreadFactory threadFactory) {
+        checkArgument(sweepIntervalMs > 0, "sweep interval must be positive");
+        this.sweepIntervalMs = sweepIntervalMs;
+        this.threadFactory = checkNotNull(threadFactory);
+        watches = new ArrayList<>();
+    }
+
+    /**
+     * Registers a callback to be invoked when a process monitor's future completes.
+     * @param monitor the process monitor
+     * @param callback the callback
+     * @param executor executor on which the callback is invoked
+     * @param <SO> type of standard output content
+     * @param <SE> type of standard error content
+     */
+    public <SO, SE> void addCallback(ProcessMonitor<SO, SE> monitor, FutureCallback<? super ProcessResult<SO, SE>> callback, Executor executor) {
+        addCallback(monitor.future(), monitor.process(), callback, executor);
+    }
+
+    /**
+     * Registers a callback to be invoked when a future completes.
+     * @param future the future
+     * @param process the process whose exit completes the future, if any; used to wake the reactor promptly
+     * @param callback the callback
+     * @param executor executor on which the callback is invoked
+     * @param <T> result type
+     */
+    public <T> void addCallback(Future<T> future, @Nullable Process process, FutureCallback<? super T> callback, Executor executor) {
+        @Nullable CompletableFuture<?> exit = process == null ? null : getExitFuture(process);
+        Watch<T> watch = new Watch<>(future, callback, executor, exit == null);
+        synchronized (lock) {
+            watches.add(watch);
+            if (thread == null) {
+                thread = threadFactory.newThread(this::run);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+        if (exit != null) {
+            exit.whenComplete((p, t) -> markExited(watch));
+        }
+    }
+
+    /**
+     * Gets the number of futures whose callbacks have not yet been invoked.
+     * @return the count of watched futures
+     */
+    public int getWatchCount() {
+        synchronized (lock) {
+            return watches.size();
+        }
+    }
+
+    @VisibleForTesting
+    long getSweepCount() {
+        synchronized (lock) {
+            return sweepCount;
+        }
+    }
+
+    private void markExited(Watch<?> watch) {
+        synchronized (lock) {
+            watch.sweepNeeded = true;
+            nudged = true;
+            lock.notifyAll();
+        }
+    }
+
+    private boolean isSweepNeeded() {
+        for (Watch<?> watch : watches) {
+            if (watch.sweepNeeded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void run() {
+        try {
+            for (;;) {
+                List<Watch<?>> done = new ArrayList<>();
+                synchronized (lock) {
+                    while (!nudged && !isSweepNeeded()) {
+                        lock.wait();
+                    }
+                    if (!nudged) {
+                        lock.wait(sweepIntervalMs);
+                    }
+                    nudged = false;
+                    sweepCount++;
+                    for (Iterator<Watch<?>> it = watches.iterator(); it.hasNext();) {
+                        Watch<?> watch = it.next();
+                        if (watch.future.isDone()) {
+                            it.remove();
+                            done.add(watch);
+                        }
+                    }
+                }
+                done.forEach(Watch::dispatch);
+            }
+        } catch (InterruptedException e) {
+            log.debug("process exit reactor interrupted; {} futures no longer watched", getWatchCount());
+            synchronized (lock) {
+                thread = null;
+            }
+        }
+    }
+
+    @Nullable
+    private static CompletableFuture<?> getExitFuture(Process process) {
+        if (PROCESS_ON_EXIT_METHOD != null) {
+            try {
+                return (CompletableFuture<?>) PROCESS_ON_EXIT_METHOD.invoke(process);
+            } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+                log.debug("Process.onExit() not usable: {}", e.toString());
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Method findOnExitMethod() {
+        try {
+            return Process.class.getMethod("onExit");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static class Watch<T> {
+
+        public final Future<T> future;
+        private final FutureCallback<? super T> callback;
+        private final Executor executor;
+
+        /**
+         * Whether the future may be done, so that the reactor must sweep for it.
+         * This is false while the process is known to be running. Guarded by the reactor's lock.
+         */
+        public boolean sweepNeeded;
+
+        public Watch(Future<T> future, FutureCallback<? super T> callback, Executor executor, boolean sweepNeeded) {
+            this.future = checkNotNull(future);
+            this.callback = checkNotNull(callback);
+            this.executor = checkNotNull(executor);
+            this.sweepNeeded = sweepNeeded;
+        }
+
+        public void dispatch() {
+            try {
+                executor.execute(this::invokeCallback);
+            } catch (RuntimeException e) {
+                log.warn("failed to dispatch callback {}", callback, e);
+            }
+        }
+
+        private void invokeCallback() {
+            @Nullable T result = null;
+            @Nullable Throwable failure = null;
+            try {
+                result = getDone();
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (CancellationException e) {
+                failure = e;
+            }
+            try {
+                if (failure != null) {
+                    callback.onFailure(failure);
+                } else {
+                    callback.onSuccess(result);
+                }
+            } catch (RuntimeException e) {
+                log.warn("callback {} threw exception", callback, e);
+            }
+        }
+
+        private T getDone() throws ExecutionException {
+            boolean interrupted = false;
+            try {
+                for (;;) {
+                    try {
+                        return future.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Teardown of many processes with a bounded total duration. All processes are sent
+ * a termination signal at once and awaited against a single deadline; those still alive
+ * at the deadline are all sent a kill signal and awaited against a second deadline.
+ * Destroying N processes therefore takes at most twice the timeout, regardless of N.
+ */
+public final class ProcessTeardown {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessTeardown.class);
+
+    private ProcessTeardown() {}
+
+    /**
+     * Terminates processes, killing forcibly those that do not terminate in time.
+     * @param processes the processes
+     * @param timeout time to wait for processes to terminate after the termination signal,
+     * and again after the kill signal
+     * @param unit the unit of the timeout
+     * @return a report of the teardown
+     */
+    public static Report terminateAll(Collection<Process> processes, long timeout, TimeUnit unit) {
+        checkNotNull(processes);
+        checkArgument(timeout >= 0, "timeout must be nonnegative");
+        List<Process> targets = ImmutableList.copyOf(processes);
+        targets.forEach(Process::destroy);
+        List<Process> stragglers = awaitAll(targets, timeout, unit);
+        List<Long> forceKilledPids = new ArrayList<>(stragglers.size());
+        for (Process straggler : stragglers) {
+            straggler.destroyForcibly();
+            @Nullable Long pid = pid(straggler);
+            if (pid != null) {
+                forceKilledPids.add(pid);
+            }
+        }
+        List<Process> undestroyed = awaitAll(stragglers, timeout, unit);
+        if (!stragglers.isEmpty()) {
+            log.info("{} of {} processes killed forcibly after termination timeout; pids {}", stragglers.size(), targets.size(), forceKilledPids);
+        }
+        return new Report(targets, stragglers, forceKilledPids, undestroyed);
+    }
+
+    /**
+     * Waits for processes to terminate until a single deadline.
+     * @return the processes still alive at the deadline
+     */
+    private static List<Process> awaitAll(List<Process> processes, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Process> alive = new ArrayList<>();
+        for (Process process : processes) {
+            long remainingNanos = Math.max(0, deadline - System.nanoTime());
+            try {
+                if (!process.waitFor(remainingNanos, TimeUnit.NANOSECONDS)) {
+                    alive.add(process);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                alive.add(process);
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Gets the process ID. On Java 9 and later, {@code Process.pid()} is used;
+     * on Java 8, the {@code pid} field of the platform implementation is read.
+     * @param process the process
+     * @return the process ID, or null if it cannot be determined
+     */
+    @Nullable
+    static Long pid(Process process) {
+        try {
+            Method pidMethod = Process.class.getMethod("pid");
+            return (Long) pidMethod.invoke(process);
+        } catch (ReflectiveOperationException | RuntimeException ignore) {
+        }
+        for (Class<?> clazz = process.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field pidField = clazz.getDeclaredField("pid");
+                pidField.setAccessible(true);
+                return ((Number) pidField.get(process)).longValue();
+            } catch (ReflectiveOperationException | RuntimeException ignore) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Report of a teardown.
+     */
+    public static final class Report {
+
+        private final ImmutableList<Process> processes;
+        private final ImmutableList<Process> forceKilled;
+        private final ImmutableList<Long> forceKilledPids;
+        private final ImmutableList<Process> undestroyed;
+
+        private Report(List<Process> processes, List<Process> forceKilled, List<Long> forceKilledPids, List<Process> undestroyed) {
+            this.processes = ImmutableList.copyOf(processes);
+            this.forceKilled = ImmutableList.copyOf(forceKilled);
+            this.forceKilledPids = ImmutableList.copyOf(forceKilledPids);
+            this.undestroyed = ImmutableList.copyOf(undestroyed);
+        }
+
+        /**
+         * Gets all processes that were torn down.
+         * @return the processes
+         */
+        public List<Process> getProcesses() {
+            return processes;
+        }
+
+        /**
+         * Gets the processes that did not terminate before the deadline and were killed forcibly.
+         * @return the processes killed forcibly
+         */
+        public List<Process> getForceKilled() {
+            return forceKilled;
+        }
+
+        /**
+         * Gets the IDs of the processes that were killed forcibly. Processes whose
+         * IDs cannot be determined are omitted.
+         * @return the process IDs
+         */
+        public List<Long> getForceKilledPids() {
+            return forceKilledPids;
+        }
+
+        /**
+         * Gets the processes that were still alive after being killed forcibly.
+         * @return the processes still alive
+         */
+        public List<Process> getUndestroyed() {
+            return undestroyed;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "processes=" + processes.size() +
+                    ", forceKilledPids=" + forceKilledPids +
+                    ", undestroyed=" + undestroyed.size() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility methods relating to the scheduler used by asynchronous operations.
+ */
+final class Scheduling {
+
+    private static final int SHARED_SCHEDULER_MAX_THREADS = 4;
+
+    /**
+     * Maximum number of threads of the shared blocking executor. This bounds the number
+     * of launches and blocking readiness checks that are executed at once.
+     */
+    static final int SHARED_BLOCKING_EXECUTOR_MAX_THREADS = 16;
+    private static final long SHARED_BLOCKING_EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+
+    private Scheduling() {}
+
+    /**
+     * Gets the scheduler shared by asynchronous operations. The scheduler's
+     * threads are daemon threads, so the scheduler does not need to be shut down.
+     * Tasks executed on the scheduler should be short, because a small number of
+     * threads serves all displays; blocking work belongs on the
+     * {@link #sharedBlockingExecutor() shared blocking executor}.
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return SharedSchedulerHolder.INSTANCE;
+    }
+
+    private static class SharedSchedulerHolder {
+
+        private static final ScheduledExecutorService INSTANCE = createSharedScheduler();
+
+        private static ScheduledExecutorService createSharedScheduler() {
+            int numThreads = Math.max(2, Math.min(SHARED_SCHEDULER_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(numThreads, new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("xvfb-scheduler-%d")
+                    .build());
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Gets the executor shared by asynchronous operations for work that blocks, such as
+     * launching processes and executing readiness checks that run X client programs.
+     * The scheduler only times such work and hands it to this executor, so that its
+     * few threads are never occupied by a blocking task. The executor has a bounded
+     * number of daemon threads, which time out when idle, and an unbounded queue.
+     * @return the shared blocking executor
+     */
+    public static ExecutorService sharedBlockingExecutor() {
+        return SharedBlockingExecutorHolder.INSTANCE;
+    }
+
+    private static class SharedBlockingExecutorHolder {
+
+        private static final ExecutorService INSTANCE = createSharedBlockingExecutor();
+
+        private static ExecutorService createSharedBlockingExecutor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(SHARED_BLOCKING_EXECUTOR_MAX_THREADS, SHARED_BLOCKING_EXECUTOR_MAX_THREADS,
+                    SHARED_BLOCKING_EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("xvfb-blocking-%d")
+                    .build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Returns a future that is completed with the result of the given future, or
+     * exceptionally if the given future is not completed within a timeout. The given
+     * future is not affected by the timeout.
+     * @param future the future
+     * @param timeout the timeout
+     * @param unit the timeout unit
+     * @param scheduler scheduler used to enforce the timeout
+     * @param timeoutExceptionSupplier supplier of the exception used on timeout
+     * @param <T> result type
+     * @return a new future
+     */
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit,
+                                                  ScheduledExecutorService scheduler,
+                                                  Supplier<? extends Throwable> timeoutExceptionSupplier) {
+        checkNotNull(timeoutExceptionSupplier);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            result.completeExceptionally(timeoutExceptionSupplier.get());
+        }, timeout, unit);
+        future.whenComplete((value, t) -> {
+            timer.cancel(false);
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+}
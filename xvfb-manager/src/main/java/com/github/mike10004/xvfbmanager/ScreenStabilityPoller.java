@@ -0,0 +1,203 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.FramebufferChangeDetector.DirtyRegionHandler;
+import com.github.mike10004.xvfbmanager.Poller.PollOutcome;
+import com.github.mike10004.xvfbmanager.Sleeper.DefaultSleeper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nullable;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Poller that resolves when the pixels of a framebuffer have been unchanged
+ * for a quiet period. Each check is a {@link FramebufferChangeDetector scan}
+ * of the memory-mapped framebuffer, so no screenshots are taken. If the
+ * framebuffer cannot be mapped, because {@code Xvfb} was started without
+ * {@code -fbdir}, each check captures an XWD screenshot instead and compares
+ * a hash of its pixels with that of the previous one. The first check
+ * establishes the baseline, and the quiet period starts over whenever a
+ * check detects a change. The quiet period and the timeout are measured
+ * with the same clock.
+ */
+public class ScreenStabilityPoller extends Poller<Void> {
+
+    private static final long MIN_POLL_INTERVAL_MS = 10;
+    private static final long MAX_POLL_INTERVAL_MS = 100;
+
+    private static final DirtyRegionHandler IGNORE = (x, y, width, height) -> {};
+
+    private final ChangeSource changes;
+    private final long quietPeriodNanos;
+    private final Ticker ticker;
+    private long lastChangeNanos;
+
+    /**
+     * Constructs an instance.
+     * @param detector the change detector
+     * @param quietPeriod the duration for which the pixels must be unchanged
+     */
+    public ScreenStabilityPoller(FramebufferChangeDetector detector, Duration quietPeriod) {
+        this(DefaultSleeper.getInstance(), Ticker.systemTicker(), detector, quietPeriod);
+    }
+
+    @VisibleForTesting
+    ScreenStabilityPoller(Sleeper sleeper, Ticker ticker, FramebufferChangeDetector detector, Duration quietPeriod) {
+        this(sleeper, ticker, scanning(detector), quietPeriod);
+    }
+
+    private ScreenStabilityPoller(Sleeper sleeper, Ticker ticker, ChangeSource changes, Duration quietPeriod) {
+        super(sleeper);
+        checkArgument(!quietPeriod.isNegative(), "quiet period must be nonnegative");
+        this.ticker = checkNotNull(ticker);
+        this.changes = checkNotNull(changes);
+        this.quietPeriodNanos = quietPeriod.toNanos();
+    }
+
+    /**
+     * Interface of a service that tells whether the screen has changed since it was last asked.
+     */
+    private interface ChangeSource {
+        boolean changed() throws IOException;
+    }
+
+    private static ChangeSource scanning(FramebufferChangeDetector detector) {
+        checkNotNull(detector);
+        return () -> detector.scan(IGNORE) > 0;
+    }
+
+    /**
+     * Source of changes that captures a screenshot in XWD format for every check.
+     */
+    private static final class CapturingChangeSource implements ChangeSource {
+
+        private final Screenshooter<?> screenshooter;
+        private final XwdDecoder decoder;
+        @Nullable
+        private final Rectangle region;
+        @Nullable
+        private int[] pixels;
+        private long previousHash;
+
+        public CapturingChangeSource(Screenshooter<?> screenshooter, @Nullable Rectangle region) {
+            this.screenshooter = checkNotNull(screenshooter);
+            this.region = region;
+            decoder = new XwdDecoder();
+        }
+
+        @Override
+        public boolean changed() throws IOException {
+            Screenshot screenshot = screenshooter.capture();
+            XwdHeader header;
+            try {
+                ByteBuffer xwd = ByteBuffer.wrap(screenshot.asByteSource().read());
+                header = XwdHeader.parse(xwd);
+                pixels = decoder.decodePixels(xwd, pixels);
+            } finally {
+                ScreenshotPipeline.Disposer.deletingFiles().dispose(screenshot);
+            }
+            Rectangle bounds = new Rectangle(0, 0, header.getWidth(), header.getHeight());
+            if (region != null) {
+                bounds = bounds.intersection(region);
+            }
+            long hash = 1;
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                int rowStart = y * header.getWidth();
+                for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                    hash = 31 * hash + pixels[rowStart + x];
+                }
+            }
+            boolean changed = hash != previousHash;
+            previousHash = hash;
+            return changed;
+        }
+    }
+
+    @Override
+    protected PollAnswer<Void> check(int pollAttemptsSoFar) {
+        long now = ticker.read();
+        boolean changed;
+        try {
+            changed = changes.changed();
+        } catch (IOException e) {
+            throw new XvfbException("failed to check screen for changes", e);
+        }
+        if (pollAttemptsSoFar == 0 || changed) {
+            lastChangeNanos = now;
+            return continuePolling();
+        }
+        if (now - lastChangeNanos >= quietPeriodNanos) {
+            return resolve(null);
+        }
+        return continuePolling();
+    }
+
+    /**
+     * Gets the interval at which to check for changes for a given quiet period.
+     * The interval is a fraction of the quiet period, within bounds.
+     * @param quietPeriod the quiet period
+     * @return the interval in milliseconds
+     */
+    public static long getPollIntervalMs(Duration quietPeriod) {
+        return Math.max(MIN_POLL_INTERVAL_MS, Math.min(MAX_POLL_INTERVAL_MS, quietPeriod.toMillis() / 4));
+    }
+
+    /**
+     * Waits until the pixels of a framebuffer, or of a region of it, have been
+     * unchanged for a quiet period.
+     * @param reader the framebuffer reader
+     * @param quietPeriod the duration for which the pixels must be unchanged
+     * @param timeout the maximum duration to wait
+     * @param region the region to watch, or null for the whole screen
+     * @throws InterruptedException if waiting is interrupted
+     * @throws XvfbController.ScreenNotStableException if the pixels did not settle before the timeout
+     * @throws XvfbException if the framebuffer format is not supported
+     */
+    public static void waitForStable(FramebufferReader reader, Duration quietPeriod, Duration timeout, @Nullable Rectangle region) throws InterruptedException {
+        FramebufferChangeDetector detector;
+        try {
+            detector = new FramebufferChangeDetector(reader, region, FramebufferChangeDetector.DEFAULT_TILE_SIZE, FramebufferChangeDetector.DEFAULT_TILE_SIZE);
+        } catch (IOException e) {
+            throw new XvfbException("cannot detect changes in " + reader.getFramebufferFile(), e);
+        }
+        waitForStable(new ScreenStabilityPoller(detector, quietPeriod), quietPeriod, timeout);
+    }
+
+    /**
+     * Waits until the pixels of the screen, or of a region of it, have been
+     * unchanged for a quiet period, capturing a screenshot for every check.
+     * This works with any screenshooter that captures XWD images, but each
+     * check is far more expensive than a scan of a mapped framebuffer.
+     * @param screenshooter the screenshooter
+     * @param quietPeriod the duration for which the pixels must be unchanged
+     * @param timeout the maximum duration to wait
+     * @param region the region to watch, or null for the whole screen
+     * @throws InterruptedException if waiting is interrupted
+     * @throws XvfbController.ScreenNotStableException if the pixels did not settle before the timeout
+     * @throws XvfbException if a screenshot cannot be captured or decoded
+     */
+    public static void waitForStable(Screenshooter<?> screenshooter, Duration quietPeriod, Duration timeout, @Nullable Rectangle region) throws InterruptedException {
+        waitForStable(capturing(DefaultSleeper.getInstance(), Ticker.systemTicker(), screenshooter, region, quietPeriod), quietPeriod, timeout);
+    }
+
+    @VisibleForTesting
+    static ScreenStabilityPoller capturing(Sleeper sleeper, Ticker ticker, Screenshooter<?> screenshooter, @Nullable Rectangle region, Duration quietPeriod) {
+        return new ScreenStabilityPoller(sleeper, ticker, new CapturingChangeSource(screenshooter, region), quietPeriod);
+    }
+
+    @VisibleForTesting
+    static void waitForStable(ScreenStabilityPoller poller, Duration quietPeriod, Duration timeout) throws InterruptedException {
+        // the deadline is measured with the ticker that measures the quiet period
+        Iterable<Long> intervals = PollIntervals.until(PollIntervals.regular(getPollIntervalMs(quietPeriod)), timeout, poller.ticker);
+        PollOutcome<Void> outcome = poller.poll(intervals.iterator());
+        if (outcome.reason != StopReason.RESOLVED) {
+            throw new XvfbController.ScreenNotStableException(String.format("screen did not remain unchanged for %d ms within %d ms", quietPeriod.toMillis(), timeout.toMillis()));
+        }
+    }
+}
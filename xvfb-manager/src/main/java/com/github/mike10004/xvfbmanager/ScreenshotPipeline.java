@@ -0,0 +1,479 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Pipeline that captures screenshots synchronously and converts and persists
+ * them in the background. A {@link #submit() submission} takes a raw snapshot
+ * on the calling thread and enqueues the rest of the work, so the caller only
+ * waits for the snapshot. The snapshot should therefore be cheap, for example
+ * a capture into a buffer by a {@link BufferRecyclingScreenshooter}, and
+ * the expensive steps, such as {@link XwdToPngConverter PNG conversion}, are
+ * left to the converter.
+ *
+ * <p>Each raw snapshot is passed to the {@link Disposer disposer} once it is no
+ * longer needed, that is, after it has been converted and persisted, or when
+ * it is dropped. By default, the files of file-backed snapshots, such as those
+ * captured by {@link FramebufferDirScreenshooter#capture()}, are deleted.</p>
+ *
+ * <p>The queue of pending work is bounded. When it is full, the
+ * {@link OverflowPolicy overflow policy} decides whether the caller waits or
+ * a screenshot is dropped. The future of a dropped screenshot completes
+ * exceptionally with a {@link ScreenshotDroppedException}.</p>
+ *
+ * <p>Create an instance with a {@link #builder(Screenshooter, ScreenshotConverter) builder}.
+ * Closing the pipeline stops accepting submissions and waits for pending work
+ * to finish.</p>
+ * @param <S> raw screenshot type
+ * @param <D> converted screenshot type
+ */
+public class ScreenshotPipeline<S extends Screenshot, D extends Screenshot> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ScreenshotPipeline.class);
+
+    /**
+     * Default maximum number of screenshots awaiting conversion.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final long WORKER_POLL_INTERVAL_MS = 100;
+
+    /**
+     * Policies that apply when a screenshot is submitted and the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Waits on the calling thread until the queue has room.
+         */
+        BLOCK,
+
+        /**
+         * Drops the screenshot that has been waiting longest and enqueues the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drops the new screenshot. The snapshot is not taken.
+         */
+        DROP_NEWEST
+    }
+
+    /**
+     * Interface of a service that persists converted screenshots.
+     * @param <D> screenshot type
+     */
+    public interface Sink<D extends Screenshot> {
+
+        /**
+         * Persists a screenshot.
+         * @param screenshot the screenshot
+         * @param sequence the zero-based index of the submission that produced the screenshot
+         * @throws IOException on I/O error
+         */
+        void persist(D screenshot, long sequence) throws IOException;
+
+        /**
+         * Returns a sink that does nothing.
+         * @param <D> screenshot type
+         * @return a sink
+         */
+        static <D extends Screenshot> Sink<D> discarding() {
+            return (screenshot, sequence) -> {};
+        }
+
+        /**
+         * Returns a sink that writes each screenshot to a file in a directory. The
+         * files are named {@code screenshot-NNNNNN} followed by the suffix, where
+         * {@code NNNNNN} is the sequence number.
+         * @param directory the directory
+         * @param suffix the filename suffix, such as {@code .png}
+         * @param <D> screenshot type
+         * @return a sink
+         */
+        static <D extends Screenshot> Sink<D> toDirectory(File directory, String suffix) {
+            checkNotNull(directory);
+            checkNotNull(suffix);
+            return (screenshot, sequence) -> {
+                File file = new File(directory, String.format("screenshot-%06d%s", sequence, suffix));
+                screenshot.asByteSource().copyTo(Files.asByteSink(file));
+            };
+        }
+    }
+
+    /**
+     * Interface of a service that releases the resources of raw screenshots
+     * that are no longer needed.
+     * @param <S> screenshot type
+     */
+    public interface Disposer<S extends Screenshot> {
+
+        /**
+         * Releases the resources of a screenshot. Failures are logged and otherwise ignored.
+         * @param screenshot the screenshot
+         * @throws IOException on I/O error
+         */
+        void dispose(S screenshot) throws IOException;
+
+        /**
+         * Returns a disposer that does nothing.
+         * @param <S> screenshot type
+         * @return a disposer
+         */
+        static <S extends Screenshot> Disposer<S> retaining() {
+            return screenshot -> {};
+        }
+
+        /**
+         * Returns a disposer that deletes the file of each screenshot whose
+         * byte source is a {@link Screenshot.FileByteSource}, and does nothing
+         * with other screenshots.
+         * @param <S> screenshot type
+         * @return a disposer
+         */
+        static <S extends Screenshot> Disposer<S> deletingFiles() {
+            return screenshot -> {
+                ByteSource byteSource = screenshot.asByteSource();
+                if (byteSource instanceof Screenshot.FileByteSource) {
+                    java.nio.file.Files.deleteIfExists(((Screenshot.FileByteSource) byteSource).file.toPath());
+                }
+            };
+        }
+    }
+
+    private final Screenshooter<? extends S> screenshooter;
+    private final ScreenshotConverter<? super S, ? extends D> converter;
+    private final Sink<? super D> sink;
+    private final Disposer<? super S> disposer;
+    private final OverflowPolicy overflowPolicy;
+    private final LinkedBlockingDeque<Job<S, D>> queue;
+    private final ExecutorService workers;
+    private final AtomicLong sequence;
+    private final AtomicLong dropped;
+    private final AtomicBoolean closed;
+
+    private ScreenshotPipeline(Builder<S, D> builder) {
+        this.screenshooter = checkNotNull(builder.screenshooter);
+        this.converter = checkNotNull(builder.converter);
+        this.sink = checkNotNull(builder.sink);
+        this.disposer = checkNotNull(builder.disposer);
+        this.overflowPolicy = checkNotNull(builder.overflowPolicy);
+        queue = new LinkedBlockingDeque<>(builder.queueCapacity);
+        sequence = new AtomicLong();
+        dropped = new AtomicLong();
+        closed = new AtomicBoolean();
+        workers = Executors.newFixedThreadPool(builder.numWorkers, new ThreadFactoryBuilder()
+                .setNameFormat("screenshot-pipeline-%d")
+                .setDaemon(true)
+                .build());
+        for (int i = 0; i < builder.numWorkers; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Creates a builder of a pipeline.
+     * @param screenshooter the screenshooter that takes raw snapshots on the submitting thread
+     * @param converter the converter that runs on the worker threads
+     * @param <S> raw screenshot type
+     * @param <D> converted screenshot type
+     * @return a new builder
+     */
+    public static <S extends Screenshot, D extends Screenshot> Builder<S, D> builder(Screenshooter<? extends S> screenshooter, ScreenshotConverter<? super S, ? extends D> converter) {
+        return new Builder<>(screenshooter, converter);
+    }
+
+    /**
+     * Takes a snapshot and enqueues its conversion and persistence. With the
+     * {@link OverflowPolicy#BLOCK blocking} policy, this method waits for room
+     * in the queue; otherwise it does not wait beyond taking the snapshot.
+     * @return a future that completes with the converted screenshot once it has been persisted
+     * @throws IOException if the snapshot cannot be taken, or if interrupted while waiting for room
+     * @throws XvfbException if the snapshot cannot be taken
+     * @throws IllegalStateException if the pipeline has been closed
+     */
+    public CompletableFuture<D> submit() throws IOException, XvfbException {
+        checkState(!closed.get(), "pipeline closed");
+        CompletableFuture<D> future = new CompletableFuture<>();
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST && queue.remainingCapacity() == 0) {
+            drop(future);
+            return future;
+        }
+        S raw = screenshooter.capture();
+        Job<S, D> job = new Job<>(raw, sequence.getAndIncrement(), future);
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.putLast(job);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException ie = new InterruptedIOException("interrupted while waiting for room in queue");
+                    ie.initCause(e);
+                    throw ie;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offerLast(job)) {
+                    Job<S, D> oldest = queue.pollFirst();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offerLast(job)) {
+                    drop(job);
+                }
+                break;
+            default:
+                throw new IllegalStateException("unhandled policy " + overflowPolicy);
+        }
+        if (closed.get()) {
+            // the workers may have exited before the job was enqueued
+            if (queue.remove(job)) {
+                dispose(job.raw);
+                future.completeExceptionally(new IllegalStateException("pipeline closed"));
+            }
+        }
+        return future;
+    }
+
+    private void drop(Job<S, D> job) {
+        dispose(job.raw);
+        drop(job.future);
+    }
+
+    private void drop(CompletableFuture<D> future) {
+        dropped.incrementAndGet();
+        future.completeExceptionally(new ScreenshotDroppedException("queue full; policy " + overflowPolicy));
+    }
+
+    private void dispose(S raw) {
+        try {
+            disposer.dispose(raw);
+        } catch (IOException | RuntimeException e) {
+            log.warn("failed to dispose of screenshot {}: {}", raw, e.toString());
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Job<S, D> job;
+            try {
+                job = queue.pollFirst(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.debug("screenshot pipeline worker interrupted");
+                return;
+            }
+            if (job != null) {
+                process(job);
+            } else if (closed.get() && queue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void process(Job<S, D> job) {
+        @Nullable D converted = null;
+        @Nullable Exception failure = null;
+        try {
+            converted = converter.convert(job.raw);
+            sink.persist(converted, job.sequence);
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        // a converter may return the raw screenshot itself, which the caller still needs
+        if (converted != job.raw) {
+            dispose(job.raw);
+        }
+        if (failure != null) {
+            job.future.completeExceptionally(failure);
+        } else {
+            job.future.complete(converted);
+        }
+    }
+
+    /**
+     * Gets the number of screenshots awaiting conversion.
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of screenshots dropped because the queue was full.
+     * @return the count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting submissions and lets the workers finish the pending work
+     * without waiting for them.
+     */
+    public void shutdown() {
+        if (closed.compareAndSet(false, true)) {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Waits for pending work to finish after {@link #shutdown()}.
+     * @param timeout the timeout
+     * @param unit the timeout unit
+     * @return true if all work finished, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Shuts down the pipeline and waits for pending work to finish.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.debug("waiting for {} screenshots to be converted", getQueueSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+        Job<S, D> orphan;
+        while ((orphan = queue.pollFirst()) != null) {
+            dispose(orphan.raw);
+            orphan.future.completeExceptionally(new IllegalStateException("pipeline closed"));
+        }
+    }
+
+    private static final class Job<S extends Screenshot, D extends Screenshot> {
+
+        final S raw;
+        final long sequence;
+        final CompletableFuture<D> future;
+
+        Job(S raw, long sequence, CompletableFuture<D> future) {
+            this.raw = raw;
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Exception with which the future of a dropped screenshot completes.
+     */
+    public static class ScreenshotDroppedException extends XvfbException {
+
+        public ScreenshotDroppedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Builder of pipeline instances.
+     * @param <S> raw screenshot type
+     * @param <D> converted screenshot type
+     */
+    public static class Builder<S extends Screenshot, D extends Screenshot> {
+
+        private final Screenshooter<? extends S> screenshooter;
+        private final ScreenshotConverter<? super S, ? extends D> converter;
+        private Sink<? super D> sink = Sink.discarding();
+        private Disposer<? super S> disposer = Disposer.deletingFiles();
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private int numWorkers = 1;
+
+        private Builder(Screenshooter<? extends S> screenshooter, ScreenshotConverter<? super S, ? extends D> converter) {
+            this.screenshooter = checkNotNull(screenshooter);
+            this.converter = checkNotNull(converter);
+        }
+
+        /**
+         * Sets the sink to which converted screenshots are persisted. By default they are discarded.
+         * @param sink the sink
+         * @return this builder instance
+         */
+        public Builder<S, D> sink(Sink<? super D> sink) {
+            this.sink = checkNotNull(sink);
+            return this;
+        }
+
+        /**
+         * Sets the disposer of raw screenshots that are no longer needed. By default,
+         * the files of file-backed screenshots are {@link Disposer#deletingFiles() deleted}.
+         * @param disposer the disposer
+         * @return this builder instance
+         */
+        public Builder<S, D> disposer(Disposer<? super S> disposer) {
+            this.disposer = checkNotNull(disposer);
+            return this;
+        }
+
+        /**
+         * Sets the policy that applies when the queue is full. The default is {@link OverflowPolicy#BLOCK}.
+         * @param overflowPolicy the policy
+         * @return this builder instance
+         */
+        public Builder<S, D> overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = checkNotNull(overflowPolicy);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of screenshots awaiting conversion.
+         * @param queueCapacity the capacity
+         * @return this builder instance
+         */
+        public Builder<S, D> queueCapacity(int queueCapacity) {
+            checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the number of worker threads that convert and persist screenshots.
+         * @param numWorkers the thread count
+         * @return this builder instance
+         */
+        public Builder<S, D> numWorkers(int numWorkers) {
+            checkArgument(numWorkers > 0, "numWorkers must be positive");
+            this.numWorkers = numWorkers;
+            return this;
+        }
+
+        /**
+         * Builds a pipeline and starts its worker threads.
+         * @return a new pipeline
+         */
+        public ScreenshotPipeline<S, D> build() {
+            return new ScreenshotPipeline<>(this);
+        }
+    }
+}
@@ -8,8 +8,8 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -57,6 +57,18 @@ public class ShutdownHookProcessTracker implements ProcessTracker {
         return destroyer.destroyAll(timeout, unit);
     }
 
+    /**
+     * Destroys all tracked processes in parallel, as described by {@link ProcessTeardown}.
+     * Unlike {@link #destroyAll(long, TimeUnit)}, the timeout applies to all processes
+     * at once rather than to each process in turn. Destroyed processes are no longer tracked.
+     * @param timeout time to wait for processes to terminate before killing them forcibly
+     * @param unit unit of the timeout
+     * @return a report of the teardown, including the IDs of processes that were killed forcibly
+     */
+    public ProcessTeardown.Report teardown(long timeout, TimeUnit unit) {
+        return destroyer.teardown(timeout, unit);
+    }
+
     /*
      *  Licensed to the Apache Software Foundation (ASF) under one or more
      *  contributor license agreements.  See the NOTICE file distributed with
@@ -82,6 +94,7 @@ public class ShutdownHookProcessTracker implements ProcessTracker {
     @SuppressWarnings({"SynchronizeOnNonFinalField", "WhileLoopReplaceableByForEach", "unused"})
     private static class AntProcessDestroyer implements Runnable {
         private static final int THREAD_DIE_TIMEOUT = 20000;
+        private static final long SHUTDOWN_TERMINATION_TIMEOUT_MS = 1000;
         private HashSet<Process> processes = new HashSet<>();
         // methods to register and unregister shutdown hooks
         private Method addShutdownHookMethod;
@@ -260,16 +273,38 @@ public class ShutdownHookProcessTracker implements ProcessTracker {
         }
 
         /**
-         * Invoked by the VM when it is exiting.
+         * Invoked by the VM when it is exiting. Modified from the Ant original, which
+         * only sent a termination signal to each process, to terminate all processes
+         * at once and kill forcibly those still alive at a shared deadline.
          */
         public void run() {
+            List<Process> snapshot;
             synchronized (processes) {
                 running = true;
-                Iterator e = processes.iterator();
-                while (e.hasNext()) {
-                    ((Process) e.next()).destroy();
+                snapshot = new ArrayList<>(processes);
+            }
+            ProcessTeardown.Report report = ProcessTeardown.terminateAll(snapshot, SHUTDOWN_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!report.getForceKilledPids().isEmpty()) {
+                System.err.println("processes killed forcibly by shutdown hook: " + report.getForceKilledPids()); //NOSONAR
+            }
+        }
+
+        /**
+         * Tears down all processes and stops tracking the destroyed processes.
+         * @return the teardown report
+         */
+        public ProcessTeardown.Report teardown(long timeout, TimeUnit unit) {
+            List<Process> snapshot;
+            synchronized (processes) {
+                snapshot = new ArrayList<>(processes);
+            }
+            ProcessTeardown.Report report = ProcessTeardown.terminateAll(snapshot, timeout, unit);
+            for (Process process : report.getProcesses()) {
+                if (!report.getUndestroyed().contains(process)) {
+                    remove(process);
                 }
             }
+            return report;
         }
 
         /**
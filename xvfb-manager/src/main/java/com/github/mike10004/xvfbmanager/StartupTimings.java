@@ -0,0 +1,201 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Timestamps of the lifecycle phases of one {@code Xvfb} process. Each phase is
+ * recorded at most once, when it is first reached. Times are measured with a
+ * monotonic clock and reported as durations since the launch was requested,
+ * so they are suitable for latency histograms. Instances are thread-safe.
+ *
+ * @see XvfbLifecycleListener
+ */
+public final class StartupTimings {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimings.class);
+
+    private static final long UNRECORDED = Long.MIN_VALUE;
+
+    /**
+     * Lifecycle phases, in the order in which they are normally reached.
+     */
+    public enum Phase {
+
+        /**
+         * Start was requested.
+         */
+        LAUNCH_REQUESTED,
+
+        /**
+         * Scratch directory, framebuffer directory and output files were created.
+         */
+        SCRATCH_DIR_CREATED,
+
+        /**
+         * Process was spawned.
+         */
+        SPAWNED,
+
+        /**
+         * Display was resolved. For an explicit display number, this is
+         * reached immediately after the process is spawned.
+         */
+        DISPLAY_RESOLVED,
+
+        /**
+         * Display was found to be ready.
+         */
+        READY,
+
+        /**
+         * Stop was requested.
+         */
+        STOP_REQUESTED,
+
+        /**
+         * Process exited.
+         */
+        PROCESS_EXITED,
+
+        /**
+         * X lock file was cleaned up after the process was stopped.
+         */
+        LOCK_RELEASED
+    }
+
+    private final Ticker ticker;
+    private final Instant launchRequestedAt;
+    private final long originNanos;
+    private final AtomicLongArray nanos;
+    private final List<XvfbLifecycleListener> listeners;
+    private volatile @Nullable String display;
+    private volatile @Nullable Duration readinessPollDuration;
+
+    /**
+     * Constructs an instance whose launch was requested now.
+     */
+    StartupTimings() {
+        this(Collections.emptyList(), Ticker.systemTicker());
+    }
+
+    StartupTimings(List<XvfbLifecycleListener> listeners, Ticker ticker) {
+        this.listeners = ImmutableList.copyOf(listeners);
+        this.ticker = checkNotNull(ticker);
+        nanos = new AtomicLongArray(Phase.values().length);
+        for (int i = 0; i < nanos.length(); i++) {
+            nanos.set(i, UNRECORDED);
+        }
+        launchRequestedAt = Instant.now();
+        originNanos = ticker.read();
+        record(Phase.LAUNCH_REQUESTED);
+    }
+
+    /**
+     * Records that a phase was reached, if it has not been recorded already,
+     * and notifies listeners.
+     * @param phase the phase
+     * @return true if the phase was recorded by this invocation
+     */
+    boolean record(Phase phase) {
+        long now = ticker.read();
+        if (!nanos.compareAndSet(phase.ordinal(), UNRECORDED, now)) {
+            return false;
+        }
+        for (XvfbLifecycleListener listener : listeners) {
+            try {
+                listener.phaseReached(phase, this);
+            } catch (RuntimeException e) {
+                log.warn("lifecycle listener {} threw exception on {}", listener, phase, e);
+            }
+        }
+        return true;
+    }
+
+    void setDisplay(String display) {
+        this.display = checkNotNull(display);
+    }
+
+    void setReadinessPollDuration(Duration readinessPollDuration) {
+        this.readinessPollDuration = checkNotNull(readinessPollDuration);
+    }
+
+    /**
+     * Gets the display, if it has been resolved.
+     * @return the display
+     */
+    public Optional<String> getDisplay() {
+        return Optional.ofNullable(display);
+    }
+
+    /**
+     * Gets the wall-clock time at which the launch was requested.
+     * @return the launch request time
+     */
+    public Instant getLaunchRequestedAt() {
+        return launchRequestedAt;
+    }
+
+    /**
+     * Gets the time from the launch request until a phase was reached.
+     * @param phase the phase
+     * @return the elapsed time, or empty if the phase has not been reached
+     */
+    public Optional<Duration> getElapsed(Phase phase) {
+        long t = nanos.get(phase.ordinal());
+        return t == UNRECORDED ? Optional.empty() : Optional.of(Duration.ofNanos(t - originNanos));
+    }
+
+    /**
+     * Gets the time between two phases.
+     * @param from the earlier phase
+     * @param to the later phase
+     * @return the time between the phases, or empty if either has not been reached
+     */
+    public Optional<Duration> getBetween(Phase from, Phase to) {
+        long t0 = nanos.get(from.ordinal()), t1 = nanos.get(to.ordinal());
+        return t0 == UNRECORDED || t1 == UNRECORDED ? Optional.empty() : Optional.of(Duration.ofNanos(t1 - t0));
+    }
+
+    /**
+     * Gets the duration of the readiness poll that found the display ready.
+     * @return the poll duration, or empty if the display has not been found ready
+     */
+    public Optional<Duration> getReadinessPollDuration() {
+        return Optional.ofNullable(readinessPollDuration);
+    }
+
+    /**
+     * Gets the elapsed times of all phases reached so far.
+     * @return a map of phase to time since the launch request
+     */
+    public Map<Phase, Duration> toMap() {
+        Map<Phase, Duration> map = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            getElapsed(phase).ifPresent(elapsed -> map.put(phase, elapsed));
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "StartupTimings{" +
+                "display=" + display +
+                ", elapsed=" + toMap() +
+                '}';
+    }
+}
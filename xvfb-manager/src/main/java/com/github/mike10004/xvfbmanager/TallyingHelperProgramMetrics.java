@@ -0,0 +1,167 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Metrics implementation that keeps counts, total and maximum times, and exit code
+ * tallies in memory, per program and per program and display. Poll it periodically
+ * to export the tallies to a dashboard.
+ */
+public class TallyingHelperProgramMetrics implements HelperProgramMetrics {
+
+    private final ConcurrentMap<String, Tally> byProgram = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ProgramDisplay, Tally> byProgramAndDisplay = new ConcurrentHashMap<>();
+
+    @Override
+    public void invocationCompleted(String program, @Nullable String display, Duration elapsed, OptionalInt exitCode) {
+        checkNotNull(program);
+        long elapsedNanos = elapsed.toNanos();
+        byProgram.computeIfAbsent(program, k -> new Tally()).add(elapsedNanos, exitCode);
+        if (display != null) {
+            byProgramAndDisplay.computeIfAbsent(new ProgramDisplay(program, display), k -> new Tally()).add(elapsedNanos, exitCode);
+        }
+    }
+
+    /**
+     * Gets the tally of all invocations of a program.
+     * @param program the program name
+     * @return the tally, or empty if the program has not been invoked
+     */
+    public Optional<Tally> getTally(String program) {
+        return Optional.ofNullable(byProgram.get(program));
+    }
+
+    /**
+     * Gets the tally of invocations of a program against a display.
+     * @param program the program name
+     * @param display the display
+     * @return the tally, or empty if the program has not been invoked against the display
+     */
+    public Optional<Tally> getTally(String program, String display) {
+        return Optional.ofNullable(byProgramAndDisplay.get(new ProgramDisplay(program, display)));
+    }
+
+    /**
+     * Gets the tallies of all programs invoked so far.
+     * @return a map of program name to tally
+     */
+    public Map<String, Tally> getTallies() {
+        return ImmutableMap.copyOf(byProgram);
+    }
+
+    /**
+     * Tally of invocations. Values are updated concurrently, so values read
+     * together may be slightly inconsistent with each other.
+     */
+    public static final class Tally {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder incomplete = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+
+        private Tally() {}
+
+        private void add(long elapsedNanos, OptionalInt exitCode) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            if (exitCode.isPresent()) {
+                exitCodes.computeIfAbsent(exitCode.getAsInt(), k -> new LongAdder()).increment();
+            } else {
+                incomplete.increment();
+            }
+        }
+
+        /**
+         * Gets the number of invocations.
+         * @return the number of invocations
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Gets the total time of all invocations.
+         * @return the total time
+         */
+        public Duration getTotalTime() {
+            return Duration.ofNanos(totalNanos.sum());
+        }
+
+        /**
+         * Gets the time of the longest invocation.
+         * @return the maximum time
+         */
+        public Duration getMaxTime() {
+            return Duration.ofNanos(maxNanos.get());
+        }
+
+        /**
+         * Gets the number of invocations whose waiting was interrupted before the program exited.
+         * @return the number of incomplete invocations
+         */
+        public long getIncompleteCount() {
+            return incomplete.sum();
+        }
+
+        /**
+         * Gets the number of invocations that exited with each exit code.
+         * @return a map of exit code to count
+         */
+        public Map<Integer, Long> getExitCodeCounts() {
+            ImmutableMap.Builder<Integer, Long> b = ImmutableMap.builder();
+            exitCodes.forEach((code, adder) -> b.put(code, adder.sum()));
+            return b.build();
+        }
+
+        @Override
+        public String toString() {
+            return "Tally{" +
+                    "count=" + getCount() +
+                    ", totalTime=" + getTotalTime() +
+                    ", maxTime=" + getMaxTime() +
+                    ", exitCodes=" + getExitCodeCounts() +
+                    ", incomplete=" + getIncompleteCount() +
+                    '}';
+        }
+    }
+
+    private static final class ProgramDisplay {
+
+        private final String program;
+        private final String display;
+
+        private ProgramDisplay(String program, String display) {
+            this.program = checkNotNull(program);
+            this.display = checkNotNull(display);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ProgramDisplay)) return false;
+            ProgramDisplay that = (ProgramDisplay) o;
+            return program.equals(that.program) && display.equals(that.display);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(program, display);
+        }
+    }
+}
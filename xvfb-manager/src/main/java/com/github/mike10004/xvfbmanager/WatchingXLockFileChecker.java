@@ -0,0 +1,194 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.Sleeper.DefaultSleeper;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lock file checker that watches the lock file directory for deletion events.
+ * On Linux, the JDK's watch service is backed by inotify, so the wait ends as soon
+ * as the X server deletes its lock file, instead of at the next poll. The watch
+ * service is opened on first use and kept open until the checker is closed, and
+ * the directory is registered once. Because some watch services deliver events
+ * late or not at all, the wait is divided into slices of the polling interval,
+ * and the lock file's existence is checked after each slice. If the directory
+ * cannot be watched, this checker falls back to polling.
+ *
+ * <p>{@link #waitForCleanupAsync(String, long, ScheduledExecutorService) Asynchronous waits}
+ * are delegated to the polling checker, because waiting for watch events blocks a thread.</p>
+ */
+public class WatchingXLockFileChecker implements DefaultXvfbController.XLockFileChecker, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WatchingXLockFileChecker.class);
+
+    private static final WatchingXLockFileChecker INSTANCE = new WatchingXLockFileChecker(
+            new PollingXLockFileChecker(DefaultXvfbController.LOCK_FILE_CLEANUP_POLL_INTERVAL_MS, DefaultSleeper.getInstance()));
+
+    private final PollingXLockFileChecker fallback;
+    private final XLockFileUtility lockFileUtility;
+    private final long sliceMs;
+    private final Object watchLock = new Object();
+    @Nullable
+    private WatchService watchService;
+    private final Set<Path> watchedDirectories;
+    private boolean closed;
+
+    /**
+     * Gets the checker shared by controllers that do not specify one. Its watch
+     * service is never closed.
+     * @return the shared instance
+     */
+    public static WatchingXLockFileChecker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Constructs an instance that falls back to the given polling checker.
+     * @param fallback checker used if the lock file directory cannot be watched
+     */
+    public WatchingXLockFileChecker(PollingXLockFileChecker fallback) {
+        this(fallback, XLockFileUtility.getInstance(), DefaultXvfbController.LOCK_FILE_CLEANUP_POLL_INTERVAL_MS);
+    }
+
+    @VisibleForTesting
+    WatchingXLockFileChecker(PollingXLockFileChecker fallback, XLockFileUtility lockFileUtility, long sliceMs) {
+        this.fallback = checkNotNull(fallback);
+        this.lockFileUtility = checkNotNull(lockFileUtility);
+        checkArgument(sliceMs > 0, "slice must be positive");
+        this.sliceMs = sliceMs;
+        watchedDirectories = new HashSet<>();
+    }
+
+    @Override
+    public void waitForCleanup(String display, long timeoutMs) throws LockFileCheckingException {
+        File lockFile;
+        try {
+            lockFile = lockFileUtility.constructLockFilePathname(display);
+        } catch (IOException e) {
+            throw new LockFileCheckingException(e);
+        }
+        Path directory = lockFile.getParentFile().toPath();
+        WatchService watchService;
+        try {
+            watchService = watch(directory);
+        } catch (IOException | UnsupportedOperationException | ProviderMismatchException e) {
+            log.debug("could not watch {}; falling back to polling: {}", directory, e.toString());
+            fallback.waitForCleanup(display, timeoutMs);
+            return;
+        }
+        awaitDeletion(watchService, lockFile, timeoutMs);
+    }
+
+    /**
+     * Gets the watch service, opening it if necessary, with the given directory registered.
+     * @param directory the directory to watch
+     * @return the watch service
+     * @throws IOException if the watch service cannot be opened or the directory cannot be registered
+     */
+    @VisibleForTesting
+    WatchService watch(Path directory) throws IOException {
+        synchronized (watchLock) {
+            if (closed) {
+                throw new IOException("checker is closed");
+            }
+            if (watchService == null) {
+                watchService = directory.getFileSystem().newWatchService();
+            }
+            if (!watchedDirectories.contains(directory)) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.add(directory);
+            }
+            return watchService;
+        }
+    }
+
+    private void forget(WatchKey key) {
+        synchronized (watchLock) {
+            watchedDirectories.remove(key.watchable());
+        }
+    }
+
+    private void awaitDeletion(WatchService watchService, File lockFile, long timeoutMs) throws LockFileCheckingException {
+        // check after registering, so that a deletion between the check and the registration is not missed
+        if (!lockFile.exists()) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long sliceNanos = TimeUnit.MILLISECONDS.toNanos(sliceMs);
+        int numEvents = 0;
+        for (;;) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                if (!lockFile.exists()) {
+                    return;
+                }
+                throw new LockFileCleanupTimeoutException(String.format("%s still exists after %d ms (%d watch events)", lockFile, timeoutMs, numEvents));
+            }
+            WatchKey key;
+            try {
+                key = watchService.poll(Math.min(remainingNanos, sliceNanos), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                throw new LockFileCheckingException(e);
+            } catch (ClosedWatchServiceException e) {
+                throw new LockFileCheckingException("watch service was closed", e);
+            }
+            // events only wake this thread early; the lock file is checked after every slice,
+            // because another waiter may have taken the events or none may be delivered
+            if (key != null) {
+                numEvents += key.pollEvents().size();
+                if (!key.reset()) {
+                    forget(key);
+                }
+            }
+            if (!lockFile.exists()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delegates to the polling checker, so that no thread is blocked while waiting.
+     */
+    @Override
+    public CompletableFuture<Void> waitForCleanupAsync(String display, long timeoutMs, ScheduledExecutorService scheduler) {
+        return fallback.waitForCleanupAsync(display, timeoutMs, scheduler);
+    }
+
+    /**
+     * Closes the watch service. Subsequent waits fall back to polling.
+     * @throws IOException if closing the watch service fails
+     */
+    @Override
+    public void close() throws IOException {
+        @Nullable WatchService watchService_;
+        synchronized (watchLock) {
+            closed = true;
+            watchService_ = watchService;
+            watchService = null;
+            watchedDirectories.clear();
+        }
+        if (watchService_ != null) {
+            watchService_.close();
+        }
+    }
+}
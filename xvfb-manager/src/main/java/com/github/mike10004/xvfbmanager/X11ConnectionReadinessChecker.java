@@ -0,0 +1,329 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Readiness checker that connects to the X server and performs the X11
+ * connection setup handshake in-process. The display is ready if the server
+ * answers the setup request with a success response. No X client program is
+ * executed, so a check costs a socket connection instead of a process fork.
+ *
+ * <p>By default, the checker connects to the server's Unix domain socket in
+ * {@code /tmp/.X11-unix}, which requires Java 16 or later at runtime. On older
+ * runtimes, use the {@link Transport#TCP TCP transport}, which requires that
+ * {@code Xvfb} be launched with {@code -listen tcp}; configure the manager with
+ * {@link XvfbConfig#withTcpListening()} to pass that option.</p>
+ *
+ * <p>The connection is attempted without authorization data, so the server
+ * must allow anonymous local connections. {@code Xvfb} does so unless it is
+ * started with the {@code -auth} option.</p>
+ *
+ * <p>To use this checker, override {@link XvfbManager#createDisplayReadinessChecker}.</p>
+ */
+public class X11ConnectionReadinessChecker implements XvfbManager.DisplayReadinessChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(X11ConnectionReadinessChecker.class);
+
+    /**
+     * Default directory containing X server sockets.
+     */
+    public static final File DEFAULT_SOCKET_DIR = new File("/tmp/.X11-unix");
+
+    /**
+     * Default maximum duration of a connection attempt, including the handshake.
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 1000;
+
+    private static final int X_TCP_PORT_BASE = 6000;
+    private static final int X_PROTOCOL_MAJOR_VERSION = 11;
+    private static final int X_PROTOCOL_MINOR_VERSION = 0;
+    private static final int SETUP_REQUEST_LENGTH = 12;
+    private static final int SETUP_RESPONSE_HEADER_LENGTH = 8;
+    private static final byte SETUP_SUCCESS = 1;
+
+    private static final Pattern DISPLAY_PATTERN = Pattern.compile("^:(\\d+)(?:\\.\\d+)?$");
+
+    /**
+     * Enumeration of transports over which the server can be reached.
+     */
+    public enum Transport {
+
+        /**
+         * Unix domain socket in the socket directory, e.g. {@code /tmp/.X11-unix/X99}.
+         */
+        UNIX,
+
+        /**
+         * TCP socket on port 6000 + <i>N</i> where <i>N</i> is the display number.
+         */
+        TCP
+    }
+
+    private final Transport transport;
+    private final File socketDir;
+    private final String tcpHost;
+    private final long timeoutMs;
+
+    /**
+     * Constructs an instance that connects over the Unix domain socket.
+     * @throws IllegalStateException if the runtime does not support Unix domain sockets
+     */
+    public X11ConnectionReadinessChecker() {
+        this(Transport.UNIX, DEFAULT_SOCKET_DIR, "localhost", DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructs an instance that connects over TCP. The server must listen for TCP
+     * connections, so start it with a configuration {@link XvfbConfig#withTcpListening() that does}.
+     * @param tcpHost the host on which the server listens
+     * @param timeoutMs maximum duration of a connection attempt in milliseconds
+     */
+    public X11ConnectionReadinessChecker(String tcpHost, long timeoutMs) {
+        this(Transport.TCP, DEFAULT_SOCKET_DIR, tcpHost, timeoutMs);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param transport the transport
+     * @param socketDir directory containing Unix domain sockets; ignored for TCP
+     * @param tcpHost host on which the server listens; ignored for Unix domain sockets
+     * @param timeoutMs maximum duration of a connection attempt in milliseconds
+     * @throws IllegalStateException if the transport is Unix domain sockets but the runtime does not support them
+     */
+    public X11ConnectionReadinessChecker(Transport transport, File socketDir, String tcpHost, long timeoutMs) {
+        this.transport = checkNotNull(transport);
+        this.socketDir = checkNotNull(socketDir);
+        this.tcpHost = checkNotNull(tcpHost);
+        checkArgument(timeoutMs > 0, "timeout must be positive");
+        this.timeoutMs = timeoutMs;
+        if (transport == Transport.UNIX) {
+            checkState(UnixSockets.isSupported(), "Unix domain sockets require Java 16 or later; use TCP transport");
+        }
+    }
+
+    /**
+     * Checks whether this runtime supports connecting to Unix domain sockets.
+     * @return true if Unix domain sockets are supported
+     */
+    public static boolean isUnixDomainSocketSupported() {
+        return UnixSockets.isSupported();
+    }
+
+    /**
+     * Checks display readiness by connecting to the server and performing the
+     * connection setup handshake.
+     * @param display the display to check, e.g. ":123"
+     * @return true iff the server answers the setup request with success
+     */
+    @Override
+    public boolean checkReadiness(String display) {
+        int displayNumber = parseDisplayNumber(display);
+        try (SocketChannel channel = openChannel()) {
+            return handshake(channel, resolveAddress(displayNumber), timeoutMs);
+        } catch (IOException e) {
+            log.debug("connection to display {} failed: {}", display, e.toString());
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    static int parseDisplayNumber(String display) {
+        Matcher m = DISPLAY_PATTERN.matcher(display);
+        checkArgument(m.find(), "invalid display: '%s' (expected format ':N')", display);
+        return Integer.parseInt(m.group(1));
+    }
+
+    private SocketChannel openChannel() throws IOException {
+        if (transport == Transport.UNIX) {
+            return UnixSockets.openChannel();
+        }
+        return SocketChannel.open();
+    }
+
+    private SocketAddress resolveAddress(int displayNumber) throws IOException {
+        if (transport == Transport.UNIX) {
+            return UnixSockets.address(new File(socketDir, "X" + displayNumber).toPath());
+        }
+        return new InetSocketAddress(tcpHost, X_TCP_PORT_BASE + displayNumber);
+    }
+
+    /**
+     * Connects the channel to the given address, sends a connection setup request,
+     * and reads the response header.
+     * @return true iff the server responded with success
+     */
+    @VisibleForTesting
+    static boolean handshake(SocketChannel channel, SocketAddress address, long timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            if (!channel.connect(address)) {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+                while (!channel.finishConnect()) {
+                    awaitSelected(selector, deadline, "connect");
+                }
+                key.cancel();
+                selector.selectNow();
+            }
+            ByteBuffer request = createSetupRequest();
+            SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+            while (request.hasRemaining()) {
+                if (channel.write(request) == 0) {
+                    awaitSelected(selector, deadline, "write");
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            ByteBuffer response = ByteBuffer.allocate(SETUP_RESPONSE_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            while (response.hasRemaining()) {
+                int n = channel.read(response);
+                if (n < 0) {
+                    throw new IOException("server closed connection during setup");
+                }
+                if (n == 0) {
+                    awaitSelected(selector, deadline, "read");
+                }
+            }
+            response.flip();
+            return interpretSetupResponse(response);
+        }
+    }
+
+    @VisibleForTesting
+    static void awaitSelected(Selector selector, long deadline, String operation) throws IOException {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new IOException(operation + " timed out");
+        }
+        // round up so that less than a millisecond remaining does not become select(0), which blocks indefinitely
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999999L);
+        if (selector.select(remainingMs) == 0 && deadline - System.nanoTime() <= 0) {
+            throw new IOException(operation + " timed out");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    @VisibleForTesting
+    static ByteBuffer createSetupRequest() {
+        ByteBuffer request = ByteBuffer.allocate(SETUP_REQUEST_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        request.put((byte) 'l'); // least significant byte first
+        request.put((byte) 0);
+        request.putShort((short) X_PROTOCOL_MAJOR_VERSION);
+        request.putShort((short) X_PROTOCOL_MINOR_VERSION);
+        request.putShort((short) 0); // authorization protocol name length
+        request.putShort((short) 0); // authorization protocol data length
+        request.putShort((short) 0);
+        request.flip();
+        return request;
+    }
+
+    private static boolean interpretSetupResponse(ByteBuffer header) {
+        byte status = header.get(0);
+        int majorVersion = header.getShort(2) & 0xFFFF;
+        if (status != SETUP_SUCCESS) {
+            log.debug("server refused connection setup with status {}", status);
+            return false;
+        }
+        if (majorVersion != X_PROTOCOL_MAJOR_VERSION) {
+            log.debug("server responded with unexpected protocol version {}", majorVersion);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "X11ConnectionReadinessChecker{" +
+                "transport=" + transport +
+                ", socketDir=" + socketDir +
+                ", tcpHost=" + tcpHost +
+                ", timeoutMs=" + timeoutMs +
+                '}';
+    }
+
+    /**
+     * Access to Unix domain socket channels, which are available on Java 16 and later.
+     * Reflection is used so that this library can still be compiled for Java 8.
+     */
+    private static class UnixSockets {
+
+        @Nullable
+        private static final ProtocolFamily UNIX_FAMILY;
+        @Nullable
+        private static final Method OPEN_METHOD;
+        @Nullable
+        private static final Method ADDRESS_FACTORY_METHOD;
+
+        static {
+            ProtocolFamily family = null;
+            Method open = null, addressFactory = null;
+            try {
+                family = StandardProtocolFamily.valueOf("UNIX");
+                open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+                addressFactory = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            } catch (IllegalArgumentException | ReflectiveOperationException e) {
+                family = null;
+                open = null;
+                addressFactory = null;
+            }
+            UNIX_FAMILY = family;
+            OPEN_METHOD = open;
+            ADDRESS_FACTORY_METHOD = addressFactory;
+        }
+
+        public static boolean isSupported() {
+            return UNIX_FAMILY != null;
+        }
+
+        public static SocketChannel openChannel() throws IOException {
+            checkState(isSupported(), "Unix domain sockets not supported");
+            return (SocketChannel) invoke(OPEN_METHOD, UNIX_FAMILY);
+        }
+
+        public static SocketAddress address(Path path) throws IOException {
+            checkState(isSupported(), "Unix domain sockets not supported");
+            return (SocketAddress) invoke(ADDRESS_FACTORY_METHOD, path);
+        }
+
+        private static Object invoke(Method method, Object arg) throws IOException {
+            try {
+                return method.invoke(null, arg);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
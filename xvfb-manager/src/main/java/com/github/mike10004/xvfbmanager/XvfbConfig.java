@@ -1,5 +1,9 @@
 package com.github.mike10004.xvfbmanager;
 
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -19,15 +23,122 @@ public class XvfbConfig {
      */
     public final String geometry;
 
+    /**
+     * Method used to obtain the display number that {@code Xvfb} prints
+     * when the display is automatically selected with {@code -displayfd}.
+     */
+    public final DisplayfdMode displayfdMode;
+
+    /**
+     * Strategy used to decide when a newly started display is ready.
+     */
+    public final ReadinessStrategy readinessStrategy;
+
+    /**
+     * Additional arguments to {@code Xvfb}, appended to those the manager passes.
+     * For example, {@code -listen tcp} makes the server accept TCP connections,
+     * which {@link X11ConnectionReadinessChecker#X11ConnectionReadinessChecker(String, long) TCP readiness checks}
+     * require; see {@link #withTcpListening()}.
+     */
+    public final ImmutableList<String> extraArgs;
+
     public XvfbConfig(String geometry) {
+        this(geometry, DisplayfdMode.OUTPUT_FILE);
+    }
+
+    public XvfbConfig(String geometry, DisplayfdMode displayfdMode) {
+        this(geometry, displayfdMode, ReadinessStrategy.POLL_CHECKER);
+    }
+
+    public XvfbConfig(String geometry, DisplayfdMode displayfdMode, ReadinessStrategy readinessStrategy) {
+        this(geometry, displayfdMode, readinessStrategy, ImmutableList.of());
+    }
+
+    public XvfbConfig(String geometry, DisplayfdMode displayfdMode, ReadinessStrategy readinessStrategy, List<String> extraArgs) {
         this.geometry = checkNotNull(geometry);
         checkArgument(geometry.matches("\\d+x\\d+x\\d+(?:\\+32)?"), "argument must have form WxHxD where W=width, H=height, and D=depth; default is 1280x1024x24+32");
+        this.displayfdMode = checkNotNull(displayfdMode);
+        this.readinessStrategy = checkNotNull(readinessStrategy);
+        this.extraArgs = ImmutableList.copyOf(extraArgs);
+    }
+
+    /**
+     * Creates a copy of this configuration with additional arguments to {@code Xvfb}.
+     * @param args the arguments to append
+     * @return a new configuration
+     */
+    public XvfbConfig withExtraArgs(String... args) {
+        List<String> allArgs = ImmutableList.<String>builder().addAll(extraArgs).add(args).build();
+        return new XvfbConfig(geometry, displayfdMode, readinessStrategy, allArgs);
+    }
+
+    /**
+     * Creates a copy of this configuration whose server also listens for TCP connections,
+     * on port 6000 plus the display number. Recent versions of {@code Xvfb} listen only on
+     * the Unix domain socket by default.
+     * @return a new configuration
+     */
+    public XvfbConfig withTcpListening() {
+        return withExtraArgs("-listen", "tcp");
+    }
+
+    /**
+     * Enumeration of methods of obtaining the display number {@code Xvfb} prints
+     * on the {@code -displayfd} descriptor.
+     */
+    public enum DisplayfdMode {
+
+        /**
+         * Poll the file that the process output is written to until the display number appears.
+         */
+        OUTPUT_FILE,
+
+        /**
+         * Read the display number from the process output pipe as soon as it is written.
+         * Process output is still written to the same file.
+         */
+        PIPE
+    }
+
+    /**
+     * Enumeration of strategies for deciding when a display is ready.
+     */
+    public enum ReadinessStrategy {
+
+        /**
+         * Poll the manager's {@link XvfbManager.DisplayReadinessChecker readiness checker},
+         * which by default executes {@code xdpyinfo}.
+         */
+        POLL_CHECKER,
+
+        /**
+         * Launch {@code Xvfb} with {@code -displayfd}, even if the display number
+         * is specified, and consider the display ready as soon as the number is printed.
+         * {@code Xvfb} prints the number only once it is accepting connections.
+         * The number is read from the output pipe regardless of the {@link DisplayfdMode}.
+         * Waiting for readiness waits for the number itself rather than polling, so
+         * readiness is reported as soon as the number is printed.
+         */
+        DISPLAYFD,
+
+        /**
+         * Like {@link #DISPLAYFD}, but poll for readiness, and if the display number has
+         * not been printed by the time readiness is checked, consult the readiness checker as well.
+         */
+        DISPLAYFD_OR_CHECKER;
+
+        boolean isDisplayfdSignalUsed() {
+            return this != POLL_CHECKER;
+        }
     }
 
     @Override
     public String toString() {
         return "XvfbConfig{" +
                 "geometry='" + geometry + '\'' +
+                ", displayfdMode=" + displayfdMode +
+                ", readinessStrategy=" + readinessStrategy +
+                ", extraArgs=" + extraArgs +
                 '}';
     }
 
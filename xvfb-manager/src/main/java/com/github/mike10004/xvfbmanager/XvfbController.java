@@ -1,9 +1,12 @@
 package com.github.mike10004.xvfbmanager;
 
 import javax.annotation.Nullable;
+import java.awt.Rectangle;
 import java.io.Closeable;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 /**
@@ -31,17 +34,92 @@ public interface XvfbController extends Closeable {
      */
     void waitUntilReady(long pollIntervalMs, int maxNumPolls) throws InterruptedException;
 
+    /**
+     * Waits asynchronously until the display is ready, using default values
+     * for the polling interval and maximum polls. The default implementation
+     * executes {@link #waitUntilReady()} in the common fork-join pool;
+     * implementations should override it to avoid blocking a thread while waiting.
+     * @return a future that is completed when the display is ready, or completed
+     * exceptionally if the display never becomes ready
+     */
+    default CompletableFuture<Void> waitUntilReadyAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                waitUntilReady();
+            } catch (InterruptedException e) {
+                throw new XvfbException("interrupted while waiting for display", e);
+            }
+        });
+    }
+
+    /**
+     * Waits asynchronously until the display is ready. The default implementation
+     * executes {@link #waitUntilReady(long, int)} in the common fork-join pool;
+     * implementations should override it to avoid blocking a thread while waiting.
+     * @param pollIntervalMs interval between polls in milliseconds
+     * @param maxNumPolls maximum number of polls to execute
+     * @return a future that is completed when the display is ready, or completed
+     * exceptionally if the display never becomes ready
+     */
+    default CompletableFuture<Void> waitUntilReadyAsync(long pollIntervalMs, int maxNumPolls) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                waitUntilReady(pollIntervalMs, maxNumPolls);
+            } catch (InterruptedException e) {
+                throw new XvfbException("interrupted while waiting for display", e);
+            }
+        });
+    }
+
+    /**
+     * Checks whether the display is still up. Unlike {@link #waitUntilReady(long, int)},
+     * this reports false once the display has died even if it was ready before. The default
+     * implementation checks readiness once; implementations that own the process should
+     * override it to check the process state.
+     * @return true if the display is alive
+     */
+    default boolean isAlive() {
+        try {
+            waitUntilReady(DefaultXvfbController.DEFAULT_POLL_INTERVAL_MS, 1);
+            return true;
+        } catch (XvfbException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Stops the virtual framebuffer process.
      */
     void stop();
 
+    /**
+     * Stops the virtual framebuffer process asynchronously. The default implementation
+     * executes {@link #stop()} in the common fork-join pool; implementations should
+     * override it to avoid blocking a thread while waiting for the process to exit.
+     * @return a future that is completed when the process has been stopped
+     */
+    default CompletableFuture<Void> stopAsync() {
+        return CompletableFuture.runAsync(this::stop);
+    }
+
     /**
      * Gets the display number in the format {@code :N} where {@code N} is the display number.
      * @return the display
      */
     String getDisplay();
 
+    /**
+     * Gets the lifecycle timings of the process. The default implementation
+     * returns an empty optional.
+     * @return the timings, if recorded
+     */
+    default Optional<StartupTimings> getStartupTimings() {
+        return Optional.empty();
+    }
+
     /**
      * Sets the display environment variable in the given environment.
      * @param environment map of environment variables in which display is to be set
@@ -131,4 +209,59 @@ public interface XvfbController extends Closeable {
 
     Optional<TreeNode<XWindow>> pollForWindow(Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) throws InterruptedException;
 
+    /**
+     * Polls asynchronously for a window that matches a predicate. The default implementation
+     * executes {@link #pollForWindow(Predicate, long, int)} in the common fork-join pool;
+     * implementations should override it to avoid blocking a thread between polls.
+     * @param windowFinder predicate that matches the window
+     * @param intervalMs interval between polls in milliseconds
+     * @param maxPollAttempts maximum number of polls
+     * @return a future that is completed with the window, if found
+     */
+    default CompletableFuture<Optional<TreeNode<XWindow>>> pollForWindowAsync(Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pollForWindow(windowFinder, intervalMs, maxPollAttempts);
+            } catch (InterruptedException e) {
+                throw new XvfbException("interrupted while polling for window", e);
+            }
+        });
+    }
+
+    /**
+     * Waits until the pixels of the screen have been unchanged for a quiet period.
+     * @param quietPeriod the duration for which the pixels must be unchanged
+     * @param timeout the maximum duration to wait
+     * @throws InterruptedException if waiting is interrupted
+     * @throws ScreenNotStableException if the pixels did not settle before the timeout
+     * @see #waitForScreenStable(Duration, Duration, Rectangle)
+     */
+    default void waitForScreenStable(Duration quietPeriod, Duration timeout) throws InterruptedException {
+        waitForScreenStable(quietPeriod, timeout, null);
+    }
+
+    /**
+     * Waits until the pixels of the screen, or of a region of it, have been unchanged
+     * for a quiet period. The default implementation compares screenshots captured
+     * with {@link #getScreenshooter()}; implementations that can read the framebuffer
+     * directly should override it.
+     * @param quietPeriod the duration for which the pixels must be unchanged
+     * @param timeout the maximum duration to wait
+     * @param region the region to watch, or null for the whole screen
+     * @throws InterruptedException if waiting is interrupted
+     * @throws ScreenNotStableException if the pixels did not settle before the timeout
+     */
+    default void waitForScreenStable(Duration quietPeriod, Duration timeout, @Nullable Rectangle region) throws InterruptedException {
+        ScreenStabilityPoller.waitForStable(getScreenshooter(), quietPeriod, timeout, region);
+    }
+
+    /**
+     * Exception thrown when the screen does not settle within a timeout.
+     */
+    class ScreenNotStableException extends XvfbException {
+        public ScreenNotStableException(String message) {
+            super(message);
+        }
+    }
+
 }
@@ -0,0 +1,20 @@
+package com.github.mike10004.xvfbmanager;
+
+/**
+ * Interface of a service that is notified when an {@code Xvfb} process reaches
+ * a lifecycle phase. Listeners are invoked synchronously on whichever thread
+ * reaches the phase, so implementations should return quickly. Exceptions thrown
+ * by listeners are logged and otherwise ignored.
+ *
+ * @see XvfbManager#addLifecycleListener(XvfbLifecycleListener)
+ */
+public interface XvfbLifecycleListener {
+
+    /**
+     * Invoked when a phase is reached.
+     * @param phase the phase
+     * @param timings the timings of the process, including the phase just reached
+     */
+    void phaseReached(StartupTimings.Phase phase, StartupTimings timings);
+
+}
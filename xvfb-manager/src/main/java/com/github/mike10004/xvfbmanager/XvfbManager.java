@@ -1,20 +1,20 @@
 package com.github.mike10004.xvfbmanager;
 
 import com.github.mike10004.nativehelper.Whicher;
-import com.google.common.util.concurrent.JdkFutureAdapters;
 import io.github.mike10004.subprocess.ProcessMonitor;
 import io.github.mike10004.subprocess.ProcessResult;
 import io.github.mike10004.subprocess.ProcessTracker;
 import io.github.mike10004.subprocess.Subprocess;
 import com.github.mike10004.xvfbmanager.Poller.PollOutcome;
 import com.github.mike10004.xvfbmanager.Poller.StopReason;
+import com.github.mike10004.xvfbmanager.XvfbConfig.DisplayfdMode;
+import com.github.mike10004.xvfbmanager.XvfbConfig.ReadinessStrategy;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Iterables;
 import com.google.common.io.CharSource;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.MoreExecutors;
 import io.github.mike10004.subprocess.SubprocessLaunchSupport;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -28,12 +28,21 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -48,6 +57,7 @@ public class XvfbManager {
     private final Supplier<File> xvfbExecutableSupplier;
     private final XvfbConfig xvfbConfig;
     private final ProcessTracker processTracker;
+    private final List<XvfbLifecycleListener> lifecycleListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a default instance of the class.
@@ -83,7 +93,7 @@ public class XvfbManager {
      * @param xvfbConfig virtual framebuffer configuration
      */
     public XvfbManager(Supplier<File> xvfbExecutableSupplier, XvfbConfig xvfbConfig) {
-        this(xvfbExecutableSupplier, xvfbConfig, ShutdownHookProcessTracker.getInstance());
+        this(xvfbExecutableSupplier, xvfbConfig, ConcurrentProcessTracker.getInstance());
     }
 
     public XvfbManager(ProcessTracker processTracker) {
@@ -96,6 +106,25 @@ public class XvfbManager {
         this.processTracker = requireNonNull(processTracker);
     }
 
+    /**
+     * Adds a listener that is notified as each process started by this instance
+     * reaches a lifecycle phase. Only processes started after the listener is
+     * added are reported.
+     * @param listener the listener
+     */
+    public void addLifecycleListener(XvfbLifecycleListener listener) {
+        lifecycleListeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * Removes a lifecycle listener.
+     * @param listener the listener
+     * @return true if the listener had been added
+     */
+    public boolean removeLifecycleListener(XvfbLifecycleListener listener) {
+        return lifecycleListeners.remove(listener);
+    }
+
     protected static String toDisplayValue(int displayNumber) {
         checkArgument(displayNumber >= 0, "displayNumber must be nonnegative");
         return String.format(":%d", displayNumber);
@@ -139,6 +168,16 @@ public class XvfbManager {
         return Sleeper.DefaultSleeper.getInstance();
     }
 
+    /**
+     * Creates the readiness checker used to poll a newly started display.
+     * The default checker executes {@code xdpyinfo}. Override this method
+     * to return an {@link X11ConnectionReadinessChecker} to check readiness
+     * in-process instead.
+     * @param tracker process tracker
+     * @param display the display
+     * @param framebufferDir the framebuffer directory
+     * @return a readiness checker
+     */
     protected DisplayReadinessChecker createDisplayReadinessChecker(ProcessTracker tracker, String display, File framebufferDir) {
         return new DefaultDisplayReadinessChecker(tracker);
     }
@@ -147,6 +186,31 @@ public class XvfbManager {
         return new DefaultXvfbController(future, display, createDisplayReadinessChecker(processTracker, display, framebufferDir), createScreenshooter(display, framebufferDir), createSleeper());
     }
 
+    /**
+     * Creates a controller whose readiness is signaled by {@code Xvfb} printing the display
+     * number. This is invoked instead of {@link #createController(ProcessMonitor, String, File)}
+     * if the configured {@link XvfbConfig.ReadinessStrategy readiness strategy} uses
+     * the {@code -displayfd} output. With {@link ReadinessStrategy#DISPLAYFD}, the controller
+     * waits for the number itself, so readiness is reported as soon as the number is printed;
+     * with {@link ReadinessStrategy#DISPLAYFD_OR_CHECKER}, it polls a checker that consults
+     * the number and falls back to the {@link #createDisplayReadinessChecker(ProcessTracker, String, File) readiness checker}.
+     * @param future the process monitor
+     * @param display the display
+     * @param framebufferDir the framebuffer directory
+     * @param displayNumberSignal future that is completed with the number {@code Xvfb} prints
+     * @return a new controller
+     */
+    protected DefaultXvfbController createController(ProcessMonitor<File, File> future, String display, File framebufferDir, CompletableFuture<Integer> displayNumberSignal) {
+        if (xvfbConfig.readinessStrategy == ReadinessStrategy.DISPLAYFD_OR_CHECKER) {
+            DisplayReadinessChecker fallback = createDisplayReadinessChecker(processTracker, display, framebufferDir);
+            DisplayReadinessChecker readinessChecker = new DisplayfdReadinessChecker(displayNumberSignal, () -> future.process().isAlive(), fallback);
+            return new DefaultXvfbController(future, display, readinessChecker, createScreenshooter(display, framebufferDir), createSleeper());
+        }
+        DisplayReadinessChecker readinessChecker = new DisplayfdReadinessChecker(displayNumberSignal, () -> future.process().isAlive(), null);
+        return new DefaultXvfbController(future, display, readinessChecker, createScreenshooter(display, framebufferDir), createSleeper(),
+                WatchingXLockFileChecker.getInstance(), displayNumberSignal);
+    }
+
     /**
      * Starts Xvfb on the specified display using the specified executor service, writing temp
      * files to the specified directory.
@@ -191,6 +255,115 @@ public class XvfbManager {
         return doStart(null, nonDeletingExistingDirectoryProvider(scratchDir));
     }
 
+    /**
+     * Starts Xvfb on a display number reserved from an allocator. The reservation is
+     * held until the process exits. A directory for temp files will be created and deleted
+     * when the process is stopped.
+     * @param allocator the allocator
+     * @return the process controller
+     * @throws IOException if the display number cannot be reserved or the files and directories
+     * the process requires cannot be created or written to
+     */
+    public XvfbController start(DisplayNumberAllocator allocator) throws IOException {
+        @Nullable Object event = FlightEvents.beginStart();
+        @Nullable XvfbController controller = null;
+        try {
+            DisplayNumberAllocator.Reservation reservation = allocator.reserve();
+            XvfbLaunch launch;
+            try {
+                launch = launch(reservation.getDisplayNumber(), newTempDirProvider(FileUtils.getTempDirectory().toPath()));
+            } catch (IOException | RuntimeException e) {
+                reservation.close();
+                throw e;
+            }
+            getProcessExitReactor().addCallback(launch.monitor, new ReservationReleasingCallback<>(reservation), getCallbackExecutor());
+            controller = finishStart(launch, reservation.getDisplay());
+            return controller;
+        } finally {
+            FlightEvents.endStart(event, controller == null ? null : controller.getDisplay(), controller != null);
+        }
+    }
+
+    /**
+     * Starts Xvfb on the specified display asynchronously, writing temp files to the specified directory.
+     * The returned future is completed when the process has been launched; it does not wait
+     * for the display to become ready. Use {@link XvfbController#waitUntilReadyAsync()} for that.
+     * @param displayNumber the display number
+     * @param scratchDir the temp directory
+     * @return a future that is completed with the process controller, or completed exceptionally
+     * with an {@link IOException} if the files and directories the process requires cannot be created or written to
+     */
+    public CompletableFuture<XvfbController> startAsync(int displayNumber, Path scratchDir) {
+        return doStartAsync(displayNumber, nonDeletingExistingDirectoryProvider(scratchDir));
+    }
+
+    /**
+     * Starts Xvfb on the specified display asynchronously. A directory for temp files
+     * is created and deleted when the process is stopped.
+     * @param displayNumber the display number
+     * @return a future that is completed with the process controller
+     * @see #startAsync(int, Path)
+     */
+    public CompletableFuture<XvfbController> startAsync(int displayNumber) {
+        return doStartAsync(displayNumber, newTempDirProvider(FileUtils.getTempDirectory().toPath()));
+    }
+
+    /**
+     * Starts Xvfb on a vacant display asynchronously. A directory for temp files will be created
+     * and deleted when the process is stopped. The returned future is completed when the
+     * automatically selected display number is known.
+     * @return a future that is completed with the process controller
+     * @see #startAsync(int, Path)
+     */
+    public CompletableFuture<XvfbController> startAsync() {
+        return doStartAsync(null, newTempDirProvider(FileUtils.getTempDirectory().toPath()));
+    }
+
+    /**
+     * Starts Xvfb on a vacant display asynchronously, writing temp files to the given directory.
+     * @param scratchDir the temp directory
+     * @return a future that is completed with the process controller
+     * @see #startAsync(int, Path)
+     */
+    public CompletableFuture<XvfbController> startAsync(Path scratchDir) {
+        return doStartAsync(null, nonDeletingExistingDirectoryProvider(scratchDir));
+    }
+
+    /**
+     * Starts many instances of Xvfb on vacant displays. All processes are launched
+     * concurrently, but at most {@code maxConcurrentReadinessChecks} displays are
+     * polled for readiness at a time, so that many readiness checks are not executed
+     * at once. Readiness checks are executed on the {@link #getBlockingExecutor() blocking
+     * executor}, so the cap is reached as long as it does not exceed that executor's
+     * thread count. Each display's future in the returned batch is completed as soon as
+     * that display is ready. A display that never becomes ready is stopped.
+     * @param count number of displays to start
+     * @param maxConcurrentReadinessChecks maximum number of displays polled for readiness at once
+     * @return the batch
+     */
+    public BatchStart startAll(int count, int maxConcurrentReadinessChecks) {
+        checkArgument(count >= 0, "count must be nonnegative");
+        AdmissionGate readinessGate = new AdmissionGate(maxConcurrentReadinessChecks);
+        List<CompletableFuture<XvfbController>> controllers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            controllers.add(startAsync().thenCompose(controller -> awaitReadyOrStop(controller, readinessGate)));
+        }
+        return new BatchStart(controllers);
+    }
+
+    private static CompletableFuture<XvfbController> awaitReadyOrStop(XvfbController controller, AdmissionGate readinessGate) {
+        CompletableFuture<XvfbController> result = new CompletableFuture<>();
+        readinessGate.submit(controller::waitUntilReadyAsync).whenComplete((ignore, t) -> {
+            if (t == null) {
+                result.complete(controller);
+            } else {
+                controller.stopAsync();
+                result.completeExceptionally(BatchStart.unwrap(t));
+            }
+        });
+        return result;
+    }
+
     /**
      * Starts Xvfb, maybe auto-selecting a display number.
      * @param displayNumber display number, or null to auto-select
@@ -200,7 +373,86 @@ public class XvfbManager {
      */
     private XvfbController doStart(final @Nullable Integer displayNumber,
                                    ScratchDirProvider scratchDirProvider) throws IOException {
-        String display = null;
+        @Nullable Object event = FlightEvents.beginStart();
+        @Nullable String display = null;
+        boolean success = false;
+        try {
+            XvfbLaunch launch = launch(displayNumber, scratchDirProvider);
+            display = launch.display;
+            if (display == null) {
+                int autoDisplayNumber;
+                if (launch.displayNumberFuture != null) {
+                    autoDisplayNumber = awaitDisplayNumber(launch.displayNumberFuture);
+                } else {
+                    autoDisplayNumber = pollForDisplayNumber(launch.getDisplayfdOutput());
+                }
+                display = toDisplayValue(autoDisplayNumber);
+            }
+            XvfbController controller = finishStart(launch, display);
+            success = true;
+            return controller;
+        } finally {
+            FlightEvents.endStart(event, display, success);
+        }
+    }
+
+    /**
+     * Starts Xvfb asynchronously. The process is launched on the {@link #getBlockingExecutor() blocking executor},
+     * and an automatically selected display number is awaited without blocking a thread.
+     * @param displayNumber display number, or null to auto-select
+     * @param scratchDirProvider provider of scratch directory
+     * @return a future that is completed with the process controller
+     */
+    private CompletableFuture<XvfbController> doStartAsync(final @Nullable Integer displayNumber,
+                                                           ScratchDirProvider scratchDirProvider) {
+        @Nullable Object event = FlightEvents.beginStart();
+        CompletableFuture<XvfbLaunch> launchFuture = new CompletableFuture<>();
+        try {
+            getBlockingExecutor().execute(() -> {
+                try {
+                    launchFuture.complete(launch(displayNumber, scratchDirProvider));
+                } catch (IOException | RuntimeException e) {
+                    launchFuture.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            launchFuture.completeExceptionally(e);
+        }
+        CompletableFuture<XvfbController> result = launchFuture.thenCompose(launch -> resolveDisplayAsync(launch)
+                .thenApply(display -> finishStart(launch, display)));
+        result.whenComplete((controller, t) -> FlightEvents.endStart(event, controller == null ? null : controller.getDisplay(), t == null));
+        return result;
+    }
+
+    private CompletableFuture<String> resolveDisplayAsync(XvfbLaunch launch) {
+        ScheduledExecutorService scheduler = getScheduler();
+        if (launch.display != null) {
+            return CompletableFuture.completedFuture(launch.display);
+        }
+        CompletableFuture<Integer> autoDisplayNumberFuture;
+        if (launch.displayNumberFuture != null) {
+            long timeoutMs = AUTO_DISPLAY_POLL_INTERVAL_MS * AUTO_DISPLAY_POLLS_MAX;
+            autoDisplayNumberFuture = Scheduling.within(launch.displayNumberFuture, timeoutMs, TimeUnit.MILLISECONDS, scheduler,
+                    () -> new XvfbException("display number (because of -displayfd option) was not printed within " + timeoutMs + "ms"));
+        } else {
+            autoDisplayNumberFuture = createDisplayNumberPoller(launch.getDisplayfdOutput())
+                    .pollAsync(getDisplayNumberPollIntervals().iterator(), scheduler, getBlockingExecutor())
+                    .thenApply(XvfbManager::requireDisplayNumber);
+        }
+        return autoDisplayNumberFuture.thenApply(XvfbManager::toDisplayValue);
+    }
+
+    /**
+     * Launches the Xvfb process.
+     * @param displayNumber display number, or null to auto-select
+     * @param scratchDirProvider provider of scratch directory
+     * @return the launch state
+     * @throws IOException if the files and directories the process requires cannot be created or written to
+     */
+    private XvfbLaunch launch(final @Nullable Integer displayNumber,
+                              ScratchDirProvider scratchDirProvider) throws IOException {
+        StartupTimings timings = new StartupTimings(lifecycleListeners, Ticker.systemTicker());
+        @Nullable String display = null;
         final boolean AUTO_DISPLAY = displayNumber == null;
         Subprocess.Builder pb;
         File xvfbExecutable = xvfbExecutableSupplier.get();
@@ -209,42 +461,141 @@ public class XvfbManager {
         } else {
             pb = Subprocess.running(xvfbExecutable);
         }
+        final boolean displayfdSignalUsed = xvfbConfig.readinessStrategy.isDisplayfdSignalUsed();
         if (AUTO_DISPLAY) {
             pb.args("-displayfd", String.valueOf(DISPLAY_RECEIVER_FD));
         } else {
             display = toDisplayValue(displayNumber);
             pb.args(display);
+            if (displayfdSignalUsed) {
+                pb.args("-displayfd", String.valueOf(DISPLAY_RECEIVER_FD));
+            }
         }
         Path scratchDir = scratchDirProvider.provideDirectory();
         Path framebufferDir = java.nio.file.Files.createTempDirectory(scratchDir, "xvfb-framebuffer");
         pb.args("-screen", String.valueOf(SCREEN), xvfbConfig.geometry);
         pb.args("-fbdir", framebufferDir.toAbsolutePath().toString());
+        pb.args(xvfbConfig.extraArgs);
         File stdoutFile = File.createTempFile("xvfb-stdout", ".txt", scratchDir.toFile());
         File stderrFile = File.createTempFile("xvfb-stderr", ".txt", scratchDir.toFile());
+        timings.record(StartupTimings.Phase.SCRATCH_DIR_CREATED);
         Subprocess xvfbSubprocess = pb.build();
         log.trace("executing {}", xvfbSubprocess);
-        SubprocessLaunchSupport<File, File> launcher = xvfbSubprocess.launcher(processTracker)
-                .outputFiles(stdoutFile, stderrFile);
+        @Nullable CompletableFuture<Integer> displayNumberFuture = null;
+        SubprocessLaunchSupport<File, File> launcher;
+        if ((AUTO_DISPLAY && xvfbConfig.displayfdMode == DisplayfdMode.PIPE) || displayfdSignalUsed) {
+            DisplayfdStreamContext streamContext = new DisplayfdStreamContext(stdoutFile, stderrFile, DISPLAY_RECEIVER_FD);
+            displayNumberFuture = streamContext.displayNumber();
+            launcher = xvfbSubprocess.launcher(processTracker).output(streamContext);
+        } else {
+            launcher = xvfbSubprocess.launcher(processTracker)
+                    .outputFiles(stdoutFile, stderrFile);
+        }
         ProcessMonitor<File, File> xvfbMonitor = launcher.launch();
+        timings.record(StartupTimings.Phase.SPAWNED);
         Executor callbacker = getCallbackExecutor();
-        Futures.addCallback(JdkFutureAdapters.listenInPoolThread(xvfbMonitor.future()), new LoggingCallback<>("xvfb"), callbacker);
+        ProcessExitReactor reactor = getProcessExitReactor();
+        reactor.addCallback(xvfbMonitor, new LoggingCallback<>("xvfb"), callbacker);
+        reactor.addCallback(xvfbMonitor, new ExitTimeRecorder<>(timings), callbacker);
         if (scratchDirProvider.isDeleteOnStop()) {
-            Futures.addCallback(JdkFutureAdapters.listenInPoolThread(xvfbMonitor.future()), new DirectoryDeletingCallback<>(scratchDir.toFile()), callbacker);
+            reactor.addCallback(xvfbMonitor, new DirectoryDeletingCallback<>(scratchDir.toFile()), callbacker);
         }
-        if (AUTO_DISPLAY) {
-            File outputFileContainingDisplay = selectCorrespondingFile(DISPLAY_RECEIVER_FD, stdoutFile, stderrFile);
-            int autoDisplayNumber = pollForDisplayNumber(Files.asCharSource(outputFileContainingDisplay, XVFB_OUTPUT_CHARSET));
-            display = toDisplayValue(autoDisplayNumber);
+        return new XvfbLaunch(xvfbMonitor, display, framebufferDir.toFile(), stdoutFile, stderrFile, displayNumberFuture, timings);
+    }
+
+    /**
+     * Creates the controller for a launched process whose display is known.
+     */
+    private XvfbController finishStart(XvfbLaunch launch, String display) {
+        launch.timings.setDisplay(display);
+        launch.timings.record(StartupTimings.Phase.DISPLAY_RESOLVED);
+        DefaultXvfbController controller;
+        if (xvfbConfig.readinessStrategy.isDisplayfdSignalUsed()) {
+            assert launch.displayNumberFuture != null : "display number future must be set if readiness is signaled by -displayfd";
+            controller = createController(launch.monitor, display, launch.framebufferDir, launch.displayNumberFuture);
         } else {
-            checkState(display != null, "display should have been set manually from %s", displayNumber);
+            controller = createController(launch.monitor, display, launch.framebufferDir);
         }
-        DefaultXvfbController controller = createController(xvfbMonitor, display, framebufferDir.toFile());
-        Futures.addCallback(JdkFutureAdapters.listenInPoolThread(xvfbMonitor.future()), new AbortFlagSetter<>(controller), callbacker);
+        controller.setStartupTimings(launch.timings);
+        getProcessExitReactor().addCallback(launch.monitor, new AbortFlagSetter<>(controller), getCallbackExecutor());
         return controller;
     }
 
+    /**
+     * State of a launched process whose display may not be known yet.
+     */
+    private static class XvfbLaunch {
+
+        public final ProcessMonitor<File, File> monitor;
+
+        /**
+         * Display, or null if it is automatically selected and has not been printed yet.
+         */
+        @Nullable
+        public final String display;
+
+        public final File framebufferDir;
+        public final File stdoutFile;
+        public final File stderrFile;
+
+        @Nullable
+        public final CompletableFuture<Integer> displayNumberFuture;
+
+        public final StartupTimings timings;
+
+        private XvfbLaunch(ProcessMonitor<File, File> monitor, @Nullable String display, File framebufferDir, File stdoutFile, File stderrFile, @Nullable CompletableFuture<Integer> displayNumberFuture, StartupTimings timings) {
+            this.monitor = monitor;
+            this.display = display;
+            this.framebufferDir = framebufferDir;
+            this.stdoutFile = stdoutFile;
+            this.stderrFile = stderrFile;
+            this.displayNumberFuture = displayNumberFuture;
+            this.timings = timings;
+        }
+
+        public CharSource getDisplayfdOutput() {
+            File outputFileContainingDisplay = selectCorrespondingFile(DISPLAY_RECEIVER_FD, stdoutFile, stderrFile);
+            return Files.asCharSource(outputFileContainingDisplay, XVFB_OUTPUT_CHARSET);
+        }
+    }
+
+    /**
+     * Gets the scheduler that times asynchronous starts. Only short tasks are
+     * executed on the scheduler.
+     * @return the scheduler
+     */
+    protected ScheduledExecutorService getScheduler() {
+        return Scheduling.sharedScheduler();
+    }
+
+    /**
+     * Gets the executor on which asynchronous starts launch processes and execute
+     * other work that may block. The default is a shared executor with a bounded
+     * number of threads.
+     * @return the executor
+     */
+    protected Executor getBlockingExecutor() {
+        return Scheduling.sharedBlockingExecutor();
+    }
+
+    /**
+     * Gets the executor on which process exit callbacks are invoked, such as those that
+     * delete the scratch directory and release display number reservations. The default
+     * is the {@link #getBlockingExecutor() blocking executor}, so that callbacks do not
+     * run on the {@link #getProcessExitReactor() reactor}'s single thread.
+     * @return the executor
+     */
     protected Executor getCallbackExecutor() {
-        return MoreExecutors.directExecutor();
+        return getBlockingExecutor();
+    }
+
+    /**
+     * Gets the reactor that invokes callbacks when {@code Xvfb} processes exit.
+     * The default is the shared instance, which uses one thread for all processes.
+     * @return the reactor
+     */
+    protected ProcessExitReactor getProcessExitReactor() {
+        return ProcessExitReactor.getInstance();
     }
 
     /**
@@ -306,8 +657,30 @@ public class XvfbManager {
     private static final long AUTO_DISPLAY_POLL_INTERVAL_MS = 100;
     private static final int AUTO_DISPLAY_POLLS_MAX = 20;
 
+    /**
+     * Gets the intervals at which the output file is polled for the automatically
+     * selected display number. The sequence must be finite. The default is
+     * 20 polls at intervals of 100 milliseconds. Subclasses may override this to use a different strategy,
+     * for example {@link PollIntervals#until(Iterable, java.time.Duration)
+     * fast intervals bounded by a deadline}.
+     * @return sequence of intervals in milliseconds
+     */
+    protected Iterable<Long> getDisplayNumberPollIntervals() {
+        return PollIntervals.limit(PollIntervals.regular(AUTO_DISPLAY_POLL_INTERVAL_MS), AUTO_DISPLAY_POLLS_MAX);
+    }
+
     protected int pollForDisplayNumber(final CharSource cs) {
-        Poller<Integer> poller = new Poller<Integer>() {
+        PollOutcome<Integer> pollOutcome;
+        try {
+            pollOutcome = createDisplayNumberPoller(cs).poll(getDisplayNumberPollIntervals().iterator());
+        } catch (InterruptedException e) {
+            throw new XvfbException("interrupted while polling for display number", e);
+        }
+        return requireDisplayNumber(pollOutcome);
+    }
+
+    private static Poller<Integer> createDisplayNumberPoller(final CharSource cs) {
+        return new Poller<Integer>() {
             @Override
             protected PollAnswer<Integer> check(int pollAttemptsSoFar) {
                 @Nullable String lastLine = null;
@@ -328,19 +701,51 @@ public class XvfbManager {
                 return continuePolling();
             }
         };
-        PollOutcome<Integer> pollOutcome;
-        try {
-            pollOutcome = poller.poll(AUTO_DISPLAY_POLL_INTERVAL_MS, AUTO_DISPLAY_POLLS_MAX);
-        } catch (InterruptedException e) {
-            throw new XvfbException("interrupted while polling for display number", e);
-        }
+    }
+
+    private static int requireDisplayNumber(PollOutcome<Integer> pollOutcome) {
         if (pollOutcome.reason == StopReason.RESOLVED) {
             assert pollOutcome.content != null : "poll resolved but outcome content is null";
             return pollOutcome.content;
         } else {
             throw new XvfbException("polling for display number (because of -displayfd option) did not behave as expected; poll terminated due to " + pollOutcome.reason);
         }
+    }
 
+    /**
+     * Waits for the display number to be read from the {@code -displayfd} output pipe.
+     * @param displayNumberFuture future that is completed when the number is read
+     * @return the display number
+     */
+    protected int awaitDisplayNumber(Future<Integer> displayNumberFuture) {
+        try {
+            return displayNumberFuture.get(AUTO_DISPLAY_POLL_INTERVAL_MS * AUTO_DISPLAY_POLLS_MAX, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new XvfbException("interrupted while waiting for display number", e);
+        } catch (ExecutionException e) {
+            throw new XvfbException("display number (because of -displayfd option) was never printed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new XvfbException("display number (because of -displayfd option) was not printed within " + (AUTO_DISPLAY_POLL_INTERVAL_MS * AUTO_DISPLAY_POLLS_MAX) + "ms", e);
+        }
+    }
+
+    private static class ExitTimeRecorder<T> implements FutureCallback<ProcessResult<T, T>> {
+
+        private final StartupTimings timings;
+
+        private ExitTimeRecorder(StartupTimings timings) {
+            this.timings = checkNotNull(timings);
+        }
+
+        @Override
+        public void onSuccess(@Nullable ProcessResult<T, T> result) {
+            timings.record(StartupTimings.Phase.PROCESS_EXITED);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            timings.record(StartupTimings.Phase.PROCESS_EXITED);
+        }
     }
 
     private static class AbortFlagSetter<T> implements FutureCallback<ProcessResult<T, T>> {
@@ -401,6 +806,25 @@ public class XvfbManager {
 
     }
 
+    private static class ReservationReleasingCallback<T> implements FutureCallback<ProcessResult<T, T>> {
+
+        private final DisplayNumberAllocator.Reservation reservation;
+
+        private ReservationReleasingCallback(DisplayNumberAllocator.Reservation reservation) {
+            this.reservation = checkNotNull(reservation);
+        }
+
+        @Override
+        public void onSuccess(@Nullable ProcessResult<T, T> result) {
+            reservation.close();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            reservation.close();
+        }
+    }
+
     static class DirectoryDeletingCallback<T> implements FutureCallback<ProcessResult<T, T>> {
 
         private final File directory;
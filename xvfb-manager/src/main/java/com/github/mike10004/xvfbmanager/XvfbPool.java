@@ -0,0 +1,517 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Pool of virtual framebuffers that are started ahead of time. The pool keeps
+ * a minimum number of ready displays idle, so that a {@link #lease(long, TimeUnit) lease}
+ * can usually be granted without waiting for an {@code Xvfb} process to start.
+ * Displays are started and replenished on background threads. A display that
+ * is returned to the pool is health-checked before it is made available again,
+ * and idle displays in excess of the minimum are stopped after they have been
+ * idle for longer than the configured time-to-live.
+ *
+ * <p>Create an instance with a {@link #builder(XvfbManager) builder}.</p>
+ */
+public class XvfbPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(XvfbPool.class);
+
+    /**
+     * Default minimum number of idle displays.
+     */
+    public static final int DEFAULT_MIN_IDLE = 1;
+
+    /**
+     * Default maximum number of displays, whether idle, leased, or starting.
+     */
+    public static final int DEFAULT_MAX_TOTAL = 8;
+
+    /**
+     * Default maximum time a surplus display may remain idle before being stopped.
+     */
+    public static final Duration DEFAULT_IDLE_TTL = Duration.ofMinutes(5);
+
+    private static final long REFILL_RETRY_DELAY_MS = 1000;
+
+    private final ControllerFactory controllerFactory;
+    private final HealthCheck healthCheck;
+    private final int minIdle;
+    private final int maxTotal;
+    private final long idleTtlNanos;
+    private final Ticker ticker;
+    private final ScheduledExecutorService maintenanceExecutor;
+    // most recently idle first, so that leases take warm displays and eviction starts at the tail
+    private final LinkedBlockingDeque<IdleEntry> idle;
+    private final AtomicInteger total;
+    private final AtomicInteger starting;
+    private final AtomicInteger waiting;
+    private final AtomicBoolean closed;
+
+    private XvfbPool(Builder builder) {
+        this.controllerFactory = checkNotNull(builder.controllerFactory);
+        this.healthCheck = checkNotNull(builder.healthCheck);
+        this.minIdle = builder.minIdle;
+        this.maxTotal = builder.maxTotal;
+        this.idleTtlNanos = builder.idleTtl.toNanos();
+        this.ticker = checkNotNull(builder.ticker);
+        checkArgument(minIdle >= 0, "minIdle must be nonnegative");
+        checkArgument(maxTotal > 0, "maxTotal must be positive");
+        checkArgument(minIdle <= maxTotal, "minIdle %s exceeds maxTotal %s", minIdle, maxTotal);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(builder.refillConcurrency, new ThreadFactoryBuilder()
+                .setNameFormat("xvfb-pool-%d")
+                .setDaemon(true)
+                .build());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.maintenanceExecutor = executor;
+        idle = new LinkedBlockingDeque<>();
+        total = new AtomicInteger(0);
+        starting = new AtomicInteger(0);
+        waiting = new AtomicInteger(0);
+        closed = new AtomicBoolean(false);
+        long evictionPeriodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(100), idleTtlNanos / 2);
+        maintenanceExecutor.scheduleWithFixedDelay(this::evictExpired, evictionPeriodNanos, evictionPeriodNanos, TimeUnit.NANOSECONDS);
+        refill();
+    }
+
+    /**
+     * Creates a builder of pools whose displays are started by the given manager.
+     * @param manager the manager
+     * @return a new builder
+     */
+    public static Builder builder(XvfbManager manager) {
+        checkNotNull(manager, "manager");
+        return builder(manager::start);
+    }
+
+    /**
+     * Creates a builder of pools whose displays are started by the given factory.
+     * @param controllerFactory the factory
+     * @return a new builder
+     */
+    public static Builder builder(ControllerFactory controllerFactory) {
+        return new Builder(controllerFactory);
+    }
+
+    /**
+     * Interface for a service that starts a virtual framebuffer. The pool waits
+     * for the display to become ready after the controller is returned.
+     */
+    public interface ControllerFactory {
+
+        /**
+         * Starts a virtual framebuffer.
+         * @return the controller
+         * @throws IOException if starting the framebuffer fails
+         */
+        XvfbController start() throws IOException;
+    }
+
+    /**
+     * Interface for a service that checks whether a display returned
+     * to the pool may be leased again.
+     */
+    public interface HealthCheck {
+
+        /**
+         * Checks whether the display is healthy.
+         * @param controller the display controller
+         * @return true if the display may be reused
+         */
+        boolean isHealthy(XvfbController controller);
+    }
+
+    /**
+     * Exception thrown when no display could be leased within the allotted time.
+     */
+    public static class PoolExhaustedException extends XvfbException {
+        public PoolExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Leases an idle display if one is immediately available. This method never
+     * waits for a display to start.
+     * @return the lease, or empty if no display is idle
+     */
+    public Optional<Lease> tryLease() {
+        checkState(!closed.get(), "pool is closed");
+        IdleEntry entry = idle.pollFirst();
+        refillAsync();
+        return Optional.ofNullable(entry).map(e -> new Lease(e.controller));
+    }
+
+    /**
+     * Leases a display, waiting up to the given amount of time for one to become available.
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout
+     * @return the lease
+     * @throws InterruptedException if waiting is interrupted
+     * @throws PoolExhaustedException if no display becomes available in time
+     */
+    public Lease lease(long timeout, TimeUnit unit) throws InterruptedException {
+        checkState(!closed.get(), "pool is closed");
+        IdleEntry entry = idle.pollFirst();
+        if (entry == null) {
+            waiting.incrementAndGet();
+            try {
+                refillAsync();
+                entry = idle.pollFirst(timeout, unit);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        refillAsync();
+        if (entry == null) {
+            throw new PoolExhaustedException(String.format("no display available within %d %s (total=%d, max=%d)", timeout, unit, total.get(), maxTotal));
+        }
+        return new Lease(entry.controller);
+    }
+
+    /**
+     * Gets the number of displays that are idle and ready to be leased.
+     * @return the idle count
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of displays managed by this pool, including idle, leased, and starting displays.
+     * @return the total count
+     */
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * Class that represents the lease of a display. Closing the lease returns the display
+     * to the pool.
+     */
+    public final class Lease implements Closeable {
+
+        private final XvfbController controller;
+        private final AtomicBoolean released;
+
+        private Lease(XvfbController controller) {
+            this.controller = checkNotNull(controller);
+            released = new AtomicBoolean(false);
+        }
+
+        /**
+         * Gets the leased display's controller. The controller must not be stopped
+         * by the lessee; use {@link #invalidate()} instead.
+         * @return the controller
+         */
+        public XvfbController getController() {
+            return controller;
+        }
+
+        /**
+         * Releases the display so that it is stopped instead of being returned to the pool.
+         */
+        public void invalidate() {
+            if (released.compareAndSet(false, true)) {
+                discardAsync(controller);
+            }
+        }
+
+        /**
+         * Returns the display to the pool. The display is health-checked before
+         * it can be leased again.
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                giveBack(controller);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Lease{display=" + controller.getDisplay() + ", released=" + released.get() + "}";
+        }
+    }
+
+    private void giveBack(XvfbController controller) {
+        if (closed.get()) {
+            discard(controller);
+            return;
+        }
+        executeOrDiscard(controller, () -> {
+            boolean healthy;
+            try {
+                healthy = healthCheck.isHealthy(controller);
+            } catch (RuntimeException e) {
+                log.info("health check on {} failed: {}", controller.getDisplay(), e.toString());
+                healthy = false;
+            }
+            if (healthy && !closed.get()) {
+                idle.offerFirst(new IdleEntry(controller, ticker.read()));
+            } else {
+                discard(controller);
+            }
+        });
+    }
+
+    private void discardAsync(XvfbController controller) {
+        executeOrDiscard(controller, () -> discard(controller));
+    }
+
+    private void executeOrDiscard(XvfbController controller, Runnable task) {
+        try {
+            maintenanceExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            discard(controller);
+        }
+    }
+
+    private void discard(XvfbController controller) {
+        try {
+            controller.stop();
+        } catch (RuntimeException e) {
+            log.info("failed to stop {}: {}", controller.getDisplay(), e.toString());
+        } finally {
+            total.decrementAndGet();
+            refillAsync();
+        }
+    }
+
+    private void refillAsync() {
+        if (!closed.get()) {
+            try {
+                maintenanceExecutor.execute(this::refill);
+            } catch (RejectedExecutionException ignore) {
+                // pool is closing
+            }
+        }
+    }
+
+    private synchronized void refill() {
+        if (closed.get()) {
+            return;
+        }
+        int wanted = minIdle + waiting.get() - idle.size() - starting.get();
+        for (int i = 0; i < wanted; i++) {
+            if (!reserveSlot()) {
+                break;
+            }
+            starting.incrementAndGet();
+            maintenanceExecutor.execute(this::startOne);
+        }
+    }
+
+    private boolean reserveSlot() {
+        for (;;) {
+            int current = total.get();
+            if (current >= maxTotal) {
+                return false;
+            }
+            if (total.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void startOne() {
+        XvfbController controller = null;
+        try {
+            controller = controllerFactory.start();
+            controller.waitUntilReady();
+        } catch (IOException | RuntimeException e) {
+            log.warn("failed to start pooled display: {}", e.toString());
+            abandonStart(controller);
+            return;
+        } catch (InterruptedException e) {
+            log.debug("interrupted while starting pooled display");
+            abandonStart(controller);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        starting.decrementAndGet();
+        if (closed.get()) {
+            discard(controller);
+        } else {
+            idle.offerFirst(new IdleEntry(controller, ticker.read()));
+        }
+    }
+
+    private void abandonStart(XvfbController controller) {
+        if (controller != null) {
+            try {
+                controller.stop();
+            } catch (RuntimeException e) {
+                log.info("failed to stop {}: {}", controller.getDisplay(), e.toString());
+            }
+        }
+        starting.decrementAndGet();
+        total.decrementAndGet();
+        if (!closed.get()) {
+            try {
+                maintenanceExecutor.schedule(this::refill, REFILL_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignore) {
+                // pool is closing
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void evictExpired() {
+        long now = ticker.read();
+        while (idle.size() > minIdle) {
+            IdleEntry oldest = idle.peekLast();
+            if (oldest == null || now - oldest.idleSince < idleTtlNanos) {
+                break;
+            }
+            if (idle.removeLastOccurrence(oldest)) {
+                log.debug("evicting {} after idle TTL expired", oldest.controller.getDisplay());
+                discard(oldest.controller);
+            }
+        }
+    }
+
+    /**
+     * Stops all idle displays and the background threads. Displays that are
+     * currently leased are stopped when their leases are closed.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            maintenanceExecutor.shutdownNow();
+            IdleEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                discard(entry.controller);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "XvfbPool{" +
+                "idle=" + idle.size() +
+                ", total=" + total.get() +
+                ", minIdle=" + minIdle +
+                ", maxTotal=" + maxTotal +
+                ", closed=" + closed.get() +
+                '}';
+    }
+
+    private static class IdleEntry {
+
+        public final XvfbController controller;
+        public final long idleSince;
+
+        private IdleEntry(XvfbController controller, long idleSince) {
+            this.controller = checkNotNull(controller);
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Builder of pool instances.
+     */
+    public static class Builder {
+
+        private final ControllerFactory controllerFactory;
+        private HealthCheck healthCheck = XvfbController::isAlive;
+        private int minIdle = DEFAULT_MIN_IDLE;
+        private int maxTotal = DEFAULT_MAX_TOTAL;
+        private Duration idleTtl = DEFAULT_IDLE_TTL;
+        private int refillConcurrency = 2;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder(ControllerFactory controllerFactory) {
+            this.controllerFactory = checkNotNull(controllerFactory);
+        }
+
+        /**
+         * Sets the minimum number of idle displays the pool keeps ready.
+         * @param minIdle the minimum
+         * @return this builder instance
+         */
+        public Builder minIdle(int minIdle) {
+            checkArgument(minIdle >= 0, "minIdle must be nonnegative");
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of displays the pool manages, whether idle, leased, or starting.
+         * @param maxTotal the maximum
+         * @return this builder instance
+         */
+        public Builder maxTotal(int maxTotal) {
+            checkArgument(maxTotal > 0, "maxTotal must be positive");
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration a display in excess of the minimum may remain idle.
+         * @param idleTtl the time-to-live
+         * @return this builder instance
+         */
+        public Builder idleTtl(Duration idleTtl) {
+            checkArgument(!idleTtl.isNegative() && !idleTtl.isZero(), "idleTtl must be positive");
+            this.idleTtl = idleTtl;
+            return this;
+        }
+
+        /**
+         * Sets the check that returned displays must pass to be reused. By default,
+         * the display must be {@link XvfbController#isAlive() alive}.
+         * @param healthCheck the health check
+         * @return this builder instance
+         */
+        public Builder healthCheck(HealthCheck healthCheck) {
+            this.healthCheck = checkNotNull(healthCheck);
+            return this;
+        }
+
+        /**
+         * Sets the number of background threads that start and check displays.
+         * @param refillConcurrency the thread count
+         * @return this builder instance
+         */
+        public Builder refillConcurrency(int refillConcurrency) {
+            checkArgument(refillConcurrency > 0, "refillConcurrency must be positive");
+            this.refillConcurrency = refillConcurrency;
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        /**
+         * Builds a pool and begins starting displays in the background.
+         * @return a new pool
+         */
+        public XvfbPool build() {
+            return new XvfbPool(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteSource;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Screenshot in XWD format held in a buffer in memory.
+ * @see FramebufferDirScreenshooter#captureToBuffer(ByteBuffer)
+ */
+public class XwdBufferScreenshot implements Screenshot {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs an instance. The image is the content of the buffer between its
+     * position and limit. The buffer is not copied.
+     * @param buffer the buffer
+     */
+    public XwdBufferScreenshot(ByteBuffer buffer) {
+        this.buffer = checkNotNull(buffer);
+    }
+
+    /**
+     * Gets the buffer containing the image. The buffer may be passed back to
+     * {@link FramebufferDirScreenshooter#captureToBuffer(ByteBuffer)} for reuse once
+     * this screenshot is no longer needed.
+     * @return the buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public ByteSource asByteSource() {
+        if (buffer.hasArray()) {
+            return ByteSource.wrap(buffer.array()).slice(buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return ByteSource.wrap(copy);
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decoder of XWD images in Z pixmap format, which is the format of {@code xwd}
+ * output and of the screen files in an {@code Xvfb} framebuffer directory.
+ * Supports 8, 16, 24 and 32 bits per pixel, with true color and direct color
+ * visuals decoded by the channel masks and other visuals decoded by the colormap.
+ * This covers the depths {@code Xvfb} produces: 8, 16, 24 and 24 in 32 bits per pixel.
+ *
+ * <p>Pixels are decoded to packed RGB integers, as in {@link BufferedImage#TYPE_INT_RGB}.</p>
+ */
+public class XwdDecoder {
+
+    /**
+     * Decodes an image.
+     * @param xwd buffer containing the image, positioned at its start; the position is not changed
+     * @return the image
+     * @throws UnsupportedXwdFormatException if the image format is not supported
+     * @throws IOException if the image is malformed
+     */
+    public BufferedImage decode(ByteBuffer xwd) throws IOException {
+        XwdHeader header = XwdHeader.parse(xwd);
+        BufferedImage image = new BufferedImage(header.getWidth(), header.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        decodePixels(header, xwd, pixels);
+        return image;
+    }
+
+    /**
+     * Decodes the pixels of an image to packed RGB integers in row-major order.
+     * @param xwd buffer containing the image, positioned at its start; the position is not changed
+     * @param reuse array to reuse if it is large enough, or null to allocate a new one
+     * @return an array whose first {@code width * height} elements are the pixels
+     * @throws UnsupportedXwdFormatException if the image format is not supported
+     * @throws IOException if the image is malformed
+     */
+    public int[] decodePixels(ByteBuffer xwd, @Nullable int[] reuse) throws IOException {
+        XwdHeader header = XwdHeader.parse(xwd);
+        int numPixels = Math.multiplyExact(header.getWidth(), header.getHeight());
+        int[] pixels = reuse != null && reuse.length >= numPixels ? reuse : new int[numPixels];
+        decodePixels(header, xwd, pixels);
+        return pixels;
+    }
+
+    /**
+     * Checks whether an image with the given header can be decoded.
+     * @param header the header
+     * @return true if the format is supported
+     */
+    public boolean isSupported(XwdHeader header) {
+        try {
+            checkSupported(header);
+            return true;
+        } catch (UnsupportedXwdFormatException e) {
+            return false;
+        }
+    }
+
+    private static void checkSupported(XwdHeader header) throws UnsupportedXwdFormatException {
+        if (header.getPixmapFormat() != XwdHeader.Z_PIXMAP) {
+            throw new UnsupportedXwdFormatException("pixmap format " + header.getPixmapFormat() + " is not supported");
+        }
+        switch (header.getBitsPerPixel()) {
+            case 8:
+            case 16:
+            case 24:
+            case 32:
+                break;
+            default:
+                throw new UnsupportedXwdFormatException(header.getBitsPerPixel() + " bits per pixel is not supported");
+        }
+        if (usesMasks(header)) {
+            if (header.getRedMask() == 0 || header.getGreenMask() == 0 || header.getBlueMask() == 0) {
+                throw new UnsupportedXwdFormatException("channel masks must be nonzero for visual class " + header.getVisualClass());
+            }
+        } else if (header.getBitsPerPixel() != 8) {
+            throw new UnsupportedXwdFormatException("colormapped images must have 8 bits per pixel");
+        }
+    }
+
+    private static boolean usesMasks(XwdHeader header) {
+        return header.getVisualClass() == XwdHeader.TRUE_COLOR || header.getVisualClass() == XwdHeader.DIRECT_COLOR;
+    }
+
+    private static void decodePixels(XwdHeader header, ByteBuffer xwd, int[] pixels) throws IOException {
+        RowDecoder rows = new RowDecoder(header, xwd);
+        int width = header.getWidth();
+        for (int y = 0; y < header.getHeight(); y++) {
+            rows.decode(y, pixels, y * width);
+        }
+    }
+
+    /**
+     * Decodes an image one row at a time, passing each row to a handler as it is decoded.
+     * The whole image is never held in memory in decoded form.
+     * @param xwd buffer containing the image, positioned at its start; the position is not changed
+     * @param handler the row handler
+     * @throws UnsupportedXwdFormatException if the image format is not supported
+     * @throws IOException if the image is malformed or the handler throws it
+     */
+    public void decodeRows(ByteBuffer xwd, RowHandler handler) throws IOException {
+        XwdHeader header = XwdHeader.parse(xwd);
+        RowDecoder rows = new RowDecoder(header, xwd);
+        int[] row = new int[header.getWidth()];
+        for (int y = 0; y < header.getHeight(); y++) {
+            rows.decode(y, row, 0);
+            handler.row(y, row);
+        }
+    }
+
+    /**
+     * Interface of a handler of decoded rows.
+     */
+    public interface RowHandler {
+
+        /**
+         * Handles a row. The array is reused for the next row.
+         * @param y the row index
+         * @param rgb the pixels of the row, packed as RGB integers
+         * @throws IOException on I/O error
+         */
+        void row(int y, int[] rgb) throws IOException;
+    }
+
+    /**
+     * Decoder of rows of the pixel data of an image.
+     */
+    private static final class RowDecoder {
+
+        private final ByteBuffer data;
+        private final int width;
+        private final int bytesPerLine;
+        private final int bytesPerPixel;
+        private final int pixelStart;
+        private final boolean msbFirst;
+        private final boolean rgb32;
+        @Nullable
+        private final int[] colormap;
+        @Nullable
+        private final Channel red, green, blue;
+
+        RowDecoder(XwdHeader header, ByteBuffer xwd) throws IOException {
+            checkSupported(header);
+            width = header.getWidth();
+            bytesPerLine = header.getBytesPerLine();
+            bytesPerPixel = header.getBitsPerPixel() / 8;
+            if ((long) width * bytesPerPixel > bytesPerLine) {
+                throw new IOException("bytes per line " + bytesPerLine + " too small for width " + width);
+            }
+            data = xwd.duplicate();
+            long end = (long) data.position() + header.getPixelDataOffset() + header.getPixelDataLength();
+            if (end > data.limit()) {
+                throw new IOException("image is truncated; expected " + (end - data.position()) + " bytes but got " + data.remaining());
+            }
+            pixelStart = data.position() + header.getPixelDataOffset();
+            data.order(header.getPixelByteOrder());
+            msbFirst = data.order() == ByteOrder.BIG_ENDIAN;
+            if (usesMasks(header)) {
+                colormap = null;
+                rgb32 = bytesPerPixel == 4 && header.getRedMask() == 0xff0000 && header.getGreenMask() == 0xff00 && header.getBlueMask() == 0xff;
+                red = new Channel(header.getRedMask());
+                green = new Channel(header.getGreenMask());
+                blue = new Channel(header.getBlueMask());
+            } else {
+                colormap = readColormap(xwd, data.position() + header.getColormapOffset(), header.getNumColors());
+                rgb32 = false;
+                red = green = blue = null;
+            }
+        }
+
+        void decode(int y, int[] dest, int destOffset) {
+            int offset = pixelStart + y * bytesPerLine;
+            int i = destOffset;
+            if (rgb32) {
+                // common case of 24-bit color in 32 bits per pixel
+                for (int x = 0; x < width; x++) {
+                    dest[i++] = data.getInt(offset) & 0xffffff;
+                    offset += 4;
+                }
+            } else if (colormap != null) {
+                for (int x = 0; x < width; x++) {
+                    dest[i++] = colormap[data.get(offset++) & 0xff];
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    int value = readPixel(data, offset, bytesPerPixel, msbFirst);
+                    dest[i++] = (red.extract(value) << 16) | (green.extract(value) << 8) | blue.extract(value);
+                    offset += bytesPerPixel;
+                }
+            }
+        }
+    }
+
+    private static int readPixel(ByteBuffer data, int offset, int bytesPerPixel, boolean msbFirst) {
+        switch (bytesPerPixel) {
+            case 1:
+                return data.get(offset) & 0xff;
+            case 2:
+                return data.getShort(offset) & 0xffff;
+            case 3:
+                int b0 = data.get(offset) & 0xff, b1 = data.get(offset + 1) & 0xff, b2 = data.get(offset + 2) & 0xff;
+                return msbFirst ? (b0 << 16) | (b1 << 8) | b2 : (b2 << 16) | (b1 << 8) | b0;
+            default:
+                return data.getInt(offset);
+        }
+    }
+
+    /**
+     * Reads the colormap into a lookup table indexed by pixel value. Each entry
+     * is a 32-bit pixel value, 16-bit red, green and blue values, and two bytes of
+     * flags and padding, most significant byte first.
+     */
+    private static int[] readColormap(ByteBuffer xwd, int colormapStart, int ncolors) {
+        ByteBuffer in = xwd.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int[] lookup = new int[256];
+        for (int c = 0; c < ncolors; c++) {
+            int entry = colormapStart + c * XwdHeader.COLOR_SIZE;
+            int pixel = in.getInt(entry);
+            if (pixel >= 0 && pixel < lookup.length) {
+                int r = (in.getShort(entry + 4) >> 8) & 0xff;
+                int g = (in.getShort(entry + 6) >> 8) & 0xff;
+                int b = (in.getShort(entry + 8) >> 8) & 0xff;
+                lookup[pixel] = (r << 16) | (g << 8) | b;
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * Extractor of a color channel that scales the channel value to eight bits.
+     */
+    private static final class Channel {
+
+        private final int mask;
+        private final int shift;
+        private final int max;
+
+        Channel(int mask) {
+            this.mask = mask;
+            this.shift = Integer.numberOfTrailingZeros(mask);
+            this.max = mask >>> shift;
+        }
+
+        int extract(int pixel) {
+            int value = (pixel & mask) >>> shift;
+            if (max == 0xff) {
+                return value;
+            }
+            return (value * 255 + max / 2) / max;
+        }
+    }
+
+    /**
+     * Exception thrown if an image is well-formed but its format is not supported.
+     */
+    public static class UnsupportedXwdFormatException extends IOException {
+        public UnsupportedXwdFormatException(String message) {
+            super(message);
+        }
+    }
+}
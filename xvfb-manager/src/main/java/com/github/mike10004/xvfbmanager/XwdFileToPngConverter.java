@@ -7,28 +7,38 @@ import io.github.mike10004.subprocess.Subprocess;
 import com.github.mike10004.xvfbmanager.Screenshot.FileByteSource;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 /**
  * Screenshot implementation that uses an X utility to convert a screenshot
  * file to portable anymap format. Uses {@code xwdtopnm} to convert to PNM.
+ * See {@link XwdToPngConverter} for a converter that decodes in-process.
+ *
+ * <p>The PNG is written by a {@link PngEncoder} by default, which streams the
+ * rows of the pixmap. Constructed with a {@link ParallelPngEncoder}, or any other
+ * {@link ImageEncoder}, instances pass the pixels to that encoder instead.</p>
  */
 public class XwdFileToPngConverter implements ScreenshotConverter<Screenshot, ImageioReadableScreenshot> {
 
@@ -40,24 +50,41 @@ public class XwdFileToPngConverter implements ScreenshotConverter<Screenshot, Im
 
     private final ProcessTracker processTracker;
     private final Path tempDir;
+    private final ImageEncoder encoder;
 
     public XwdFileToPngConverter(ProcessTracker processTracker, Path tempDir) {
+        this(processTracker, tempDir, new PngEncoder());
+    }
+
+    public XwdFileToPngConverter(ProcessTracker processTracker, Path tempDir, ImageEncoder encoder) {
         this.tempDir = checkNotNull(tempDir);
         this.processTracker = requireNonNull(processTracker);
+        this.encoder = checkNotNull(encoder);
     }
 
     @Override
     public ImageioReadableScreenshot convert(Screenshot source) throws IOException, XvfbException {
-        File pnmFile = File.createTempFile("xwdtopnm-stdout", ".ppm", tempDir.toFile());
+        @Nullable Object event = FlightEvents.beginConvert();
+        @Nullable ImageioReadableScreenshot converted = null;
         try {
-            return convert(source, pnmFile);
-        } finally {
-            if (!pnmFile.delete()) {
-                log.info("failed to delete {}", pnmFile);
+            File pnmFile = File.createTempFile("xwdtopnm-stdout", ".ppm", tempDir.toFile());
+            try {
+                converted = convert(source, pnmFile);
+                return converted;
+            } finally {
+                if (!pnmFile.delete()) {
+                    log.info("failed to delete {}", pnmFile);
+                }
             }
+        } finally {
+            FlightEvents.endConvert(event, getClass(), sizeIfKnown(source), converted == null ? -1 : sizeIfKnown(converted), converted != null);
         }
     }
 
+    private static long sizeIfKnown(Screenshot screenshot) {
+        return screenshot.asByteSource().sizeIfKnown().or(-1L);
+    }
+
     protected ImageioReadableScreenshot convert(Screenshot source, File pnmFile) throws IOException, XvfbException {
         File stderrFile = File.createTempFile("xwdtopnm-stderr", ".txt", tempDir.toFile());
         try {
@@ -99,6 +126,7 @@ public class XwdFileToPngConverter implements ScreenshotConverter<Screenshot, Im
         if (inputFile.length() <= 0) {
             throw new IOException("input file is empty: " + inputFile);
         }
+        long launchNanos = System.nanoTime();
         ProcessMonitor<File, File> xwdtopnm = Subprocess.running(PROG_XWDTOPNM)
                 .args("-")
                 .build()
@@ -107,7 +135,7 @@ public class XwdFileToPngConverter implements ScreenshotConverter<Screenshot, Im
                 .launch();
         ProcessResult<File, File> result = null;
         try {
-            result = xwdtopnm.await();
+            result = HelperMetrics.await(PROG_XWDTOPNM, null, launchNanos, xwdtopnm);
         } catch (InterruptedException e) {
             ProcessKilling.termOrKill(xwdtopnm.destructor(), 250, TimeUnit.MILLISECONDS);
             throw new IOException("interrupted while waiting for xwdtopnm to finish", e);
@@ -122,15 +150,148 @@ public class XwdFileToPngConverter implements ScreenshotConverter<Screenshot, Im
     }
 
     protected byte[] convertPnmToPng(ByteSource pnmBytes) throws IOException {
+        long pnmSize = pnmBytes.sizeIfKnown().or(0L);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(PngEncoder.estimateEncodedSize(pnmSize))) {
+            convertPnmToPng(pnmBytes, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Converts a portable anymap image to PNG, writing the PNG to a stream. Binary
+     * pixmaps with 8-bit samples, which is what {@code xwdtopnm} produces for
+     * color screens, are passed to the image encoder as they are read; other formats
+     * are read with {@link ImageIO}, which requires a PNM plugin.
+     * @param pnmBytes the image
+     * @param out the output stream; not closed
+     * @throws IOException on I/O error or if the image cannot be read
+     */
+    public void convertPnmToPng(ByteSource pnmBytes, OutputStream out) throws IOException {
+        try (InputStream in = new BufferedInputStream(pnmBytes.openStream())) {
+            @Nullable PpmPixelSource pixels = PpmPixelSource.open(in);
+            if (pixels != null) {
+                encoder.encode(pixels, out);
+                return;
+            }
+        }
         try (InputStream in = pnmBytes.openStream()) {
             BufferedImage image = ImageIO.read(in);
             if (image == null) {
                 throw new IOException("no PNM image reader is registered");
             }
-            try (ByteArrayOutputStream out = new ByteArrayOutputStream(2048)) {
-                ImageIO.write(image, "png", out);
-                return out.toByteArray();
+            if (!ImageIO.write(image, "png", out)) {
+                throw new IOException("no PNG image writer is registered");
+            }
+        }
+    }
+
+    /**
+     * Source of the pixels of a binary portable pixmap ({@code P6}) with a maximum
+     * sample value of 255. The pixels are read from a stream, so they can be read
+     * only once, either by {@link #readRows(XwdDecoder.RowHandler)} or by {@link #readPixels()}.
+     */
+    static final class PpmPixelSource implements ImageEncoder.PixelSource {
+
+        private final InputStream in;
+        private final int width;
+        private final int height;
+        private boolean consumed;
+
+        private PpmPixelSource(InputStream in, int width, int height) {
+            this.in = in;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Reads the header of a pixmap.
+         * @param in stream positioned at the start of the image
+         * @return the pixel source, positioned at the first row, or null if the format is not supported
+         * @throws IOException if the header cannot be read
+         */
+        @Nullable
+        static PpmPixelSource open(InputStream in) throws IOException {
+            if (in.read() != 'P' || in.read() != '6') {
+                return null;
+            }
+            int width = readHeaderInt(in), height = readHeaderInt(in), maxval = readHeaderInt(in);
+            if (maxval != 255 || width <= 0 || height <= 0) {
+                return null;
+            }
+            return new PpmPixelSource(in, width, height);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void readRows(XwdDecoder.RowHandler handler) throws IOException {
+            consume();
+            byte[] bytes = new byte[Math.multiplyExact(width, 3)];
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                ByteStreams.readFully(in, bytes);
+                toRgbInts(bytes, row, 0, width);
+                handler.row(y, row);
+            }
+        }
+
+        @Override
+        public int[] readPixels() throws IOException {
+            consume();
+            byte[] bytes = new byte[Math.multiplyExact(width, 3)];
+            int[] pixels = new int[Math.multiplyExact(width, height)];
+            for (int y = 0; y < height; y++) {
+                ByteStreams.readFully(in, bytes);
+                toRgbInts(bytes, pixels, y * width, width);
+            }
+            return pixels;
+        }
+
+        private void consume() {
+            checkState(!consumed, "pixels already read");
+            consumed = true;
+        }
+
+        private static void toRgbInts(byte[] rgb, int[] dest, int offset, int width) {
+            for (int x = 0, i = 0; x < width; x++) {
+                dest[offset + x] = (rgb[i++] & 0xff) << 16 | (rgb[i++] & 0xff) << 8 | (rgb[i++] & 0xff);
+            }
+        }
+
+        /**
+         * Reads a decimal integer from the header, skipping whitespace and comments
+         * before it and consuming the single whitespace character after it.
+         */
+        private static int readHeaderInt(InputStream in) throws IOException {
+            int c = in.read();
+            while (c == '#' || Character.isWhitespace(c)) {
+                if (c == '#') {
+                    while (c != '\n' && c != -1) {
+                        c = in.read();
+                    }
+                }
+                c = in.read();
+            }
+            if (c < '0' || c > '9') {
+                throw new IOException("malformed PNM header");
+            }
+            long value = 0;
+            while (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new IOException("PNM header value too large");
+                }
+                c = in.read();
             }
+            return (int) value;
         }
     }
 
@@ -0,0 +1,247 @@
+package com.github.mike10004.xvfbmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Header of an XWD (X Window Dump) image, as written by {@code xwd} and
+ * as maintained by {@code Xvfb} in the screen files of its framebuffer directory.
+ * Header fields and colormap entries are stored most significant byte first;
+ * the byte order of the pixel data is given by {@link #getByteOrder()}.
+ */
+public final class XwdHeader {
+
+    /**
+     * Size in bytes of the fixed part of the header, which is followed by the window name.
+     */
+    public static final int FIXED_SIZE = 100;
+
+    /**
+     * Size in bytes of a colormap entry.
+     */
+    public static final int COLOR_SIZE = 12;
+
+    /**
+     * File format version written by X11 programs.
+     */
+    public static final int VERSION = 7;
+
+    public static final int XY_BITMAP = 0, XY_PIXMAP = 1, Z_PIXMAP = 2;
+
+    public static final int LSB_FIRST = 0, MSB_FIRST = 1;
+
+    public static final int STATIC_GRAY = 0, GRAY_SCALE = 1, STATIC_COLOR = 2,
+            PSEUDO_COLOR = 3, TRUE_COLOR = 4, DIRECT_COLOR = 5;
+
+    private final int headerSize;
+    private final int fileVersion;
+    private final int pixmapFormat;
+    private final int pixmapDepth;
+    private final int pixmapWidth;
+    private final int pixmapHeight;
+    private final int xoffset;
+    private final int byteOrder;
+    private final int bitmapUnit;
+    private final int bitmapBitOrder;
+    private final int bitmapPad;
+    private final int bitsPerPixel;
+    private final int bytesPerLine;
+    private final int visualClass;
+    private final int redMask;
+    private final int greenMask;
+    private final int blueMask;
+    private final int bitsPerRgb;
+    private final int colormapEntries;
+    private final int ncolors;
+    private final int windowWidth;
+    private final int windowHeight;
+
+    private XwdHeader(ByteBuffer in) {
+        headerSize = in.getInt();
+        fileVersion = in.getInt();
+        pixmapFormat = in.getInt();
+        pixmapDepth = in.getInt();
+        pixmapWidth = in.getInt();
+        pixmapHeight = in.getInt();
+        xoffset = in.getInt();
+        byteOrder = in.getInt();
+        bitmapUnit = in.getInt();
+        bitmapBitOrder = in.getInt();
+        bitmapPad = in.getInt();
+        bitsPerPixel = in.getInt();
+        bytesPerLine = in.getInt();
+        visualClass = in.getInt();
+        redMask = in.getInt();
+        greenMask = in.getInt();
+        blueMask = in.getInt();
+        bitsPerRgb = in.getInt();
+        colormapEntries = in.getInt();
+        ncolors = in.getInt();
+        windowWidth = in.getInt();
+        windowHeight = in.getInt();
+    }
+
+    /**
+     * Parses a header from the beginning of a buffer. The position of the
+     * given buffer is not changed.
+     * @param xwd buffer containing an XWD image, positioned at its start
+     * @return the header
+     * @throws IOException if the buffer does not start with a valid header
+     */
+    public static XwdHeader parse(ByteBuffer xwd) throws IOException {
+        ByteBuffer in = xwd.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (in.remaining() < FIXED_SIZE) {
+            throw new IOException("too short for XWD header: " + in.remaining() + " bytes");
+        }
+        XwdHeader header = new XwdHeader(in);
+        if (header.fileVersion != VERSION) {
+            throw new IOException("unsupported XWD version " + header.fileVersion);
+        }
+        if (header.headerSize < FIXED_SIZE || header.bytesPerLine <= 0 || header.pixmapWidth < 0 || header.pixmapHeight < 0 || header.ncolors < 0) {
+            throw new IOException("invalid XWD header: " + header);
+        }
+        return header;
+    }
+
+    public int getHeaderSize() {
+        return headerSize;
+    }
+
+    public int getPixmapFormat() {
+        return pixmapFormat;
+    }
+
+    public int getPixmapDepth() {
+        return pixmapDepth;
+    }
+
+    public int getWidth() {
+        return pixmapWidth;
+    }
+
+    public int getHeight() {
+        return pixmapHeight;
+    }
+
+    public int getXoffset() {
+        return xoffset;
+    }
+
+    /**
+     * Gets the byte order of the pixel data.
+     * @return {@link #LSB_FIRST} or {@link #MSB_FIRST}
+     */
+    public int getByteOrder() {
+        return byteOrder;
+    }
+
+    public int getBitmapUnit() {
+        return bitmapUnit;
+    }
+
+    public int getBitmapBitOrder() {
+        return bitmapBitOrder;
+    }
+
+    public int getBitmapPad() {
+        return bitmapPad;
+    }
+
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    public int getBytesPerLine() {
+        return bytesPerLine;
+    }
+
+    public int getVisualClass() {
+        return visualClass;
+    }
+
+    public int getRedMask() {
+        return redMask;
+    }
+
+    public int getGreenMask() {
+        return greenMask;
+    }
+
+    public int getBlueMask() {
+        return blueMask;
+    }
+
+    public int getBitsPerRgb() {
+        return bitsPerRgb;
+    }
+
+    public int getColormapEntries() {
+        return colormapEntries;
+    }
+
+    /**
+     * Gets the number of colormap entries that follow the header.
+     * @return the number of colors
+     */
+    public int getNumColors() {
+        return ncolors;
+    }
+
+    public int getWindowWidth() {
+        return windowWidth;
+    }
+
+    public int getWindowHeight() {
+        return windowHeight;
+    }
+
+    /**
+     * Gets the offset of the colormap from the start of the image.
+     * @return the colormap offset
+     */
+    public int getColormapOffset() {
+        return headerSize;
+    }
+
+    /**
+     * Gets the offset of the pixel data from the start of the image.
+     * @return the pixel data offset
+     */
+    public int getPixelDataOffset() {
+        return headerSize + ncolors * COLOR_SIZE;
+    }
+
+    /**
+     * Gets the length of the pixel data. For XY formats this is the length of all planes.
+     * @return the pixel data length in bytes
+     */
+    public long getPixelDataLength() {
+        long planes = pixmapFormat == Z_PIXMAP ? 1 : pixmapDepth;
+        return (long) bytesPerLine * pixmapHeight * planes;
+    }
+
+    /**
+     * Gets the byte order of the pixel data as a {@link ByteOrder}.
+     * @return the byte order
+     */
+    public ByteOrder getPixelByteOrder() {
+        return byteOrder == LSB_FIRST ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    @Override
+    public String toString() {
+        return "XwdHeader{" +
+                "headerSize=" + headerSize +
+                ", fileVersion=" + fileVersion +
+                ", pixmapFormat=" + pixmapFormat +
+                ", pixmapDepth=" + pixmapDepth +
+                ", size=" + pixmapWidth + "x" + pixmapHeight +
+                ", byteOrder=" + byteOrder +
+                ", bitsPerPixel=" + bitsPerPixel +
+                ", bytesPerLine=" + bytesPerLine +
+                ", visualClass=" + visualClass +
+                ", ncolors=" + ncolors +
+                '}';
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -47,7 +48,19 @@ public class XwdScreenshooter implements Screenshooter<XwdFileScreenshot> {
 
     @Override
     public XwdFileScreenshot capture() throws IOException, XvfbException {
+        @Nullable Object event = FlightEvents.beginCapture();
+        @Nullable XwdFileScreenshot screenshot = null;
+        try {
+            screenshot = doCapture();
+            return screenshot;
+        } finally {
+            FlightEvents.endCapture(event, getClass(), display, screenshot == null ? -1 : screenshot.asByteSource().sizeIfKnown().or(-1L), screenshot != null);
+        }
+    }
+
+    private XwdFileScreenshot doCapture() throws IOException, XvfbException {
         File xwdFile = File.createTempFile("screenshot", ".xwd", outputDir);
+        long launchNanos = System.nanoTime();
         ProcessMonitor<String, String> xwdMonitor = Subprocess.running(PROG_XWD)
                 .args("-display", display, "-root", "-silent", "-out", xwdFile.getAbsolutePath())
                 .build()
@@ -56,7 +69,7 @@ public class XwdScreenshooter implements Screenshooter<XwdFileScreenshot> {
                 .launch();
         ProcessResult<String, String> xwdResult;
         try {
-            xwdResult = xwdMonitor.await();
+            xwdResult = HelperMetrics.await(PROG_XWD, display, launchNanos, xwdMonitor);
         } catch (InterruptedException e) {
             log.error("interrupted while waiting for " + PROG_XWD, e);
             ProcessKilling.termOrKill(xwdMonitor.destructor(), 100, TimeUnit.MILLISECONDS);
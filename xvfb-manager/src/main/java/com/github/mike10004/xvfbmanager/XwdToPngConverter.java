@@ -0,0 +1,136 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CountingOutputStream;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converter of XWD screenshots to PNG that decodes the image in-process with
+ * an {@link XwdDecoder}. Unlike {@link XwdFileToPngConverter}, this needs no
+ * external program and writes no intermediate files. Screenshots in a format
+ * the decoder does not support cause an {@link XwdDecoder.UnsupportedXwdFormatException};
+ * use {@link XwdFileToPngConverter} for those.
+ *
+ * <p>By default, rows are streamed from the decoder into a {@link PngEncoder}, so the
+ * decoded image is never held in memory. To avoid holding the encoded image
+ * in memory as well, use {@link #convert(Screenshot, OutputStream)} or
+ * {@link #convert(Screenshot, ByteSink)}.</p>
+ *
+ * <p>Constructed with a {@link ParallelPngEncoder}, or any other {@link ImageEncoder},
+ * instances pass the pixels to that encoder instead. The parallel encoder decodes
+ * the whole image and compresses stripes of it in parallel, which is faster
+ * for large screens on machines with several cores.</p>
+ */
+public class XwdToPngConverter implements ScreenshotConverter<Screenshot, ImageioReadableScreenshot> {
+
+    private final XwdDecoder decoder;
+    private final ImageEncoder encoder;
+
+    public XwdToPngConverter() {
+        this(new XwdDecoder(), new PngEncoder());
+    }
+
+    public XwdToPngConverter(ImageEncoder encoder) {
+        this(new XwdDecoder(), encoder);
+    }
+
+    public XwdToPngConverter(XwdDecoder decoder, ImageEncoder encoder) {
+        this.decoder = checkNotNull(decoder);
+        this.encoder = checkNotNull(encoder);
+    }
+
+    @Override
+    public ImageioReadableScreenshot convert(Screenshot source) throws IOException, XvfbException {
+        ByteBuffer xwd = toBuffer(source);
+        XwdHeader header = XwdHeader.parse(xwd);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(PngEncoder.estimateEncodedSize(header.getPixelDataLength()));
+        convert(xwd, out);
+        return new ImageioReadableScreenshot(ByteSource.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Converts a screenshot, writing the PNG to a stream.
+     * @param source the screenshot in XWD format
+     * @param out the output stream; not closed
+     * @throws IOException if the screenshot cannot be decoded or on I/O error
+     */
+    public void convert(Screenshot source, OutputStream out) throws IOException {
+        convert(toBuffer(source), out);
+    }
+
+    /**
+     * Converts a screenshot, writing the PNG to a sink.
+     * @param source the screenshot in XWD format
+     * @param sink the byte sink
+     * @throws IOException if the screenshot cannot be decoded or on I/O error
+     */
+    public void convert(Screenshot source, ByteSink sink) throws IOException {
+        ByteBuffer xwd = toBuffer(source);
+        try (OutputStream out = sink.openBufferedStream()) {
+            convert(xwd, out);
+        }
+    }
+
+    private void convert(ByteBuffer xwd, OutputStream out) throws IOException {
+        @Nullable Object event = FlightEvents.beginConvert();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        boolean success = false;
+        try {
+            encoder.encode(new XwdPixelSource(decoder, xwd, XwdHeader.parse(xwd)), counter);
+            success = true;
+        } finally {
+            FlightEvents.endConvert(event, getClass(), xwd.remaining(), success ? counter.getCount() : -1, success);
+        }
+    }
+
+    /**
+     * Source of the pixels of an XWD image, decoded on demand.
+     */
+    private static final class XwdPixelSource implements ImageEncoder.PixelSource {
+
+        private final XwdDecoder decoder;
+        private final ByteBuffer xwd;
+        private final XwdHeader header;
+
+        public XwdPixelSource(XwdDecoder decoder, ByteBuffer xwd, XwdHeader header) {
+            this.decoder = decoder;
+            this.xwd = xwd;
+            this.header = header;
+        }
+
+        @Override
+        public int getWidth() {
+            return header.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return header.getHeight();
+        }
+
+        @Override
+        public void readRows(XwdDecoder.RowHandler handler) throws IOException {
+            decoder.decodeRows(xwd, handler);
+        }
+
+        @Override
+        public int[] readPixels() throws IOException {
+            return decoder.decodePixels(xwd, null);
+        }
+    }
+
+    private static ByteBuffer toBuffer(Screenshot source) throws IOException {
+        if (source instanceof XwdBufferScreenshot) {
+            return ((XwdBufferScreenshot) source).getBuffer().duplicate();
+        }
+        return ByteBuffer.wrap(source.asByteSource().read());
+    }
+}
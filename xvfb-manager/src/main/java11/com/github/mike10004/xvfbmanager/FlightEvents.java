@@ -0,0 +1,175 @@
+package com.github.mike10004.xvfbmanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.annotation.Nullable;
+
+/**
+ * Emitter of Java Flight Recorder events. This version is used on Java 11 and later;
+ * see the Java 8 version in {@code src/main/java} for the contract. Events are
+ * in the "Xvfb Manager" category, so they can be enabled in a recording settings
+ * file by name, e.g. {@code com.github.mike10004.xvfbmanager.Start}.
+ */
+final class FlightEvents {
+
+    private static final String CATEGORY = "Xvfb Manager";
+
+    private FlightEvents() {}
+
+    @Nullable
+    private static <E extends Event> E begin(E event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Nullable
+    static Object beginStart() {
+        return begin(new StartEvent());
+    }
+
+    static void endStart(@Nullable Object token, @Nullable String display, boolean success) {
+        if (token instanceof StartEvent) {
+            StartEvent event = (StartEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.display = display;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    @Nullable
+    static Object beginPoll() {
+        return begin(new PollEvent());
+    }
+
+    static void endPoll(@Nullable Object token, Class<?> pollerClass, int attempts, String outcome) {
+        if (token instanceof PollEvent) {
+            PollEvent event = (PollEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.poller = pollerClass;
+                event.attempts = attempts;
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    @Nullable
+    static Object beginCapture() {
+        return begin(new CaptureEvent());
+    }
+
+    static void endCapture(@Nullable Object token, Class<?> screenshooterClass, @Nullable String display, long bytes, boolean success) {
+        if (token instanceof CaptureEvent) {
+            CaptureEvent event = (CaptureEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.screenshooter = screenshooterClass;
+                event.display = display;
+                event.bytes = bytes;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    @Nullable
+    static Object beginConvert() {
+        return begin(new ConvertEvent());
+    }
+
+    static void endConvert(@Nullable Object token, Class<?> converterClass, long inputBytes, long outputBytes, boolean success) {
+        if (token instanceof ConvertEvent) {
+            ConvertEvent event = (ConvertEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.converter = converterClass;
+                event.inputBytes = inputBytes;
+                event.outputBytes = outputBytes;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("com.github.mike10004.xvfbmanager.Start")
+    @Label("Xvfb Start")
+    @Category(CATEGORY)
+    @Description("Launch of an Xvfb process and resolution of its display")
+    static class StartEvent extends Event {
+
+        @Label("Display")
+        String display;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.github.mike10004.xvfbmanager.Poll")
+    @Label("Poll")
+    @Category(CATEGORY)
+    @Description("Polling for a condition, such as display readiness")
+    static class PollEvent extends Event {
+
+        @Label("Poller Class")
+        Class<?> poller;
+
+        @Label("Attempts")
+        int attempts;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("com.github.mike10004.xvfbmanager.Capture")
+    @Label("Screenshot Capture")
+    @Category(CATEGORY)
+    @Description("Capture of a screenshot")
+    static class CaptureEvent extends Event {
+
+        @Label("Screenshooter Class")
+        Class<?> screenshooter;
+
+        @Label("Display")
+        String display;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.github.mike10004.xvfbmanager.Convert")
+    @Label("Screenshot Conversion")
+    @Category(CATEGORY)
+    @Description("Conversion of a screenshot to another format")
+    static class ConvertEvent extends Event {
+
+        @Label("Converter Class")
+        Class<?> converter;
+
+        @Label("Input Bytes")
+        @DataAmount
+        long inputBytes;
+
+        @Label("Output Bytes")
+        @DataAmount
+        long outputBytes;
+
+        @Label("Success")
+        boolean success;
+    }
+}
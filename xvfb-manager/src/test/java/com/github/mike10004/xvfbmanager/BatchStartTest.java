@@ -0,0 +1,176 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.DefaultXvfbController.XLockFileChecker;
+import com.google.common.base.Suppliers;
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import io.github.mike10004.subprocess.ProcessMonitor;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchStartTest {
+
+    @Test
+    public void startAll_capsConcurrentReadinessChecks() throws Exception {
+        int count = 10, maxConcurrent = 3;
+        ReadinessWaits waits = new ReadinessWaits(Collections.emptySet());
+        StubManager manager = new StubManager(waits::newController);
+        BatchStart batch = manager.startAll(count, maxConcurrent);
+        assertEquals("readiness waits in flight", maxConcurrent, waits.inFlight.get());
+        for (int i = 0; i < count; i++) {
+            assertTrue("in flight <= max", waits.inFlight.get() <= maxConcurrent);
+            waits.completeNext();
+        }
+        BatchStart.Summary summary = batch.summary().get(5, TimeUnit.SECONDS);
+        assertEquals("ready", count, summary.getReady().size());
+        assertTrue("all ready", summary.isAllReady());
+        assertEquals("max in flight", maxConcurrent, waits.maxInFlight);
+    }
+
+    /**
+     * Starts displays whose readiness checks block until the configured number of checks
+     * are executing at once. This exceeds the number of threads of the shared scheduler,
+     * so the checks must be executed on the blocking executor to be admitted concurrently.
+     */
+    @Test(timeout = 30000)
+    public void startAll_reachesConfiguredParallelism() throws Exception {
+        int count = 12, maxConcurrent = 8;
+        CountDownLatch allChecking = new CountDownLatch(maxConcurrent);
+        AtomicInteger checking = new AtomicInteger();
+        AtomicInteger maxChecking = new AtomicInteger();
+        XvfbManager.DisplayReadinessChecker blockingChecker = display -> {
+            maxChecking.accumulateAndGet(checking.incrementAndGet(), Math::max);
+            try {
+                allChecking.countDown();
+                return allChecking.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                checking.decrementAndGet();
+            }
+        };
+        StubManager manager = new StubManager(index -> newDefaultController(index, blockingChecker));
+        BatchStart.Summary summary = manager.startAll(count, maxConcurrent).summary().get(20, TimeUnit.SECONDS);
+        assertTrue("all ready: " + summary.getFailures(), summary.isAllReady());
+        assertEquals("max concurrent readiness checks", maxConcurrent, maxChecking.get());
+    }
+
+    @Test
+    public void startAll_summarizesFailures() throws Exception {
+        ReadinessWaits waits = new ReadinessWaits(Collections.singleton(1));
+        StubManager manager = new StubManager(waits::newController);
+        BatchStart batch = manager.startAll(3, 3);
+        for (int i = 0; i < 3; i++) {
+            waits.completeNext();
+        }
+        BatchStart.Summary summary = batch.summary().get(5, TimeUnit.SECONDS);
+        assertEquals("ready", 2, summary.getReady().size());
+        assertEquals("failures", 1, summary.getFailures().size());
+        assertTrue("failure type", summary.getFailures().get(0) instanceof XvfbException);
+        assertFalse("all ready", summary.isAllReady());
+        assertTrue("failed display stopped", ((FakeXvfbController) manager.controllers.get(1)).stopped.get());
+        assertTrue("controller future failed", batch.getControllers().get(1).isCompletedExceptionally());
+    }
+
+    @Test
+    public void admissionGate_queuesExcessTasks() throws Exception {
+        AdmissionGate gate = new AdmissionGate(1);
+        CompletableFuture<String> first = new CompletableFuture<>(), second = new CompletableFuture<>();
+        CompletableFuture<String> firstResult = gate.submit(() -> first);
+        CompletableFuture<String> secondResult = gate.submit(() -> second);
+        assertEquals("in flight", 1, gate.getInFlightCount());
+        assertEquals("waiting", 1, gate.getWaitingCount());
+        first.complete("a");
+        assertEquals("first", "a", firstResult.get());
+        assertEquals("waiting after first", 0, gate.getWaitingCount());
+        second.complete("b");
+        assertEquals("second", "b", secondResult.get());
+        assertEquals("in flight after all", 0, gate.getInFlightCount());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static DefaultXvfbController newDefaultController(int index, XvfbManager.DisplayReadinessChecker readinessChecker) {
+        ProcessMonitor<?, ?> monitor = EasyMock.createMock(ProcessMonitor.class);
+        EasyMock.expect((Future) monitor.future()).andReturn(new CompletableFuture<>()).anyTimes();
+        EasyMock.replay(monitor);
+        return new DefaultXvfbController(monitor, ":" + (100 + index), readinessChecker,
+                EasyMock.createMock(Screenshooter.class),
+                EasyMock.createMock(Sleeper.class),
+                EasyMock.createMock(XLockFileChecker.class));
+    }
+
+    private static class StubManager extends XvfbManager {
+
+        private final IntFunction<XvfbController> controllerFactory;
+        public final List<XvfbController> controllers = new ArrayList<>();
+
+        public StubManager(IntFunction<XvfbController> controllerFactory) {
+            super(Suppliers.ofInstance(null), XvfbConfig.getDefault(), new BasicProcessTracker());
+            this.controllerFactory = controllerFactory;
+        }
+
+        @Override
+        public synchronized CompletableFuture<XvfbController> startAsync() {
+            XvfbController controller = controllerFactory.apply(controllers.size());
+            controllers.add(controller);
+            return CompletableFuture.completedFuture(controller);
+        }
+    }
+
+    /**
+     * Readiness waits of fake controllers that are completed on demand, in order.
+     */
+    private static class ReadinessWaits {
+
+        private final Set<Integer> failingIndexes;
+        private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        private final List<Boolean> failing = new ArrayList<>();
+        public final AtomicInteger inFlight = new AtomicInteger();
+        public volatile int maxInFlight;
+
+        public ReadinessWaits(Set<Integer> failingIndexes) {
+            this.failingIndexes = failingIndexes;
+        }
+
+        public XvfbController newController(int index) {
+            return new FakeXvfbController(100 + index, () -> started(failingIndexes.contains(index)));
+        }
+
+        private synchronized CompletableFuture<Void> started(boolean fails) {
+            CompletableFuture<Void> readiness = new CompletableFuture<>();
+            pending.add(readiness);
+            failing.add(fails);
+            maxInFlight = Math.max(maxInFlight, inFlight.incrementAndGet());
+            return readiness;
+        }
+
+        public void completeNext() {
+            CompletableFuture<Void> readiness;
+            boolean fails;
+            synchronized (this) {
+                readiness = pending.remove(0);
+                fails = failing.remove(0);
+            }
+            inFlight.decrementAndGet();
+            if (fails) {
+                readiness.completeExceptionally(new XvfbException("display never became ready"));
+            } else {
+                readiness.complete(null);
+            }
+        }
+    }
+}
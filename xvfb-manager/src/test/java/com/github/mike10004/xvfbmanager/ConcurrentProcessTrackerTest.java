@@ -0,0 +1,92 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentProcessTrackerTest {
+
+    private final List<Process> launched = new ArrayList<>();
+
+    @After
+    public void killLaunched() {
+        launched.forEach(Process::destroyForcibly);
+    }
+
+    private Process launch(String script) throws IOException {
+        Process process = new ProcessBuilder("sh", "-c", script).start();
+        launched.add(process);
+        return process;
+    }
+
+    @Test
+    public void add_shutdownHookRegisteredOnce() throws Exception {
+        AtomicInteger registrations = new AtomicInteger();
+        ConcurrentProcessTracker tracker = new ConcurrentProcessTracker(100, hook -> registrations.incrementAndGet());
+        assertFalse("hook added before first process", tracker.isShutdownHookAdded());
+        int numThreads = 8, numPerThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    List<Process> processes = new ArrayList<>();
+                    for (int i = 0; i < numPerThread; i++) {
+                        Process process = new FakeProcess();
+                        processes.add(process);
+                        tracker.add(process);
+                    }
+                    processes.forEach(tracker::remove);
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("registrations", 1, registrations.get());
+        assertEquals("active", 0, tracker.activeCount());
+    }
+
+    @Test
+    public void destroyAll_globalDeadline() throws Exception {
+        ConcurrentProcessTracker tracker = new ConcurrentProcessTracker(100, hook -> {});
+        int numProcesses = 8;
+        for (int i = 0; i < numProcesses; i++) {
+            // an ignored signal disposition is inherited across exec, so sleep ignores SIGTERM
+            tracker.add(launch("trap '' TERM; exec sleep 30"));
+        }
+        long timeoutMs = 500;
+        long start = System.nanoTime();
+        List<Process> undestroyed = tracker.destroyAll(timeoutMs, TimeUnit.MILLISECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("undestroyed", 0, undestroyed.size());
+        assertEquals("active", 0, tracker.activeCount());
+        assertTrue("elapsed " + elapsedMs + " not bounded by one timeout per phase", elapsedMs < timeoutMs * 4);
+        for (Process process : launched) {
+            assertFalse("alive", process.isAlive());
+        }
+    }
+
+    @Test
+    public void destroyAll_terminatesPromptly() throws Exception {
+        ConcurrentProcessTracker tracker = new ConcurrentProcessTracker(100, hook -> {});
+        Process process = launch("exec sleep 30");
+        tracker.add(process);
+        List<Process> undestroyed = tracker.destroyAll(5, TimeUnit.SECONDS);
+        assertEquals("undestroyed", 0, undestroyed.size());
+        assertFalse("alive", process.isAlive());
+        assertEquals("exit value", 128 + 15, process.exitValue());
+    }
+}
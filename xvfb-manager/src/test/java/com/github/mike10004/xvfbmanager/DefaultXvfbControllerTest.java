@@ -27,8 +27,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class DefaultXvfbControllerTest {
 
@@ -95,6 +101,16 @@ public class DefaultXvfbControllerTest {
         testXwininfoParser_parse(new XwininfoXwindowParser(), stdout, 60);
     }
 
+    @Test
+    public void getTopLevelWindowIds() throws Exception {
+        String stdout = Resources.toString(getClass().getResource("/xwininfo-output.txt"), StandardCharsets.UTF_8);
+        TreeNode<XWindow> root = new XwininfoXwindowParser().parse(CharSource.wrap(stdout));
+        List<String> ids = DefaultXvfbController.getTopLevelWindowIds(root);
+        assertEquals("num top-level windows", 60, ids.size());
+        assertEquals("first", "0xe001a7", ids.get(0));
+        assertEquals("second", "0x1c01ff1", ids.get(1));
+    }
+
     private static boolean verbose = Boolean.parseBoolean(System.getProperty("verbose", "false"));
 
     private static abstract class VerboseParser<E> extends XwininfoParser<E> {
@@ -189,4 +205,100 @@ public class DefaultXvfbControllerTest {
         assertEquals(ImmutableMap.of(XvfbController.ENV_DISPLAY, ":123"), env);
     }
 
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void waitUntilReadyAsync() throws Exception {
+        ProcessMonitor<?, ?> monitor = EasyMock.createMock(ProcessMonitor.class);
+        EasyMock.expect((Future) monitor.future()).andReturn(new CompletableFuture<>()).anyTimes();
+        EasyMock.replay(monitor);
+        AtomicInteger checks = new AtomicInteger();
+        DisplayReadinessChecker readinessChecker = display -> checks.incrementAndGet() >= 3;
+        DefaultXvfbController ctrl = new DefaultXvfbController(monitor, ":123", readinessChecker,
+                EasyMock.createMock(Screenshooter.class),
+                EasyMock.createMock(Sleeper.class),
+                EasyMock.createMock(XLockFileChecker.class));
+        ctrl.waitUntilReadyAsync(1, 10).get(5, TimeUnit.SECONDS);
+        assertEquals("checks", 3, checks.get());
+        StartupTimings timings = ctrl.getStartupTimings().orElseThrow(AssertionError::new);
+        assertTrue("ready recorded", timings.getElapsed(StartupTimings.Phase.READY).isPresent());
+        assertTrue("readiness poll duration recorded", timings.getReadinessPollDuration().isPresent());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected = XvfbException.class)
+    public void waitUntilReadyAsync_neverReady() throws Throwable {
+        ProcessMonitor<?, ?> monitor = EasyMock.createMock(ProcessMonitor.class);
+        EasyMock.expect((Future) monitor.future()).andReturn(new CompletableFuture<>()).anyTimes();
+        EasyMock.replay(monitor);
+        DefaultXvfbController ctrl = new DefaultXvfbController(monitor, ":123", display -> false,
+                EasyMock.createMock(Screenshooter.class),
+                EasyMock.createMock(Sleeper.class),
+                EasyMock.createMock(XLockFileChecker.class));
+        try {
+            ctrl.waitUntilReadyAsync(1, 3).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Completes the display number signal between the first and second polls
+     * and checks that readiness is reported before the second poll would be due.
+     */
+    @Test
+    public void waitUntilReadyAsync_displayNumberSignal() throws Exception {
+        CompletableFuture<Integer> signal = new CompletableFuture<>();
+        DefaultXvfbController ctrl = newSignaledController(signal);
+        long start = System.nanoTime();
+        CompletableFuture<Void> ready = ctrl.waitUntilReadyAsync(DefaultXvfbController.DEFAULT_POLL_INTERVAL_MS, DefaultXvfbController.DEFAULT_MAX_NUM_POLLS);
+        completeLater(signal, 123, 50);
+        ready.get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("ready after " + elapsedMs + " ms", elapsedMs < DefaultXvfbController.DEFAULT_POLL_INTERVAL_MS);
+        assertTrue("readiness wait duration recorded", ctrl.getStartupTimings().orElseThrow(AssertionError::new).getReadinessPollDuration().isPresent());
+    }
+
+    @Test
+    public void waitUntilReady_displayNumberSignal() throws Exception {
+        CompletableFuture<Integer> signal = new CompletableFuture<>();
+        DefaultXvfbController ctrl = newSignaledController(signal);
+        long start = System.nanoTime();
+        completeLater(signal, 123, 50);
+        ctrl.waitUntilReady(DefaultXvfbController.DEFAULT_POLL_INTERVAL_MS, DefaultXvfbController.DEFAULT_MAX_NUM_POLLS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("ready after " + elapsedMs + " ms", elapsedMs < DefaultXvfbController.DEFAULT_POLL_INTERVAL_MS);
+    }
+
+    @Test(expected = XvfbException.class)
+    public void waitUntilReadyAsync_displayNumberSignal_wrongNumber() throws Throwable {
+        CompletableFuture<Integer> signal = new CompletableFuture<>();
+        signal.complete(124);
+        try {
+            newSignaledController(signal).waitUntilReadyAsync(1, 3).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test(expected = XvfbException.class)
+    public void waitUntilReady_displayNumberSignal_timeout() throws Exception {
+        newSignaledController(new CompletableFuture<>()).waitUntilReady(1, 3);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static DefaultXvfbController newSignaledController(CompletableFuture<Integer> signal) {
+        ProcessMonitor<?, ?> monitor = EasyMock.createMock(ProcessMonitor.class);
+        EasyMock.expect((Future) monitor.future()).andReturn(new CompletableFuture<>()).anyTimes();
+        EasyMock.replay(monitor);
+        return new DefaultXvfbController(monitor, ":123", new DisplayfdReadinessChecker(signal, () -> true, null),
+                EasyMock.createMock(Screenshooter.class),
+                EasyMock.createMock(Sleeper.class),
+                EasyMock.createMock(XLockFileChecker.class),
+                signal);
+    }
+
+    private static void completeLater(CompletableFuture<Integer> signal, int displayNumber, long delayMs) {
+        Scheduling.sharedScheduler().schedule(() -> signal.complete(displayNumber), delayMs, TimeUnit.MILLISECONDS);
+    }
+}
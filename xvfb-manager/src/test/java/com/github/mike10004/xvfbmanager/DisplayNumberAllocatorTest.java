@@ -0,0 +1,116 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.DisplayNumberAllocator.DisplayNumbersExhaustedException;
+import com.github.mike10004.xvfbmanager.DisplayNumberAllocator.Reservation;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DisplayNumberAllocatorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path registryDir;
+    private XLockFileUtility lockFileUtility;
+
+    @Before
+    public void setUp() throws Exception {
+        registryDir = tmp.newFolder().toPath();
+        File lockDir = tmp.newFolder();
+        lockFileUtility = new XLockFileUtility(name -> "TMPDIR".equals(name) ? lockDir.getAbsolutePath() : null);
+    }
+
+    private DisplayNumberAllocator newAllocator(int numBlocks) {
+        return new DisplayNumberAllocator(registryDir, 200, 4, numBlocks, lockFileUtility);
+    }
+
+    @Test
+    public void reserve_contiguous() throws Exception {
+        try (DisplayNumberAllocator allocator = newAllocator(2)) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals("reservation " + i, 200 + i, allocator.reserve().getDisplayNumber());
+            }
+        }
+    }
+
+    @Test
+    public void reserve_allocatorsGetDisjointBlocks() throws Exception {
+        try (DisplayNumberAllocator first = newAllocator(4);
+             DisplayNumberAllocator second = newAllocator(4)) {
+            assertEquals(200, first.reserve().getDisplayNumber());
+            assertEquals(204, second.reserve().getDisplayNumber());
+            assertEquals(201, first.reserve().getDisplayNumber());
+        }
+    }
+
+    @Test
+    public void reserve_blockReleasedOnClose() throws Exception {
+        try (DisplayNumberAllocator first = newAllocator(1)) {
+            assertEquals(200, first.reserve().getDisplayNumber());
+        }
+        try (DisplayNumberAllocator second = newAllocator(1)) {
+            assertEquals(200, second.reserve().getDisplayNumber());
+        }
+    }
+
+    @Test
+    public void reserve_reuseReleasedNumber() throws Exception {
+        try (DisplayNumberAllocator allocator = newAllocator(1)) {
+            Reservation reservation = allocator.reserve();
+            assertEquals(201, allocator.reserve().getDisplayNumber());
+            reservation.close();
+            reservation.close();
+            assertEquals(200, allocator.reserve().getDisplayNumber());
+            assertEquals(202, allocator.reserve().getDisplayNumber());
+        }
+    }
+
+    @Test(expected = DisplayNumbersExhaustedException.class)
+    public void reserve_exhausted() throws Exception {
+        try (DisplayNumberAllocator allocator = newAllocator(1)) {
+            for (int i = 0; i < 5; i++) {
+                allocator.reserve();
+            }
+        }
+    }
+
+    @Test
+    public void reserve_skipsLiveLockFile() throws Exception {
+        Assume.assumeTrue("/proc available", new File("/proc/self").exists());
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        String pid = jvmName.substring(0, jvmName.indexOf('@'));
+        writeLockFile(200, pid);
+        try (DisplayNumberAllocator allocator = newAllocator(1)) {
+            assertEquals(201, allocator.reserve().getDisplayNumber());
+        }
+    }
+
+    @Test
+    public void isDisplayInUse() throws Exception {
+        Assume.assumeTrue("/proc available", new File("/proc/self").exists());
+        DisplayNumberAllocator allocator = newAllocator(1);
+        assertFalse("absent", allocator.isDisplayInUse(210));
+        writeLockFile(211, String.valueOf(Integer.MAX_VALUE));
+        assertFalse("stale", allocator.isDisplayInUse(211));
+        writeLockFile(212, "garbage");
+        assertTrue("unparseable", allocator.isDisplayInUse(212));
+    }
+
+    private void writeLockFile(int displayNumber, String pid) throws Exception {
+        File lockFile = lockFileUtility.constructLockFilePathname(XvfbManager.toDisplayValue(displayNumber));
+        Files.write(lockFile.toPath(), String.format("%10s%n", pid).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DisplayfdReadinessCheckerTest {
+
+    @Test
+    public void checkReadiness_signaled() {
+        DisplayfdReadinessChecker checker = new DisplayfdReadinessChecker(CompletableFuture.completedFuture(99), () -> true, null);
+        assertTrue("ready", checker.checkReadiness(":99"));
+        assertFalse("other display", checker.checkReadiness(":98"));
+    }
+
+    @Test
+    public void checkReadiness_processDied() {
+        AtomicBoolean alive = new AtomicBoolean(true);
+        DisplayfdReadinessChecker checker = new DisplayfdReadinessChecker(CompletableFuture.completedFuture(99), alive::get, null);
+        assertTrue("ready", checker.checkReadiness(":99"));
+        alive.set(false);
+        assertFalse("ready after exit", checker.checkReadiness(":99"));
+    }
+
+    @Test(timeout = 1000)
+    public void checkReadiness_notSignaled() {
+        AtomicInteger fallbackChecks = new AtomicInteger();
+        CompletableFuture<Integer> signal = new CompletableFuture<>();
+        assertFalse("without fallback", new DisplayfdReadinessChecker(signal, () -> true, null).checkReadiness(":5"));
+        DisplayfdReadinessChecker checker = new DisplayfdReadinessChecker(signal, () -> true, display -> {
+            fallbackChecks.incrementAndGet();
+            return true;
+        });
+        assertTrue("with fallback", checker.checkReadiness(":5"));
+        assertEquals("fallback checks", 1, fallbackChecks.get());
+        signal.complete(5);
+        assertTrue("signaled", checker.checkReadiness(":5"));
+        assertEquals("fallback checks after signal", 1, fallbackChecks.get());
+    }
+
+    @Test
+    public void checkReadiness_signalFailed() {
+        CompletableFuture<Integer> signal = new CompletableFuture<>();
+        signal.completeExceptionally(new XvfbException("closed"));
+        assertFalse("ready", new DisplayfdReadinessChecker(signal, () -> true, null).checkReadiness(":5"));
+    }
+}
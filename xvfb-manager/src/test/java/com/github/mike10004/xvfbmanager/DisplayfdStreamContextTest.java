@@ -0,0 +1,58 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.DisplayfdStreamContext.DisplayNumberSniffingOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DisplayfdStreamContextTest {
+
+    @Test
+    public void sniff_afterOtherOutput() throws Exception {
+        String text = "_XSERVTransmkdir: Owner of /tmp/.X11-unix should be set to root\n" +
+                "123\n" +
+                "later message\n";
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (DisplayNumberSniffingOutputStream out = new DisplayNumberSniffingOutputStream(file, future)) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            out.write(bytes, 0, 67);
+            assertFalse("done before number written", future.isDone());
+            out.write(bytes, 67, bytes.length - 67);
+            assertTrue("done", future.isDone());
+        }
+        assertEquals("display number", 123, future.get().intValue());
+        assertEquals("forwarded", text, new String(file.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void sniff_byteByByte() throws Exception {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        try (DisplayNumberSniffingOutputStream out = new DisplayNumberSniffingOutputStream(new ByteArrayOutputStream(), future)) {
+            for (byte b : "x1\n0\r\n".getBytes(StandardCharsets.US_ASCII)) {
+                out.write(b);
+            }
+        }
+        assertEquals("display number", 0, future.get().intValue());
+    }
+
+    @Test(expected = XvfbException.class)
+    public void sniff_closedWithoutNumber() throws Throwable {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        try (DisplayNumberSniffingOutputStream out = new DisplayNumberSniffingOutputStream(new ByteArrayOutputStream(), future)) {
+            out.write("Fatal server error:\n99".getBytes(StandardCharsets.US_ASCII));
+        }
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+}
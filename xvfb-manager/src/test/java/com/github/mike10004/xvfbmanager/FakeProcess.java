@@ -0,0 +1,39 @@
+package com.github.mike10004.xvfbmanager;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Process that has already exited with status zero and has no streams.
+ */
+class FakeProcess extends Process {
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int waitFor() {
+        return 0;
+    }
+
+    @Override
+    public int exitValue() {
+        return 0;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
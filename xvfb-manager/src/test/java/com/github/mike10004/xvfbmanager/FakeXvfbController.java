@@ -0,0 +1,122 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.annotation.Nullable;
+import java.awt.Rectangle;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Controller that does not control a process. The display is ready as soon as
+ * readiness is awaited, unless a supplier of the asynchronous readiness wait is given,
+ * and it is alive until it is stopped or {@link #alive} is cleared.
+ */
+class FakeXvfbController implements XvfbController {
+
+    private final String display;
+    @Nullable
+    private final Supplier<CompletableFuture<Void>> readinessWait;
+    public final AtomicBoolean ready = new AtomicBoolean(false);
+    public final AtomicBoolean stopped = new AtomicBoolean(false);
+    public final AtomicBoolean alive = new AtomicBoolean(true);
+
+    public FakeXvfbController(int displayNumber) {
+        this(displayNumber, null);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param displayNumber the display number
+     * @param readinessWait supplier of the future returned by {@link #waitUntilReadyAsync()}; null means ready immediately
+     */
+    public FakeXvfbController(int displayNumber, @Nullable Supplier<CompletableFuture<Void>> readinessWait) {
+        display = ":" + displayNumber;
+        this.readinessWait = readinessWait;
+    }
+
+    @Override
+    public void waitUntilReady() {
+        ready.set(true);
+    }
+
+    @Override
+    public void waitUntilReady(long pollIntervalMs, int maxNumPolls) {
+        ready.set(true);
+    }
+
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync() {
+        if (readinessWait == null) {
+            waitUntilReady();
+            return CompletableFuture.completedFuture(null);
+        }
+        return readinessWait.get().thenRun(() -> ready.set(true));
+    }
+
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync(long pollIntervalMs, int maxNumPolls) {
+        return waitUntilReadyAsync();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive.get();
+    }
+
+    @Override
+    public void stop() {
+        stopped.set(true);
+        alive.set(false);
+    }
+
+    @Override
+    public CompletableFuture<Void> stopAsync() {
+        stop();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public String getDisplay() {
+        return display;
+    }
+
+    @Override
+    public Map<String, String> configureEnvironment(Map<String, String> environment) {
+        environment.put(ENV_DISPLAY, display);
+        return environment;
+    }
+
+    @Override
+    public Map<String, String> newEnvironment() {
+        return configureEnvironment(new HashMap<>());
+    }
+
+    @Override
+    public Screenshooter<?> getScreenshooter() throws XvfbException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<TreeNode<XWindow>> pollForWindow(Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void waitForScreenStable(Duration quietPeriod, Duration timeout, @Nullable Rectangle region) {
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    @Override
+    public String toString() {
+        return "FakeXvfbController{display=" + display + "}";
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.XwdDecoderTest.XwdBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FramebufferChangeDetectorTest {
+
+    private static final int WIDTH = 100, HEIGHT = 70, BYTES_PER_LINE = WIDTH * 3 + 4;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File framebufferFile;
+    private FramebufferReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] pixelData = new byte[BYTES_PER_LINE * HEIGHT];
+        new Random(WIDTH * HEIGHT).nextBytes(pixelData);
+        ByteBuffer xwd = new XwdBuilder(WIDTH, HEIGHT, 24, 24, BYTES_PER_LINE, XwdHeader.TRUE_COLOR)
+                .masks(0xff0000, 0xff00, 0xff)
+                .build(pixelData);
+        framebufferFile = tmp.newFile("Xvfb_screen0");
+        try (OutputStream out = new FileOutputStream(framebufferFile)) {
+            out.write(xwd.array(), 0, xwd.limit());
+        }
+        reader = FramebufferReader.open(framebufferFile);
+    }
+
+    @Test
+    public void scan_firstScanReportsEverything() throws Exception {
+        FramebufferChangeDetector detector = new FramebufferChangeDetector(reader, null, 32, 32);
+        assertEquals(Arrays.asList(
+                new Rectangle(0, 0, WIDTH, 32),
+                new Rectangle(0, 32, WIDTH, 32),
+                new Rectangle(0, 64, WIDTH, HEIGHT - 64)), detector.scan());
+        assertEquals("unchanged", Collections.emptyList(), detector.scan());
+        detector.reset();
+        assertEquals("tiles after reset", 12, detector.scan((x, y, width, height) -> {}));
+    }
+
+    @Test
+    public void scan_detectsChangedTiles() throws Exception {
+        FramebufferChangeDetector detector = new FramebufferChangeDetector(reader, null, 32, 32);
+        detector.scan();
+        writePixel(99, 69, 0x123456);
+        writePixel(33, 10, 0x654321);
+        writePixel(64, 20, 0xabcdef);
+        List<Rectangle> changed = detector.scan();
+        assertEquals(Arrays.asList(
+                new Rectangle(32, 0, 64, 32),
+                new Rectangle(96, 64, 4, 6)), changed);
+        assertEquals("unchanged", Collections.emptyList(), detector.scan());
+    }
+
+    @Test
+    public void scan_region() throws Exception {
+        Rectangle region = new Rectangle(10, 10, 20, 20);
+        FramebufferChangeDetector detector = new FramebufferChangeDetector(reader, region, 16, 16);
+        assertEquals("tiles", 4, detector.scan((x, y, width, height) -> {}));
+        writePixel(50, 50, 0x010203);
+        writePixel(9, 9, 0x010203);
+        assertEquals("outside region", Collections.emptyList(), detector.scan());
+        writePixel(29, 29, 0x010203);
+        assertEquals(Collections.singletonList(new Rectangle(26, 26, 4, 4)), detector.scan());
+    }
+
+    @Test
+    public void getRegion_clipped() throws Exception {
+        FramebufferChangeDetector detector = new FramebufferChangeDetector(reader, new Rectangle(90, -5, 50, 10), 8, 8);
+        assertEquals(new Rectangle(90, 0, 10, 5), detector.getRegion());
+    }
+
+    private void writePixel(int x, int y, int rgb) throws Exception {
+        long offset = reader.getHeader().getPixelDataOffset() + (long) y * BYTES_PER_LINE + x * 3;
+        try (RandomAccessFile file = new RandomAccessFile(framebufferFile, "rw")) {
+            file.seek(offset);
+            byte[] current = new byte[3];
+            file.readFully(current);
+            file.seek(offset);
+            file.write(new byte[]{(byte) ~current[0], (byte) (rgb >> 8), (byte) rgb});
+        }
+    }
+}
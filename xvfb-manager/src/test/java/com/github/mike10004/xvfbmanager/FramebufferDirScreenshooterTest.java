@@ -0,0 +1,82 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.common.io.ByteSources;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FramebufferDirScreenshooterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File framebufferDir;
+    private File framebufferFile;
+
+    @Before
+    public void setUp() throws Exception {
+        framebufferDir = tmp.newFolder("fbdir");
+        framebufferFile = new File(framebufferDir, "Xvfb_screen0");
+        ByteSources.gunzipping(getClass().getResource("/example.xwd.gz")).copyTo(Files.asByteSink(framebufferFile));
+    }
+
+    @Test
+    public void getFramebufferReader() throws Exception {
+        FramebufferDirScreenshooter screenshooter = new FramebufferDirScreenshooter(framebufferDir, 0, tmp.getRoot());
+        FramebufferReader reader = screenshooter.getFramebufferReader();
+        assertSame("mapped once", reader, screenshooter.getFramebufferReader());
+        XwdHeader header = reader.getHeader();
+        assertEquals("header size", 107, header.getHeaderSize());
+        assertEquals("format", XwdHeader.Z_PIXMAP, header.getPixmapFormat());
+        assertEquals("depth", 24, header.getPixmapDepth());
+        assertEquals("width", 1280, header.getWidth());
+        assertEquals("height", 1024, header.getHeight());
+        assertEquals("byte order", XwdHeader.LSB_FIRST, header.getByteOrder());
+        assertEquals("bits per pixel", 32, header.getBitsPerPixel());
+        assertEquals("bytes per line", 5120, header.getBytesPerLine());
+        assertEquals("visual class", XwdHeader.TRUE_COLOR, header.getVisualClass());
+        assertEquals("red mask", 0xff0000, header.getRedMask());
+        assertEquals("ncolors", 256, header.getNumColors());
+        assertEquals("pixel data offset", 107 + 256 * 12, header.getPixelDataOffset());
+        ByteBuffer pixels = reader.getPixels();
+        assertTrue("read-only", pixels.isReadOnly());
+        assertEquals("pixel data length", 5120 * 1024, pixels.remaining());
+        assertEquals("pixel byte order", ByteOrder.LITTLE_ENDIAN, pixels.order());
+        assertEquals("image length", framebufferFile.length(), reader.getImageLength());
+    }
+
+    @Test
+    public void getPixels_live() throws Exception {
+        FramebufferReader reader = new FramebufferDirScreenshooter(framebufferDir, 0, tmp.getRoot()).getFramebufferReader();
+        int offset = reader.getHeader().getPixelDataOffset();
+        try (RandomAccessFile file = new RandomAccessFile(framebufferFile, "rw")) {
+            file.seek(offset);
+            file.writeInt(0x11223344);
+        }
+        assertEquals("pixel written after mapping", 0x44332211, reader.getPixels().getInt(0));
+    }
+
+    @Test
+    public void captureToBuffer() throws Exception {
+        FramebufferDirScreenshooter screenshooter = new FramebufferDirScreenshooter(framebufferDir, 0, tmp.getRoot());
+        XwdBufferScreenshot first = screenshooter.captureToBuffer(null);
+        assertArrayEquals("content", Files.toByteArray(framebufferFile), first.asByteSource().read());
+        XwdBufferScreenshot second = screenshooter.captureToBuffer(first.getBuffer());
+        assertSame("buffer reused", first.getBuffer(), second.getBuffer());
+        assertEquals("length", framebufferFile.length(), second.asByteSource().size());
+        XwdBufferScreenshot third = screenshooter.captureToBuffer(ByteBuffer.allocate(16));
+        assertEquals("length after reallocation", framebufferFile.length(), third.asByteSource().size());
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.github.mike10004.xvfbmanager.PngTests.assertPixelsEqual;
+import static com.github.mike10004.xvfbmanager.PngTests.createPixels;
+import static com.github.mike10004.xvfbmanager.PngTests.encode;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPngEncoderTest {
+
+    @Test
+    public void combineAdler32() {
+        Random random = new Random(2261);
+        byte[] data = new byte[100_000];
+        random.nextBytes(data);
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        for (int split : new int[]{0, 1, 5552, 65521, 70000, data.length}) {
+            Adler32 first = new Adler32(), second = new Adler32();
+            first.update(data, 0, split);
+            second.update(data, split, data.length - split);
+            long combined = ParallelPngEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - split);
+            assertEquals("split at " + split, whole.getValue(), combined);
+        }
+    }
+
+    @Test
+    public void encode_manyStripes() throws Exception {
+        int width = 97, height = 213;
+        int[] pixels = createPixels(width, height);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (PngEncoder.Filter filter : new PngEncoder.Filter[]{PngEncoder.Filter.NONE, PngEncoder.Filter.PAETH, PngEncoder.Filter.ADAPTIVE}) {
+                for (int level : new int[]{0, 1, Deflater.DEFAULT_COMPRESSION, 9}) {
+                    ParallelPngEncoder encoder = new ParallelPngEncoder(level, filter, pool, 1000);
+                    byte[] png = encode(encoder, pixels, width, height);
+                    assertIdatStreamValid(png);
+                    assertPixelsEqual(pixels, width, height, png);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void encode_singleStripe() throws Exception {
+        int width = 31, height = 7;
+        int[] pixels = createPixels(width, height);
+        byte[] png = encode(new ParallelPngEncoder(), pixels, width, height);
+        assertIdatStreamValid(png);
+        assertPixelsEqual(pixels, width, height, png);
+    }
+
+    @Test
+    public void encode_sameFilteredDataAsSequential() throws Exception {
+        int width = 50, height = 80;
+        int[] pixels = createPixels(width, height);
+        byte[] sequential = encode(new PngEncoder(6, PngEncoder.Filter.ADAPTIVE), pixels, width, height);
+        byte[] parallel = encode(new ParallelPngEncoder(6, PngEncoder.Filter.ADAPTIVE, ForkJoinPool.commonPool(), 500), pixels, width, height);
+        assertArrayEquals("inflated IDAT data", inflateIdat(sequential), inflateIdat(parallel));
+    }
+
+    /**
+     * Inflates the concatenated IDAT chunks, which verifies the zlib checksum.
+     */
+    private static void assertIdatStreamValid(byte[] png) throws Exception {
+        assertTrue("inflated", inflateIdat(png).length > 0);
+    }
+
+    private static byte[] inflateIdat(byte[] png) throws Exception {
+        ByteBuffer in = ByteBuffer.wrap(png);
+        in.position(PngEncoder.SIGNATURE.length);
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        while (in.hasRemaining()) {
+            int length = in.getInt();
+            byte[] type = new byte[4];
+            in.get(type);
+            byte[] data = new byte[length];
+            in.get(data);
+            in.getInt(); // crc
+            if ("IDAT".equals(new String(type, StandardCharsets.US_ASCII))) {
+                zlib.write(data);
+            }
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(zlib.toByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            assertTrue("inflater stalled", n > 0 || !inflater.needsInput());
+            out.write(buffer, 0, n);
+        }
+        assertEquals("bytes after zlib stream", 0, inflater.getRemaining());
+        inflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.io.ByteSource;
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import static com.github.mike10004.xvfbmanager.PngTests.assertPixelsEqual;
+import static com.github.mike10004.xvfbmanager.PngTests.createPixels;
+import static com.github.mike10004.xvfbmanager.PngTests.encode;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PngEncoderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void encode_eachFilter() throws Exception {
+        int width = 67, height = 41;
+        int[] pixels = createPixels(width, height);
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            for (int level : new int[]{0, 1, Deflater.DEFAULT_COMPRESSION, 9}) {
+                byte[] png = encode(new PngEncoder(level, filter), pixels, width, height);
+                assertPixelsEqual(pixels, width, height, png);
+            }
+        }
+    }
+
+    @Test
+    public void encode_multipleIdatChunks() throws Exception {
+        int width = 300, height = 300;
+        int[] pixels = createPixels(width, height);
+        byte[] png = encode(new PngEncoder(0, PngEncoder.Filter.NONE), pixels, width, height);
+        assertTrue("larger than one chunk", png.length > 2 * PngEncoder.IDAT_CHUNK_SIZE);
+        assertPixelsEqual(pixels, width, height, png);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finish_missingRows() throws Exception {
+        try (PngEncoder.RowWriter writer = new PngEncoder().begin(2, 2, new ByteArrayOutputStream())) {
+            writer.writeRow(new int[2], 0);
+            writer.finish();
+        }
+    }
+
+    @Test
+    public void convertPnmToPng_streamsPixmap() throws Exception {
+        int width = 5, height = 3;
+        int[] pixels = createPixels(width, height);
+        ByteArrayOutputStream ppm = new ByteArrayOutputStream();
+        ppm.write(String.format("P6\n# comment\n%d %d\n255\n", width, height).getBytes(StandardCharsets.US_ASCII));
+        for (int p : pixels) {
+            ppm.write(p >> 16);
+            ppm.write(p >> 8);
+            ppm.write(p);
+        }
+        ImageEncoder[] encoders = {
+                new PngEncoder(1, PngEncoder.Filter.SUB),
+                new ParallelPngEncoder(1, PngEncoder.Filter.SUB, ForkJoinPool.commonPool(), 16),
+        };
+        for (ImageEncoder encoder : encoders) {
+            XwdFileToPngConverter converter = new XwdFileToPngConverter(new BasicProcessTracker(), tmp.getRoot().toPath(), encoder);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            converter.convertPnmToPng(ByteSource.wrap(ppm.toByteArray()), png);
+            assertPixelsEqual(pixels, width, height, png.toByteArray());
+        }
+    }
+
+    @Test
+    public void ppmPixelSource_unsupportedMaxval() throws Exception {
+        byte[] ppm = "P6\n2 2\n65535\n".getBytes(StandardCharsets.US_ASCII);
+        assertNull(XwdFileToPngConverter.PpmPixelSource.open(new ByteArrayInputStream(ppm)));
+    }
+}
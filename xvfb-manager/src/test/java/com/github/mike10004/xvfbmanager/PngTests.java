@@ -0,0 +1,92 @@
+package com.github.mike10004.xvfbmanager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Helpers for tests of the PNG encoders.
+ */
+class PngTests {
+
+    private PngTests() {}
+
+    public static int[] createPixels(int width, int height) {
+        Random random = new Random(width * 31 + height);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // mix of gradients, flat regions and noise, to exercise every filter
+                int rgb;
+                if (y % 3 == 0) {
+                    rgb = random.nextInt(0x1000000);
+                } else if (x < width / 2) {
+                    rgb = (x * 7 << 16) | (y * 3 << 8) | ((x + y) & 0xff);
+                } else {
+                    rgb = 0x336699;
+                }
+                pixels[y * width + x] = rgb & 0xffffff;
+            }
+        }
+        return pixels;
+    }
+
+    public static byte[] encode(ImageEncoder encoder, int[] pixels, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(new ArrayPixelSource(pixels, width, height), out);
+        return out.toByteArray();
+    }
+
+    public static void assertPixelsEqual(int[] expected, int width, int height, byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals("width", width, image.getWidth());
+        assertEquals("height", height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("pixel at " + x + "," + y, expected[y * width + x], image.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    private static final class ArrayPixelSource implements ImageEncoder.PixelSource {
+
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+
+        public ArrayPixelSource(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void readRows(XwdDecoder.RowHandler handler) throws IOException {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+                handler.row(y, row);
+            }
+        }
+
+        @Override
+        public int[] readPixels() {
+            return pixels;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollIntervalsTest {
+
+    @Test
+    public void exponential() {
+        List<Long> intervals = ImmutableList.copyOf(Iterables.limit(PollIntervals.exponential(10, 2, 100), 6));
+        assertEquals(ImmutableList.of(10L, 20L, 40L, 80L, 100L, 100L), intervals);
+    }
+
+    @Test
+    public void fastThenSlow() {
+        List<Long> intervals = ImmutableList.copyOf(Iterables.limit(PollIntervals.fastThenSlow(5, 3, 250), 5));
+        assertEquals(ImmutableList.of(5L, 5L, 5L, 250L, 250L), intervals);
+    }
+
+    @Test
+    public void decorrelatedJitter_withinBounds() {
+        Random random = new Random(12345L);
+        long base = 10, cap = 500, previous = base;
+        for (long interval : Iterables.limit(PollIntervals.decorrelatedJitter(base, cap, () -> random), 1000)) {
+            assertTrue("interval >= base: " + interval, interval >= base);
+            assertTrue("interval <= cap: " + interval, interval <= cap);
+            assertTrue("interval <= 3 * previous: " + interval, interval <= Math.max(base, previous * 3));
+            previous = interval;
+        }
+    }
+
+    @Test
+    public void iterable_restartsSequence() {
+        Iterable<Long> intervals = PollIntervals.exponential(1, 2, 8);
+        assertEquals(ImmutableList.of(1L, 2L), ImmutableList.copyOf(Iterables.limit(intervals, 2)));
+        assertEquals(ImmutableList.of(1L, 2L), ImmutableList.copyOf(Iterables.limit(intervals, 2)));
+    }
+
+    @Test
+    public void limit() {
+        assertEquals(3, Iterables.size(PollIntervals.limit(PollIntervals.regular(1), 3)));
+    }
+
+    @Test
+    public void until_deadline() {
+        FakeTicker ticker = new FakeTicker();
+        Iterator<Long> it = PollIntervals.until(PollIntervals.regular(100), Duration.ofMillis(250), ticker).iterator();
+        assertTrue(it.hasNext());
+        assertEquals(100L, it.next().longValue());
+        ticker.advanceMs(100);
+        assertEquals(100L, it.next().longValue());
+        ticker.advanceMs(100);
+        assertTrue(it.hasNext());
+        assertEquals("clipped to remaining time", 50L, it.next().longValue());
+        ticker.advanceMs(50);
+        assertTrue("final poll at deadline", it.hasNext());
+        assertEquals("interval after final poll", 1L, it.next().longValue());
+        assertFalse("deadline passed", it.hasNext());
+    }
+
+    @Test
+    public void until_zeroTimeoutAllowsOnePoll() {
+        FakeTicker ticker = new FakeTicker();
+        Iterator<Long> it = PollIntervals.until(PollIntervals.regular(100), Duration.ZERO, ticker).iterator();
+        assertTrue(it.hasNext());
+        it.next();
+        assertFalse(it.hasNext());
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong(1000000000L);
+
+        public void advanceMs(long ms) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    }
+}
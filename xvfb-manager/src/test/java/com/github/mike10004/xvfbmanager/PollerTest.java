@@ -4,15 +4,34 @@ import com.github.mike10004.xvfbmanager.Poller.PollOutcome;
 import com.github.mike10004.xvfbmanager.Poller.SimplePoller;
 import com.github.mike10004.xvfbmanager.Poller.StopReason;
 import com.google.common.base.Suppliers;
+import org.junit.After;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PollerTest {
 
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @After
+    public void shutdownScheduler() {
+        scheduler.shutdownNow();
+    }
+
     @Test
     public void poll_immediatelyTrue() throws Exception {
         testPoller(0, 0, 1000, StopReason.TIMEOUT, 0);
@@ -33,6 +52,15 @@ public class PollerTest {
         testPoller(5, 4, 1000, StopReason.TIMEOUT, 4000);
     }
 
+    @Test
+    public void poll_checksAtDeadline() throws Exception {
+        long start = System.nanoTime();
+        long timeoutMs = 100;
+        PollOutcome<Void> outcome = Poller.checking(() -> System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(timeoutMs))
+                .poll(PollIntervals.regular(30), Duration.ofMillis(timeoutMs));
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+    }
+
     @Test
     public void poll_abortFromCheck_0() throws Exception {
         poll_abortFromCheck(0);
@@ -107,6 +135,105 @@ public class PollerTest {
         assertEquals("sleep count", expectedSleeps, sleeper.getCount());
     }
 
+    @Test
+    public void pollAsync_resolved() throws Exception {
+        TestPoller poller = new TestPoller(new TestSleeper(), 3);
+        PollOutcome<Long> outcome = poller.pollAsync(1, 10, scheduler).get(5, TimeUnit.SECONDS);
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+        assertEquals("content", Long.valueOf(1L), outcome.content);
+        assertEquals("attempts", 4, outcome.getNumAttempts());
+    }
+
+    @Test
+    public void pollAsync_timeout() throws Exception {
+        TestSleeper sleeper = new TestSleeper();
+        PollOutcome<Void> outcome = new SimplePoller(sleeper, Suppliers.ofInstance(false)).pollAsync(new Poller.RegularIntervals(1, 3), scheduler).get(5, TimeUnit.SECONDS);
+        assertEquals("reason", StopReason.TIMEOUT, outcome.reason);
+        assertEquals("attempts", 3, outcome.getNumAttempts());
+        assertEquals("sleeper not used", 0, sleeper.getCount());
+    }
+
+    @Test
+    public void pollAsync_checkThrows() throws Exception {
+        CompletableFuture<PollOutcome<Void>> future = new Poller<Void>() {
+            @Override
+            protected PollAnswer<Void> check(int pollAttemptsSoFar) {
+                throw new IllegalStateException("expected");
+            }
+        }.pollAsync(new Poller.RegularIntervals(1, 3), scheduler);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue("cause", e.getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("expected exception");
+    }
+
+    @Test
+    public void pollAsync_cancel() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CompletableFuture<PollOutcome<Void>> future = new SimplePoller(() -> {
+            checks.incrementAndGet();
+            return false;
+        }).pollAsync(new Poller.RegularIntervals(10, Integer.MAX_VALUE), scheduler);
+        Thread.sleep(50);
+        future.cancel(true);
+        int checksAtCancel = checks.get();
+        Thread.sleep(100);
+        assertTrue("checks stopped after cancel", checks.get() <= checksAtCancel + 1);
+    }
+
+    @Test(timeout = 10000)
+    public void pollAsync_blockingChecksRunOnCheckExecutor() throws Exception {
+        int numPolls = 6;
+        CountDownLatch allChecking = new CountDownLatch(numPolls);
+        ExecutorService checkExecutor = Executors.newFixedThreadPool(numPolls);
+        try {
+            List<CompletableFuture<PollOutcome<Void>>> futures = new ArrayList<>(numPolls);
+            for (int i = 0; i < numPolls; i++) {
+                // each check blocks until all checks are running at once, which the two scheduler threads alone could not do
+                futures.add(new SimplePoller(() -> {
+                    allChecking.countDown();
+                    try {
+                        return allChecking.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }).pollAsync(new Poller.RegularIntervals(1, 1), scheduler, checkExecutor));
+            }
+            for (CompletableFuture<PollOutcome<Void>> future : futures) {
+                assertEquals("reason", StopReason.RESOLVED, future.get(5, TimeUnit.SECONDS).reason);
+            }
+        } finally {
+            checkExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void pollAsync_manyConcurrentPolls() throws Exception {
+        int numPolls = 2000;
+        List<CompletableFuture<PollOutcome<Long>>> futures = new ArrayList<>(numPolls);
+        for (int i = 0; i < numPolls; i++) {
+            futures.add(new TestPoller(new TestSleeper(), i % 5).pollAsync(2, 10, scheduler));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        for (int i = 0; i < numPolls; i++) {
+            PollOutcome<Long> outcome = futures.get(i).get();
+            assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+            assertEquals("attempts", i % 5 + 1, outcome.getNumAttempts());
+        }
+    }
+
+    @Test
+    public void pollAsync_deadline() throws Exception {
+        PollOutcome<Void> outcome = new SimplePoller(Suppliers.ofInstance(false))
+                .pollAsync(PollIntervals.regular(5), Duration.ofMillis(100), scheduler)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals("reason", StopReason.TIMEOUT, outcome.reason);
+        assertTrue("attempts > 1", outcome.getNumAttempts() > 1);
+    }
+
     private void testPoller(int returnTrueAfterNAttempts, int maxPollAttempts, long interval, StopReason expectedFinishReason, long expectedDuration) throws InterruptedException {
         TestSleeper sleeper = new TestSleeper();
         TestPoller poller = new TestPoller(sleeper, returnTrueAfterNAttempts);
@@ -0,0 +1,148 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import io.github.mike10004.subprocess.ProcessMonitor;
+import io.github.mike10004.subprocess.ProcessResult;
+import io.github.mike10004.subprocess.Subprocess;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessExitReactorTest {
+
+    @Test
+    public void addCallback_processExits() throws Exception {
+        ProcessExitReactor reactor = new ProcessExitReactor(ProcessExitReactor.DEFAULT_SWEEP_INTERVAL_MS, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ProcessMonitor<String, String> monitor = Subprocess.running("sh")
+                .args("-c", "echo hello && exit 3")
+                .build()
+                .launcher(new BasicProcessTracker())
+                .outputStrings(StandardCharsets.US_ASCII)
+                .launch();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<ProcessResult<String, String>> resultRef = new AtomicReference<>();
+        reactor.addCallback(monitor, new FutureCallback<ProcessResult<String, String>>() {
+            @Override
+            public void onSuccess(@Nullable ProcessResult<String, String> result) {
+                resultRef.set(result);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                latch.countDown();
+            }
+        }, MoreExecutors.directExecutor());
+        assertTrue("callback invoked", latch.await(5, TimeUnit.SECONDS));
+        ProcessResult<String, String> result = resultRef.get();
+        assertEquals("exit code", 3, result.exitCode());
+        assertEquals("stdout", "hello", result.content().stdout().trim());
+        assertEquals("watch count", 0, reactor.getWatchCount());
+    }
+
+    @Test
+    public void addCallback_noSweepsWhileProcessRuns() throws Exception {
+        Process process = new ProcessBuilder("sh", "-c", "exec sleep 30").start();
+        try {
+            ProcessExitReactor reactor = new ProcessExitReactor(10, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+            CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            reactor.addCallback(exitCode, process, new FutureCallback<Integer>() {
+                @Override
+                public void onSuccess(@Nullable Integer result) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    latch.countDown();
+                }
+            }, MoreExecutors.directExecutor());
+            Thread.sleep(200);
+            Assume.assumeTrue("Process.onExit() is available", hasOnExit());
+            assertEquals("sweeps while process runs", 0, reactor.getSweepCount());
+            process.destroy();
+            process.waitFor();
+            exitCode.complete(process.exitValue());
+            assertTrue("callback invoked", latch.await(5, TimeUnit.SECONDS));
+            assertEquals("watch count", 0, reactor.getWatchCount());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    private static boolean hasOnExit() {
+        try {
+            Process.class.getMethod("onExit");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void addCallback_oneThreadForManyFutures() throws Exception {
+        AtomicInteger threadsCreated = new AtomicInteger();
+        ProcessExitReactor reactor = new ProcessExitReactor(10, runnable -> {
+            threadsCreated.incrementAndGet();
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int numFutures = 100;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        AtomicInteger successes = new AtomicInteger(), failures = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(numFutures);
+        for (int i = 0; i < numFutures; i++) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            futures.add(future);
+            reactor.addCallback(future, null, new FutureCallback<Integer>() {
+                @Override
+                public void onSuccess(@Nullable Integer result) {
+                    successes.incrementAndGet();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failures.incrementAndGet();
+                    latch.countDown();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        assertEquals("watch count", numFutures, reactor.getWatchCount());
+        for (int i = 0; i < numFutures; i++) {
+            if (i % 2 == 0) {
+                futures.get(i).complete(i);
+            } else {
+                futures.get(i).completeExceptionally(new IllegalStateException("expected"));
+            }
+        }
+        assertTrue("all callbacks invoked", latch.await(5, TimeUnit.SECONDS));
+        assertEquals("successes", numFutures / 2, successes.get());
+        assertEquals("failures", numFutures / 2, failures.get());
+        assertEquals("threads created", 1, threadsCreated.get());
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.mike10004.xvfbmanager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessTeardownTest {
+
+    private final List<Process> launched = new ArrayList<>();
+
+    @After
+    public void killLaunched() {
+        launched.forEach(Process::destroyForcibly);
+    }
+
+    private Process launch(String script) throws IOException {
+        Process process = new ProcessBuilder("sh", "-c", script).start();
+        launched.add(process);
+        return process;
+    }
+
+    @Test
+    public void terminateAll_reportsForceKilledPids() throws Exception {
+        List<Process> stubborn = new ArrayList<>(), compliant = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            // an ignored signal disposition is inherited across exec, so sleep ignores SIGTERM
+            stubborn.add(launch("trap '' TERM; exec sleep 30"));
+            compliant.add(launch("exec sleep 30"));
+        }
+        Thread.sleep(250); // let the shell install the trap before exec
+        List<Process> all = new ArrayList<>(stubborn);
+        all.addAll(compliant);
+        long timeoutMs = 500;
+        long start = System.nanoTime();
+        ProcessTeardown.Report report = ProcessTeardown.terminateAll(all, timeoutMs, TimeUnit.MILLISECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("undestroyed", 0, report.getUndestroyed().size());
+        assertEquals("force-killed", stubborn, report.getForceKilled());
+        List<Long> expectedPids = stubborn.stream().map(ProcessTeardown::pid).collect(Collectors.toList());
+        assertEquals("force-killed pids", expectedPids, report.getForceKilledPids());
+        assertTrue("elapsed " + elapsedMs + " bounded by global deadlines", elapsedMs < timeoutMs * 3);
+        all.forEach(p -> assertFalse("alive", p.isAlive()));
+    }
+
+    @Test
+    public void terminateAll_noneForceKilled() throws Exception {
+        Process process = launch("exec sleep 30");
+        ProcessTeardown.Report report = ProcessTeardown.terminateAll(Collections.singleton(process), 5, TimeUnit.SECONDS);
+        assertEquals("force-killed", 0, report.getForceKilled().size());
+        assertEquals("processes", 1, report.getProcesses().size());
+        assertNotNull("pid", ProcessTeardown.pid(process));
+    }
+}
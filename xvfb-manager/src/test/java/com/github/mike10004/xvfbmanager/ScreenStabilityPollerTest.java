@@ -0,0 +1,162 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.Poller.PollOutcome;
+import com.github.mike10004.xvfbmanager.Poller.StopReason;
+import com.github.mike10004.xvfbmanager.XwdDecoderTest.XwdBuilder;
+import com.google.common.base.Ticker;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScreenStabilityPollerTest {
+
+    private static final int WIDTH = 40, HEIGHT = 30, BYTES_PER_LINE = WIDTH * 4;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File framebufferFile;
+    private FramebufferReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        ByteBuffer xwd = new XwdBuilder(WIDTH, HEIGHT, 24, 32, BYTES_PER_LINE, XwdHeader.TRUE_COLOR)
+                .masks(0xff0000, 0xff00, 0xff)
+                .build(new byte[BYTES_PER_LINE * HEIGHT]);
+        framebufferFile = tmp.newFile("Xvfb_screen0");
+        try (OutputStream out = new FileOutputStream(framebufferFile)) {
+            out.write(xwd.array(), 0, xwd.limit());
+        }
+        reader = FramebufferReader.open(framebufferFile);
+    }
+
+    @Test
+    public void poll_resolvesAfterChangesStop() throws Exception {
+        FakeClock clock = new FakeClock(3, 5, 5);
+        ScreenStabilityPoller poller = new ScreenStabilityPoller(clock, clock, new FramebufferChangeDetector(reader), Duration.ofMillis(500));
+        PollOutcome<Void> outcome = poller.poll(PollIntervals.regular(100), Duration.ofSeconds(30));
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+        // baseline, 3 changes, then 5 unchanged checks spanning the quiet period
+        assertEquals("attempts", 9, outcome.getNumAttempts());
+    }
+
+    @Test
+    public void poll_changesOutsideRegionIgnored() throws Exception {
+        FakeClock clock = new FakeClock(Integer.MAX_VALUE, 35, 25);
+        FramebufferChangeDetector detector = new FramebufferChangeDetector(reader, new Rectangle(0, 0, 20, 20), 8, 8);
+        ScreenStabilityPoller poller = new ScreenStabilityPoller(clock, clock, detector, Duration.ofMillis(200));
+        PollOutcome<Void> outcome = poller.poll(PollIntervals.regular(100), Duration.ofSeconds(30));
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+        assertEquals("attempts", 3, outcome.getNumAttempts());
+    }
+
+    @Test
+    public void waitForStable_timeout() throws Exception {
+        FakeClock clock = new FakeClock(Integer.MAX_VALUE, 5, 5);
+        ScreenStabilityPoller poller = new ScreenStabilityPoller(clock, clock, new FramebufferChangeDetector(reader), Duration.ofMillis(200));
+        try {
+            ScreenStabilityPoller.waitForStable(poller, Duration.ofMillis(200), Duration.ofMillis(100));
+            fail("should have timed out");
+        } catch (XvfbController.ScreenNotStableException expected) {
+        }
+    }
+
+    @Test
+    public void waitForStable_timeoutMeasuredWithTicker() throws Exception {
+        FakeClock clock = new FakeClock(Integer.MAX_VALUE, 5, 5);
+        ScreenStabilityPoller poller = new ScreenStabilityPoller(clock, clock, new FramebufferChangeDetector(reader), Duration.ofMillis(200));
+        long start = clock.read();
+        try {
+            ScreenStabilityPoller.waitForStable(poller, Duration.ofMillis(200), Duration.ofSeconds(60));
+            fail("should have timed out");
+        } catch (XvfbController.ScreenNotStableException expected) {
+        }
+        long elapsed = clock.read() - start;
+        assertTrue("elapsed on ticker " + elapsed, elapsed >= TimeUnit.SECONDS.toNanos(60) && elapsed < TimeUnit.SECONDS.toNanos(61));
+    }
+
+    @Test
+    public void capturing_resolvesAfterChangesStop() throws Exception {
+        FakeClock clock = new FakeClock(3, 5, 5);
+        Screenshooter<XwdBufferScreenshot> screenshooter = () -> new XwdBufferScreenshot(ByteBuffer.wrap(Files.toByteArray(framebufferFile)));
+        ScreenStabilityPoller poller = ScreenStabilityPoller.capturing(clock, clock, screenshooter, null, Duration.ofMillis(500));
+        PollOutcome<Void> outcome = poller.poll(PollIntervals.regular(100), Duration.ofSeconds(30));
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+        assertEquals("attempts", 9, outcome.getNumAttempts());
+    }
+
+    @Test
+    public void capturing_changesOutsideRegionIgnored() throws Exception {
+        FakeClock clock = new FakeClock(Integer.MAX_VALUE, 35, 25);
+        Screenshooter<XwdBufferScreenshot> screenshooter = () -> new XwdBufferScreenshot(ByteBuffer.wrap(Files.toByteArray(framebufferFile)));
+        ScreenStabilityPoller poller = ScreenStabilityPoller.capturing(clock, clock, screenshooter, new Rectangle(0, 0, 20, 20), Duration.ofMillis(200));
+        PollOutcome<Void> outcome = poller.poll(PollIntervals.regular(100), Duration.ofSeconds(30));
+        assertEquals("reason", StopReason.RESOLVED, outcome.reason);
+        assertEquals("attempts", 3, outcome.getNumAttempts());
+    }
+
+    @Test
+    public void getPollIntervalMs() {
+        assertEquals(10, ScreenStabilityPoller.getPollIntervalMs(Duration.ZERO));
+        assertEquals(50, ScreenStabilityPoller.getPollIntervalMs(Duration.ofMillis(200)));
+        assertEquals(100, ScreenStabilityPoller.getPollIntervalMs(Duration.ofSeconds(5)));
+    }
+
+    /**
+     * Clock whose sleeps advance time and draw a pixel, for a given number of sleeps.
+     */
+    private class FakeClock extends Ticker implements Sleeper {
+
+        private long nanos = 1000000000L;
+        private int remainingChanges;
+        private final int x, y;
+        private int value;
+
+        FakeClock(int numChanges, int x, int y) {
+            this.remainingChanges = numChanges;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        @Override
+        public void sleep(long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+            if (remainingChanges > 0) {
+                remainingChanges--;
+                drawPixel(++value);
+            }
+        }
+
+        private void drawPixel(int rgb) {
+            long offset = reader.getHeader().getPixelDataOffset() + (long) y * BYTES_PER_LINE + x * 4;
+            try (RandomAccessFile file = new RandomAccessFile(framebufferFile, "rw")) {
+                file.seek(offset);
+                // repeat the value in every byte, so that the change is visible through any channel mask
+                file.writeInt(rgb * 0x01010101);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.ScreenshotPipeline.OverflowPolicy;
+import com.github.mike10004.xvfbmanager.ScreenshotPipeline.ScreenshotDroppedException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScreenshotPipelineTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void submit_convertsAndPersists() throws Exception {
+        File dir = tmp.newFolder();
+        CountingScreenshooter screenshooter = new CountingScreenshooter();
+        List<CompletableFuture<ImageioReadableScreenshot>> futures = new ArrayList<>();
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.builder(screenshooter, ScreenshotPipelineTest::upperCase)
+                .sink(ScreenshotPipeline.Sink.toDirectory(dir, ".txt"))
+                .numWorkers(2)
+                .build()) {
+            for (int i = 0; i < 5; i++) {
+                futures.add(pipeline.submit());
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            ImageioReadableScreenshot converted = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("converted", "SHOT" + i, converted.asByteSource().asCharSource(StandardCharsets.US_ASCII).read());
+            File file = new File(dir, String.format("screenshot-%06d.txt", i));
+            assertArrayEquals("persisted " + file, converted.asByteSource().read(), Files.toByteArray(file));
+        }
+    }
+
+    @Test
+    public void submit_dropOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingConverter converter = new BlockingConverter(release);
+        List<CompletableFuture<ImageioReadableScreenshot>> futures = new ArrayList<>();
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.builder(new CountingScreenshooter(), converter)
+                .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .queueCapacity(2)
+                .build()) {
+            futures.add(pipeline.submit());
+            assertTrue("worker started", converter.started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                futures.add(pipeline.submit());
+            }
+            assertEquals("dropped", 2, pipeline.getDroppedCount());
+            release.countDown();
+        }
+        assertCompleted(futures.get(0), "SHOT0");
+        assertDropped(futures.get(1));
+        assertDropped(futures.get(2));
+        assertCompleted(futures.get(3), "SHOT3");
+        assertCompleted(futures.get(4), "SHOT4");
+    }
+
+    @Test
+    public void submit_dropNewest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingConverter converter = new BlockingConverter(release);
+        CountingScreenshooter screenshooter = new CountingScreenshooter();
+        List<CompletableFuture<ImageioReadableScreenshot>> futures = new ArrayList<>();
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.builder(screenshooter, converter)
+                .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .queueCapacity(2)
+                .build()) {
+            futures.add(pipeline.submit());
+            assertTrue("worker started", converter.started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                futures.add(pipeline.submit());
+            }
+            assertEquals("dropped", 2, pipeline.getDroppedCount());
+            assertEquals("snapshots taken", 3, screenshooter.count.get());
+            release.countDown();
+        }
+        assertCompleted(futures.get(0), "SHOT0");
+        assertCompleted(futures.get(1), "SHOT1");
+        assertCompleted(futures.get(2), "SHOT2");
+        assertDropped(futures.get(3));
+        assertDropped(futures.get(4));
+    }
+
+    @Test
+    public void submit_block() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingConverter converter = new BlockingConverter(release);
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.builder(new CountingScreenshooter(), converter)
+                .queueCapacity(1)
+                .build()) {
+            CompletableFuture<ImageioReadableScreenshot> first = pipeline.submit();
+            assertTrue("worker started", converter.started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<ImageioReadableScreenshot> second = pipeline.submit();
+            CompletableFuture<CompletableFuture<ImageioReadableScreenshot>> third = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pipeline.submit();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse("third submission should be blocked", third.isDone());
+            release.countDown();
+            assertCompleted(first, "SHOT0");
+            assertCompleted(second, "SHOT1");
+            assertCompleted(third.get(5, TimeUnit.SECONDS), "SHOT2");
+            assertEquals("dropped", 0, pipeline.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void submit_converterFails() throws Exception {
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.<ImageioReadableScreenshot, ImageioReadableScreenshot>builder(new CountingScreenshooter(), source -> {
+                    throw new IOException("conversion failed");
+                }).build()) {
+            CompletableFuture<ImageioReadableScreenshot> future = pipeline.submit();
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("should have failed");
+            } catch (ExecutionException e) {
+                assertTrue("cause " + e.getCause(), e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void submit_deletesRawFiles() throws Exception {
+        File dir = tmp.newFolder();
+        Screenshooter<XwdFileScreenshot> screenshooter = new Screenshooter<XwdFileScreenshot>() {
+            private int count;
+            @Override
+            public XwdFileScreenshot capture() throws IOException {
+                File file = new File(dir, "raw" + count++);
+                Files.asCharSink(file, StandardCharsets.US_ASCII).write("shot");
+                return XwdFileScreenshot.from(file);
+            }
+        };
+        List<CompletableFuture<ImageioReadableScreenshot>> futures = new ArrayList<>();
+        try (ScreenshotPipeline<XwdFileScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.<XwdFileScreenshot, ImageioReadableScreenshot>builder(screenshooter, source -> new ImageioReadableScreenshot(ByteSource.wrap(source.asByteSource().read())))
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                futures.add(pipeline.submit());
+            }
+        }
+        for (CompletableFuture<ImageioReadableScreenshot> future : futures) {
+            assertEquals("converted", "shot", future.get(5, TimeUnit.SECONDS).asByteSource().asCharSource(StandardCharsets.US_ASCII).read());
+        }
+        assertArrayEquals("files remaining", new String[0], dir.list());
+    }
+
+    @Test
+    public void submit_disposesDropped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingConverter converter = new BlockingConverter(release);
+        List<String> disposed = Collections.synchronizedList(new ArrayList<>());
+        try (ScreenshotPipeline<ImageioReadableScreenshot, ImageioReadableScreenshot> pipeline = ScreenshotPipeline.builder(new CountingScreenshooter(), converter)
+                .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .queueCapacity(1)
+                .disposer(raw -> disposed.add(raw.asByteSource().asCharSource(StandardCharsets.US_ASCII).read()))
+                .build()) {
+            pipeline.submit();
+            assertTrue("worker started", converter.started.await(5, TimeUnit.SECONDS));
+            pipeline.submit();
+            pipeline.submit();
+            assertEquals("disposed while queued", Collections.singletonList("shot1"), disposed);
+            release.countDown();
+        }
+        assertEquals("disposed", ImmutableSet.of("shot0", "shot1", "shot2"), ImmutableSet.copyOf(disposed));
+        assertEquals("disposal count", 3, disposed.size());
+    }
+
+    @Test
+    public void submit_recyclesBuffers() throws Exception {
+        File framebufferDir = tmp.newFolder();
+        int width = 4, height = 2;
+        ByteBuffer xwd = new XwdDecoderTest.XwdBuilder(width, height, 24, 32, width * 4, XwdHeader.TRUE_COLOR)
+                .masks(0xff0000, 0xff00, 0xff)
+                .build(new byte[width * 4 * height]);
+        Files.write(Arrays.copyOf(xwd.array(), xwd.limit()), new File(framebufferDir, "Xvfb_screen0"));
+        BufferRecyclingScreenshooter screenshooter = new BufferRecyclingScreenshooter(new FramebufferDirScreenshooter(framebufferDir, 0, tmp.newFolder()), 2);
+        Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (ScreenshotPipeline<XwdBufferScreenshot, XwdBufferScreenshot> pipeline = ScreenshotPipeline.<XwdBufferScreenshot, XwdBufferScreenshot>builder(screenshooter, source -> {
+                    buffers.add(source.getBuffer());
+                    return new XwdBufferScreenshot(ByteBuffer.wrap(source.asByteSource().read()));
+                })
+                .disposer(screenshooter::recycle)
+                .build()) {
+            for (int i = 0; i < 5; i++) {
+                pipeline.submit().get(5, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals("distinct buffers", 1, buffers.size());
+        assertEquals("pooled", 1, screenshooter.getPooledBufferCount());
+    }
+
+    private static void assertCompleted(CompletableFuture<ImageioReadableScreenshot> future, String expected) throws Exception {
+        assertEquals(expected, future.get(5, TimeUnit.SECONDS).asByteSource().asCharSource(StandardCharsets.US_ASCII).read());
+    }
+
+    private static void assertDropped(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("should have been dropped");
+        } catch (ExecutionException e) {
+            assertTrue("cause " + e.getCause(), e.getCause() instanceof ScreenshotDroppedException);
+        }
+    }
+
+    private static ImageioReadableScreenshot upperCase(ImageioReadableScreenshot source) throws IOException {
+        String text = source.asByteSource().asCharSource(StandardCharsets.US_ASCII).read();
+        return new ImageioReadableScreenshot(ByteSource.wrap(text.toUpperCase().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static class CountingScreenshooter implements Screenshooter<ImageioReadableScreenshot> {
+
+        public final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public ImageioReadableScreenshot capture() {
+            String text = "shot" + count.getAndIncrement();
+            return new ImageioReadableScreenshot(ByteSource.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    private static class BlockingConverter implements ScreenshotConverter<ImageioReadableScreenshot, ImageioReadableScreenshot> {
+
+        public final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        BlockingConverter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public ImageioReadableScreenshot convert(ImageioReadableScreenshot source) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return upperCase(source);
+        }
+    }
+}
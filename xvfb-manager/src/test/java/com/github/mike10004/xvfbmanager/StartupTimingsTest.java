@@ -0,0 +1,66 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.StartupTimings.Phase;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTimingsTest {
+
+    private static class FakeTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong(1000);
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        public void advanceMillis(long millis) {
+            nanos.addAndGet(millis * 1000000);
+        }
+    }
+
+    @Test
+    public void record() {
+        FakeTicker ticker = new FakeTicker();
+        StartupTimings timings = new StartupTimings(ImmutableList.of(), ticker);
+        assertEquals("launch requested", Optional.of(Duration.ZERO), timings.getElapsed(Phase.LAUNCH_REQUESTED));
+        ticker.advanceMillis(5);
+        assertTrue(timings.record(Phase.SPAWNED));
+        ticker.advanceMillis(20);
+        assertTrue(timings.record(Phase.READY));
+        ticker.advanceMillis(100);
+        assertFalse("recorded twice", timings.record(Phase.READY));
+        assertEquals(Optional.of(Duration.ofMillis(5)), timings.getElapsed(Phase.SPAWNED));
+        assertEquals(Optional.of(Duration.ofMillis(25)), timings.getElapsed(Phase.READY));
+        assertEquals(Optional.of(Duration.ofMillis(20)), timings.getBetween(Phase.SPAWNED, Phase.READY));
+        assertEquals(Optional.empty(), timings.getElapsed(Phase.STOP_REQUESTED));
+        assertEquals(Optional.empty(), timings.getBetween(Phase.READY, Phase.STOP_REQUESTED));
+        assertEquals("map keys", ImmutableList.of(Phase.LAUNCH_REQUESTED, Phase.SPAWNED, Phase.READY), ImmutableList.copyOf(timings.toMap().keySet()));
+    }
+
+    @Test
+    public void listeners() {
+        List<Phase> reached = new ArrayList<>();
+        XvfbLifecycleListener failing = (phase, timings) -> {
+            throw new IllegalStateException("expected");
+        };
+        XvfbLifecycleListener collecting = (phase, timings) -> reached.add(phase);
+        StartupTimings timings = new StartupTimings(ImmutableList.of(failing, collecting), new FakeTicker());
+        timings.record(Phase.SPAWNED);
+        timings.record(Phase.SPAWNED);
+        timings.record(Phase.DISPLAY_RESOLVED);
+        assertEquals(ImmutableList.of(Phase.LAUNCH_REQUESTED, Phase.SPAWNED, Phase.DISPLAY_RESOLVED), reached);
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.TallyingHelperProgramMetrics.Tally;
+import com.google.common.collect.ImmutableMap;
+import io.github.mike10004.subprocess.BasicProcessTracker;
+import io.github.mike10004.subprocess.ProcessMonitor;
+import io.github.mike10004.subprocess.Subprocess;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.OptionalInt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TallyingHelperProgramMetricsTest {
+
+    @After
+    public void uninstall() {
+        HelperMetrics.install(HelperProgramMetrics.noop());
+    }
+
+    @Test
+    public void invocationCompleted() {
+        TallyingHelperProgramMetrics metrics = new TallyingHelperProgramMetrics();
+        metrics.invocationCompleted("xdpyinfo", ":1", Duration.ofMillis(10), OptionalInt.of(0));
+        metrics.invocationCompleted("xdpyinfo", ":1", Duration.ofMillis(30), OptionalInt.of(1));
+        metrics.invocationCompleted("xdpyinfo", ":2", Duration.ofMillis(20), OptionalInt.of(0));
+        metrics.invocationCompleted("xdpyinfo", null, Duration.ofMillis(5), OptionalInt.empty());
+        Tally all = metrics.getTally("xdpyinfo").orElseThrow(AssertionError::new);
+        assertEquals("count", 4, all.getCount());
+        assertEquals("total", Duration.ofMillis(65), all.getTotalTime());
+        assertEquals("max", Duration.ofMillis(30), all.getMaxTime());
+        assertEquals("exit codes", ImmutableMap.of(0, 2L, 1, 1L), all.getExitCodeCounts());
+        assertEquals("incomplete", 1, all.getIncompleteCount());
+        Tally display1 = metrics.getTally("xdpyinfo", ":1").orElseThrow(AssertionError::new);
+        assertEquals("display count", 2, display1.getCount());
+        assertEquals("display total", Duration.ofMillis(40), display1.getTotalTime());
+        assertFalse("other program", metrics.getTally("xwd").isPresent());
+    }
+
+    @Test
+    public void await_recordsInstalled() throws Exception {
+        TallyingHelperProgramMetrics metrics = new TallyingHelperProgramMetrics();
+        HelperMetrics.install(metrics);
+        long launchNanos = System.nanoTime();
+        ProcessMonitor<String, String> monitor = Subprocess.running("sh")
+                .args("-c", "exit 3")
+                .build()
+                .launcher(new BasicProcessTracker())
+                .outputStrings(StandardCharsets.US_ASCII)
+                .launch();
+        assertEquals("exit code", 3, HelperMetrics.await("sh", ":99", launchNanos, monitor).exitCode());
+        Tally tally = metrics.getTally("sh", ":99").orElseThrow(AssertionError::new);
+        assertEquals("exit codes", ImmutableMap.of(3, 1L), tally.getExitCodeCounts());
+        assertTrue("elapsed recorded", tally.getTotalTime().toNanos() > 0);
+    }
+}
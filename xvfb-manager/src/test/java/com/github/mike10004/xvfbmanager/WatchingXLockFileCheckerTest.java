@@ -0,0 +1,126 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.DefaultXvfbController.XLockFileChecker.LockFileCleanupTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WatchingXLockFileCheckerTest {
+
+    private static final String DISPLAY = ":77";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private XLockFileUtility lockFileUtility;
+    private PollingXLockFileChecker fallback;
+    private WatchingXLockFileChecker checker;
+
+    @Before
+    public void setUp() throws Exception {
+        File lockDir = tmp.newFolder();
+        lockFileUtility = new XLockFileUtility(name -> "TMPDIR".equals(name) ? lockDir.getAbsolutePath() : null);
+        fallback = new PollingXLockFileChecker(PollIntervals.regular(100), Sleeper.DefaultSleeper.getInstance(), lockFileUtility);
+        checker = new WatchingXLockFileChecker(fallback, lockFileUtility, 100);
+    }
+
+    @After
+    public void closeChecker() throws Exception {
+        checker.close();
+    }
+
+    @Test
+    public void waitForCleanup_alreadyAbsent() throws Exception {
+        checker.waitForCleanup(DISPLAY, 1000);
+    }
+
+    @Test
+    public void waitForCleanup_deletedLater() throws Exception {
+        File lockFile = lockFileUtility.constructLockFilePathname(DISPLAY);
+        assertTrue("created", lockFile.createNewFile());
+        CompletableFuture<Void> deletion = CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            assertTrue("deleted", lockFile.delete());
+        });
+        long start = System.nanoTime();
+        checker.waitForCleanup(DISPLAY, 5000);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        deletion.get(5, TimeUnit.SECONDS);
+        assertTrue("returned before timeout: " + elapsedMs, elapsedMs < 5000);
+    }
+
+    @Test
+    public void waitForCleanup_noWatchEvents() throws Exception {
+        checker = new WatchingXLockFileChecker(fallback, lockFileUtility, 50) {
+            @Override
+            WatchService watch(Path directory) {
+                return new SilentWatchService();
+            }
+        };
+        waitForCleanup_deletedLater();
+    }
+
+    @Test
+    public void waitForCleanup_reusesWatchService() throws Exception {
+        File lockFile = lockFileUtility.constructLockFilePathname(DISPLAY);
+        WatchService first = checker.watch(lockFile.getParentFile().toPath());
+        waitForCleanup_deletedLater();
+        assertSame("watch service", first, checker.watch(lockFile.getParentFile().toPath()));
+    }
+
+    @Test
+    public void waitForCleanup_closed() throws Exception {
+        checker.close();
+        waitForCleanup_deletedLater();
+    }
+
+    @Test(expected = LockFileCleanupTimeoutException.class)
+    public void waitForCleanup_timeout() throws Exception {
+        File lockFile = lockFileUtility.constructLockFilePathname(DISPLAY);
+        assertTrue("created", lockFile.createNewFile());
+        checker.waitForCleanup(DISPLAY, 200);
+    }
+
+    /**
+     * Watch service that never delivers events, like a polling watch service
+     * whose poll interval is longer than the wait.
+     */
+    private static class SilentWatchService implements WatchService {
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public WatchKey poll() {
+            return null;
+        }
+
+        @Override
+        public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+            unit.sleep(timeout);
+            return null;
+        }
+
+        @Override
+        public WatchKey take() throws InterruptedException {
+            throw new InterruptedException("never signaled");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbunittesthelp.PackageManager;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class X11ConnectionReadinessCheckerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void parseDisplayNumber() {
+        assertEquals(99, X11ConnectionReadinessChecker.parseDisplayNumber(":99"));
+        assertEquals(7, X11ConnectionReadinessChecker.parseDisplayNumber(":7.0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseDisplayNumber_invalid() {
+        X11ConnectionReadinessChecker.parseDisplayNumber("localhost:1");
+    }
+
+    @Test(timeout = 2000)
+    public void awaitSelected_lessThanOneMillisecondRemaining() throws Exception {
+        try (Selector selector = Selector.open()) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(500);
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                X11ConnectionReadinessChecker.awaitSelected(selector, deadline, "read");
+            }
+        } catch (IOException expected) {
+            assertEquals("read timed out", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void handshake_tcp_success() throws Exception {
+        assertTrue("ready", handshakeTcp((byte) 1));
+    }
+
+    @Test
+    public void handshake_tcp_refused() throws Exception {
+        assertFalse("ready despite refusal", handshakeTcp((byte) 0));
+    }
+
+    @Test
+    public void checkReadiness_tcp_nothingListening() throws Exception {
+        int port;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        }
+        Assume.assumeTrue("ephemeral port below X display port range", port > 6000);
+        X11ConnectionReadinessChecker checker = new X11ConnectionReadinessChecker("127.0.0.1", 500);
+        assertFalse(checker.checkReadiness(":" + (port - 6000)));
+    }
+
+    @Test
+    public void checkReadiness_unix_success() throws Exception {
+        Assume.assumeTrue("Unix domain sockets not supported on this runtime", X11ConnectionReadinessChecker.isUnixDomainSocketSupported());
+        File socketDir = tmp.newFolder();
+        Path socketPath = new File(socketDir, "X42").toPath();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = openUnixServer(socketPath)) {
+            Future<byte[]> requestFuture = executor.submit(() -> serveOne(server, (byte) 1));
+            X11ConnectionReadinessChecker checker = new X11ConnectionReadinessChecker(X11ConnectionReadinessChecker.Transport.UNIX, socketDir, "localhost", 2000);
+            assertTrue("ready", checker.checkReadiness(":42"));
+            assertSetupRequest(requestFuture.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkReadiness_unix_noSocket() throws Exception {
+        Assume.assumeTrue("Unix domain sockets not supported on this runtime", X11ConnectionReadinessChecker.isUnixDomainSocketSupported());
+        X11ConnectionReadinessChecker checker = new X11ConnectionReadinessChecker(X11ConnectionReadinessChecker.Transport.UNIX, tmp.newFolder(), "localhost", 500);
+        assertFalse(checker.checkReadiness(":42"));
+    }
+
+    @Test(timeout = 30000)
+    public void start_tcpListening_passesListenArgument() throws Exception {
+        File argsFile = new File(tmp.getRoot(), "args.txt");
+        File fakeXvfb = tmp.newFile("Xvfb");
+        String script = "#!/bin/sh\n"
+                + "printf '%s\\n' \"$@\" > '" + argsFile + ".tmp'\n"
+                + "mv '" + argsFile + ".tmp' '" + argsFile + "'\n"
+                + "exec sleep 30\n";
+        Files.write(fakeXvfb.toPath(), script.getBytes(StandardCharsets.US_ASCII));
+        assertTrue("set executable", fakeXvfb.setExecutable(true));
+        XvfbConfig config = XvfbConfig.getDefault().withTcpListening();
+        try (XvfbController ignore = new XvfbManager(fakeXvfb, config).start(42, tmp.newFolder().toPath())) {
+            while (!argsFile.isFile()) {
+                Thread.sleep(25);
+            }
+        }
+        List<String> args = Files.readAllLines(argsFile.toPath(), StandardCharsets.US_ASCII);
+        List<String> listenArgs = Arrays.asList("-listen", "tcp");
+        assertEquals("args " + args, listenArgs, args.subList(args.size() - 2, args.size()));
+    }
+
+    @Test
+    public void checkReadiness_tcp_xvfbListeningOnTcp() throws Exception {
+        Assume.assumeTrue("Xvfb must be installed", PackageManager.getInstance().queryCommandExecutable("Xvfb"));
+        XvfbManager manager = new XvfbManager(XvfbConfig.getDefault().withTcpListening());
+        X11ConnectionReadinessChecker checker = new X11ConnectionReadinessChecker("localhost", 1000);
+        try (XvfbController ctrl = manager.start(tmp.newFolder().toPath())) {
+            ctrl.waitUntilReady(Tests.getReadinessPollIntervalMs(), Tests.getMaxReadinessPolls());
+            assertTrue("ready over TCP", checker.checkReadiness(ctrl.getDisplay()));
+        }
+    }
+
+    private boolean handshakeTcp(byte status) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Future<byte[]> requestFuture = executor.submit(() -> serveOne(server, status));
+            boolean ready;
+            try (SocketChannel client = SocketChannel.open()) {
+                ready = X11ConnectionReadinessChecker.handshake(client, server.getLocalAddress(), 2000);
+            }
+            assertSetupRequest(requestFuture.get(5, TimeUnit.SECONDS));
+            return ready;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertSetupRequest(byte[] request) {
+        byte[] expected = {'l', 0, 11, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertArrayEquals("setup request", expected, request);
+    }
+
+    /**
+     * Accepts one connection, reads a setup request, and responds with a
+     * response header that has the given status.
+     */
+    private static byte[] serveOne(ServerSocketChannel server, byte status) throws IOException {
+        try (SocketChannel conn = server.accept()) {
+            ByteBuffer request = ByteBuffer.allocate(12);
+            while (request.hasRemaining()) {
+                if (conn.read(request) < 0) {
+                    break;
+                }
+            }
+            ByteBuffer response = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            response.put(status).put((byte) 0).putShort((short) 11).putShort((short) 0).putShort((short) 0);
+            response.flip();
+            while (response.hasRemaining()) {
+                conn.write(response);
+            }
+            return request.array();
+        }
+    }
+
+    private static ServerSocketChannel openUnixServer(Path socketPath) throws Exception {
+        ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+        ServerSocketChannel server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, socketPath);
+        server.bind(address);
+        return server;
+    }
+}
@@ -47,6 +47,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class XvfbManagerTest {
@@ -112,6 +113,26 @@ public class XvfbManagerTest {
         testWithConfigAndDisplay(new XvfbConfig("640x480x24"), null);
     }
 
+    @Test
+    public void reset_clearsClientWindows() throws Exception {
+        System.out.println("\nreset_clearsClientWindows\n");
+        Assumptions.assumeTrue("imagemagick must be installed", PackageManager.getInstance().checkImageMagickInstalled());
+        File imageFile = new File(XvfbManager.class.getResource("/example.jpg").toURI());
+        Predicate<XWindow> imageWindowFinder = input -> input != null && ("ImageMagick: " + imageFile.getName()).equals(input.title);
+        try (XLockFileResource xlf = new XLockFileResource(_PRESUMABLY_VACANT_DISPLAY_NUM);
+             XvfbController ctrl = new XvfbManager().start(xlf.getDisplayNum(), tmp.newFolder().toPath())) {
+            ctrl.waitUntilReady(Tests.getReadinessPollIntervalMs(), Tests.getMaxReadinessPolls());
+            ProcessMonitor<String, String> graphicalProgramFuture = launchProgramOnDisplay(ctrl.getDisplay(), imageFile);
+            try {
+                checkState(ctrl.pollForWindow(imageWindowFinder, 250, 4).isPresent(), "never saw image magick window");
+                ((DefaultXvfbController) ctrl).reset();
+                assertFalse("window present after reset", ctrl.pollForWindow(imageWindowFinder, 100, 1).isPresent());
+            } finally {
+                graphicalProgramFuture.destructor().sendTermSignal().await(1, TimeUnit.SECONDS).kill();
+            }
+        }
+    }
+
     private void testWithConfigAndDisplay(XvfbConfig config, @Nullable Integer displayNumber) throws Exception {
         Assumptions.assumeTrue("imagemagick must be installed", PackageManager.getInstance().checkImageMagickInstalled());
         XvfbManager instance = new XvfbManager(config) {
@@ -0,0 +1,169 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.xvfbmanager.XvfbPool.Lease;
+import com.github.mike10004.xvfbmanager.XvfbPool.PoolExhaustedException;
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class XvfbPoolTest {
+
+    private static final long WAIT_MS = 5000;
+
+    @Test
+    public void lease_warm() throws Exception {
+        AtomicInteger startCount = new AtomicInteger();
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(startCount.incrementAndGet())).minIdle(2).build()) {
+            awaitIdle(pool, 2);
+            try (Lease lease = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                assertTrue("ready", ((FakeXvfbController) lease.getController()).ready.get());
+                awaitIdle(pool, 2);
+                assertEquals("total", 3, pool.getTotalCount());
+            }
+        }
+    }
+
+    @Test
+    public void close_returnsHealthyDisplay() throws Exception {
+        AtomicInteger startCount = new AtomicInteger();
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(startCount.incrementAndGet())).minIdle(1).maxTotal(1).build()) {
+            Lease lease = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            XvfbController first = lease.getController();
+            lease.close();
+            try (Lease again = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                assertSame("reused", first, again.getController());
+            }
+            assertEquals("starts", 1, startCount.get());
+        }
+    }
+
+    @Test
+    public void close_discardsUnhealthyDisplay() throws Exception {
+        AtomicInteger startCount = new AtomicInteger();
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(startCount.incrementAndGet()))
+                .minIdle(1).maxTotal(1)
+                .healthCheck(c -> false)
+                .build()) {
+            Lease lease = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            FakeXvfbController first = (FakeXvfbController) lease.getController();
+            lease.close();
+            try (Lease again = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                assertNotSame("replaced", first, again.getController());
+            }
+            assertTrue("stopped", first.stopped.get());
+        }
+    }
+
+    @Test
+    public void close_discardsDeadDisplay() throws Exception {
+        AtomicInteger startCount = new AtomicInteger();
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(startCount.incrementAndGet())).minIdle(1).maxTotal(1).build()) {
+            Lease lease = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            FakeXvfbController first = (FakeXvfbController) lease.getController();
+            first.alive.set(false);
+            lease.close();
+            try (Lease again = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                assertNotSame("replaced", first, again.getController());
+            }
+            assertTrue("stopped", first.stopped.get());
+        }
+    }
+
+    @Test(expected = PoolExhaustedException.class)
+    public void lease_exhausted() throws Exception {
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(1)).minIdle(0).maxTotal(1).build()) {
+            try (Lease ignore = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS)) {
+                assertFalse(pool.tryLease().isPresent());
+                pool.lease(50, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void evictExpired() throws Exception {
+        AtomicLong nanos = new AtomicLong(0);
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        AtomicInteger startCount = new AtomicInteger();
+        try (XvfbPool pool = XvfbPool.builder(() -> new FakeXvfbController(startCount.incrementAndGet()))
+                .minIdle(1)
+                .idleTtl(Duration.ofHours(1))
+                .ticker(ticker)
+                .build()) {
+            Lease a = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            Lease b = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            a.close();
+            b.close();
+            awaitIdle(pool, 3);
+            nanos.addAndGet(Duration.ofHours(2).toNanos());
+            pool.evictExpired();
+            assertEquals("idle after eviction", 1, pool.getIdleCount());
+            Optional<Lease> remaining = pool.tryLease();
+            assertTrue("lease present", remaining.isPresent());
+        }
+    }
+
+    @Test
+    public void evictExpired_afterRefill() throws Exception {
+        AtomicLong nanos = new AtomicLong(0);
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        List<FakeXvfbController> started = new CopyOnWriteArrayList<>();
+        try (XvfbPool pool = XvfbPool.builder(() -> {
+                    FakeXvfbController controller = new FakeXvfbController(started.size() + 1);
+                    started.add(controller);
+                    return controller;
+                })
+                .minIdle(3)
+                .idleTtl(Duration.ofHours(1))
+                .ticker(ticker)
+                .build()) {
+            awaitIdle(pool, 3);
+            nanos.addAndGet(Duration.ofHours(2).toNanos());
+            Lease lease = pool.lease(WAIT_MS, TimeUnit.MILLISECONDS);
+            awaitIdle(pool, 3);
+            assertEquals("starts", 4, started.size());
+            FakeXvfbController fresh = started.get(3);
+            lease.close();
+            awaitIdle(pool, 4);
+            pool.evictExpired();
+            assertEquals("idle after eviction", 3, pool.getIdleCount());
+            List<FakeXvfbController> stopped = started.stream().filter(c -> c.stopped.get()).collect(Collectors.toList());
+            assertEquals("stopped", 1, stopped.size());
+            assertNotSame("evicted display", fresh, stopped.get(0));
+            assertNotSame("evicted display", lease.getController(), stopped.get(0));
+        }
+    }
+
+    private static void awaitIdle(XvfbPool pool, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (pool.getIdleCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("idle count never reached " + count + ": " + pool);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.common.io.ByteSources;
+import com.github.mike10004.xvfbmanager.XwdDecoder.UnsupportedXwdFormatException;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class XwdDecoderTest {
+
+    static ByteBuffer loadExample() throws IOException {
+        return ByteBuffer.wrap(ByteSources.gunzipping(XwdDecoderTest.class.getResource("/example.xwd.gz")).read());
+    }
+
+    @Test
+    public void decode_example() throws Exception {
+        ByteBuffer xwd = loadExample();
+        BufferedImage image = new XwdDecoder().decode(xwd);
+        assertEquals("width", 1280, image.getWidth());
+        assertEquals("height", 1024, image.getHeight());
+        assertEquals("position unchanged", 0, xwd.position());
+        XwdHeader header = XwdHeader.parse(xwd);
+        ByteBuffer pixels = xwd.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int[][] points = {{0, 0}, {640, 512}, {1279, 1023}, {17, 900}};
+        for (int[] p : points) {
+            int expected = pixels.getInt(header.getPixelDataOffset() + p[1] * header.getBytesPerLine() + p[0] * 4) & 0xffffff;
+            assertEquals("pixel at " + p[0] + "," + p[1], expected, image.getRGB(p[0], p[1]) & 0xffffff);
+        }
+    }
+
+    @Test
+    public void decodePixels_reuse() throws Exception {
+        ByteBuffer xwd = loadExample();
+        XwdDecoder decoder = new XwdDecoder();
+        int[] pixels = decoder.decodePixels(xwd, null);
+        assertEquals("length", 1280 * 1024, pixels.length);
+        assertSame("reused", pixels, decoder.decodePixels(xwd, pixels));
+    }
+
+    @Test
+    public void decode_16bitTrueColor() throws Exception {
+        // 5-6-5, most significant byte first, with padding at the end of each row
+        ByteBuffer pixelData = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+        pixelData.putShort((short) 0xf800).putShort((short) 0x07e0).putShort((short) 0);
+        pixelData.putShort((short) 0x001f).putShort((short) 0xffff).putShort((short) 0);
+        ByteBuffer xwd = new XwdBuilder(2, 2, 16, 16, 6, XwdHeader.TRUE_COLOR)
+                .byteOrder(XwdHeader.MSB_FIRST)
+                .masks(0xf800, 0x07e0, 0x001f)
+                .build(pixelData.array());
+        assertArrayEquals(new int[]{0xff0000, 0x00ff00, 0x0000ff, 0xffffff}, new XwdDecoder().decodePixels(xwd, null));
+    }
+
+    @Test
+    public void decode_24bitPacked() throws Exception {
+        byte[] pixelData = {
+                0x33, 0x22, 0x11, 0x66, 0x55, 0x44,
+        };
+        ByteBuffer xwd = new XwdBuilder(2, 1, 24, 24, 6, XwdHeader.TRUE_COLOR)
+                .masks(0xff0000, 0xff00, 0xff)
+                .build(pixelData);
+        assertArrayEquals(new int[]{0x112233, 0x445566}, new XwdDecoder().decodePixels(xwd, null));
+    }
+
+    @Test
+    public void decode_8bitPseudoColor() throws Exception {
+        byte[] pixelData = {0, 5, 5, 0};
+        ByteBuffer xwd = new XwdBuilder(2, 2, 8, 8, 2, XwdHeader.PSEUDO_COLOR)
+                .color(0, 0xffff, 0, 0)
+                .color(5, 0x8000, 0x8000, 0xffff)
+                .build(pixelData);
+        assertArrayEquals(new int[]{0xff0000, 0x8080ff, 0x8080ff, 0xff0000}, new XwdDecoder().decodePixels(xwd, null));
+    }
+
+    @Test(expected = UnsupportedXwdFormatException.class)
+    public void decode_xyPixmap() throws Exception {
+        ByteBuffer xwd = new XwdBuilder(8, 1, 1, 1, 1, XwdHeader.STATIC_GRAY)
+                .format(XwdHeader.XY_PIXMAP)
+                .build(new byte[1]);
+        new XwdDecoder().decode(xwd);
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_truncated() throws Exception {
+        ByteBuffer xwd = loadExample();
+        xwd.limit(xwd.limit() - 1);
+        new XwdDecoder().decode(xwd);
+    }
+
+    static class XwdBuilder {
+
+        private final int width, height, depth, bitsPerPixel, bytesPerLine, visualClass;
+        private int format = XwdHeader.Z_PIXMAP;
+        private int byteOrder = XwdHeader.LSB_FIRST;
+        private int redMask, greenMask, blueMask;
+        private final ByteBuffer colormap = ByteBuffer.allocate(256 * XwdHeader.COLOR_SIZE);
+        private int ncolors;
+
+        XwdBuilder(int width, int height, int depth, int bitsPerPixel, int bytesPerLine, int visualClass) {
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.bitsPerPixel = bitsPerPixel;
+            this.bytesPerLine = bytesPerLine;
+            this.visualClass = visualClass;
+        }
+
+        XwdBuilder format(int format) {
+            this.format = format;
+            return this;
+        }
+
+        XwdBuilder byteOrder(int byteOrder) {
+            this.byteOrder = byteOrder;
+            return this;
+        }
+
+        XwdBuilder masks(int red, int green, int blue) {
+            redMask = red;
+            greenMask = green;
+            blueMask = blue;
+            return this;
+        }
+
+        XwdBuilder color(int pixel, int red, int green, int blue) {
+            colormap.putInt(pixel).putShort((short) red).putShort((short) green).putShort((short) blue).put((byte) 7).put((byte) 0);
+            ncolors++;
+            return this;
+        }
+
+        ByteBuffer build(byte[] pixelData) {
+            byte[] name = "test\0".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            int headerSize = XwdHeader.FIXED_SIZE + name.length;
+            ByteBuffer b = ByteBuffer.allocate(headerSize + ncolors * XwdHeader.COLOR_SIZE + pixelData.length);
+            b.putInt(headerSize).putInt(XwdHeader.VERSION).putInt(format).putInt(depth)
+                    .putInt(width).putInt(height).putInt(0).putInt(byteOrder)
+                    .putInt(32).putInt(byteOrder).putInt(32).putInt(bitsPerPixel).putInt(bytesPerLine)
+                    .putInt(visualClass).putInt(redMask).putInt(greenMask).putInt(blueMask)
+                    .putInt(8).putInt(256).putInt(ncolors)
+                    .putInt(width).putInt(height).putInt(0).putInt(0).putInt(0);
+            b.put(name);
+            b.put(colormap.array(), 0, ncolors * XwdHeader.COLOR_SIZE);
+            b.put(pixelData);
+            b.flip();
+            return b;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.mike10004.xvfbmanager;
+
+import com.github.mike10004.common.image.ImageInfo;
+import com.github.mike10004.common.image.ImageInfos;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class XwdToPngConverterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void convert() throws Exception {
+        ByteBuffer xwd = XwdDecoderTest.loadExample();
+        ImageioReadableScreenshot pngShot = new XwdToPngConverter().convert(new XwdBufferScreenshot(xwd));
+        ImageInfo info = ImageInfos.read(pngShot.asByteSource());
+        assertEquals("format", ImageInfo.Format.PNG, info.getFormat());
+        BufferedImage expected = new XwdDecoder().decode(xwd);
+        BufferedImage actual;
+        try (InputStream in = pngShot.asByteSource().openStream()) {
+            actual = ImageIO.read(in);
+        }
+        assertEquals("width", expected.getWidth(), actual.getWidth());
+        assertEquals("height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 97) {
+            for (int x = 0; x < expected.getWidth(); x += 89) {
+                assertEquals("pixel at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void convert_toSink() throws Exception {
+        ByteBuffer xwd = XwdDecoderTest.loadExample();
+        File pngFile = tmp.newFile("example.png");
+        new XwdToPngConverter(new PngEncoder(1, PngEncoder.Filter.SUB)).convert(new XwdBufferScreenshot(xwd), Files.asByteSink(pngFile));
+        BufferedImage actual = ImageIO.read(pngFile);
+        BufferedImage expected = new XwdDecoder().decode(xwd);
+        assertEquals("pixel", expected.getRGB(640, 512), actual.getRGB(640, 512));
+        assertEquals("pixel", expected.getRGB(1279, 1023), actual.getRGB(1279, 1023));
+    }
+
+    @Test
+    public void convert_parallelEncoder() throws Exception {
+        ByteBuffer xwd = XwdDecoderTest.loadExample();
+        File pngFile = tmp.newFile("example.png");
+        ImageEncoder encoder = new ParallelPngEncoder(1, PngEncoder.Filter.SUB, ForkJoinPool.commonPool(), 64 * 1024);
+        new XwdToPngConverter(encoder).convert(new XwdBufferScreenshot(xwd), Files.asByteSink(pngFile));
+        BufferedImage actual = ImageIO.read(pngFile);
+        BufferedImage expected = new XwdDecoder().decode(xwd);
+        assertEquals("pixel", expected.getRGB(0, 0), actual.getRGB(0, 0));
+        assertEquals("pixel", expected.getRGB(640, 512), actual.getRGB(640, 512));
+        assertEquals("pixel", expected.getRGB(1279, 1023), actual.getRGB(1279, 1023));
+    }
+}
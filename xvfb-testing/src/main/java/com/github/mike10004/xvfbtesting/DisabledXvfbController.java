@@ -12,10 +12,13 @@ import com.github.mike10004.xvfbmanager.XvfbController;
 import com.github.mike10004.xvfbmanager.XvfbException;
 
 import javax.annotation.Nullable;
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 class DisabledXvfbController implements XvfbController {
@@ -43,6 +46,26 @@ class DisabledXvfbController implements XvfbController {
     public void waitUntilReady(long pollIntervalMs, int maxNumPolls) {
     }
 
+    /**
+     * Returns an already-completed future.
+     * @return a completed future
+     */
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns an already-completed future.
+     * @param pollIntervalMs ignored
+     * @param maxNumPolls ignored
+     * @return a completed future
+     */
+    @Override
+    public CompletableFuture<Void> waitUntilReadyAsync(long pollIntervalMs, int maxNumPolls) {
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Does nothing.
      */
@@ -50,6 +73,15 @@ class DisabledXvfbController implements XvfbController {
     public void stop() {
     }
 
+    /**
+     * Returns an already-completed future.
+     * @return a completed future
+     */
+    @Override
+    public CompletableFuture<Void> stopAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Always returns null.
      * @return null
@@ -95,6 +127,28 @@ class DisabledXvfbController implements XvfbController {
         return Optional.empty();
     }
 
+    /**
+     * Returns a future already completed with absent.
+     * @param windowFinder the predicate
+     * @param intervalMs the interval
+     * @param maxPollAttempts the max poll attempts
+     * @return a future completed with {@link Optional#empty()}
+     */
+    @Override
+    public CompletableFuture<Optional<TreeNode<XWindow>>> pollForWindowAsync(Predicate<XWindow> windowFinder, long intervalMs, int maxPollAttempts) {
+        return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    /**
+     * Returns immediately without doing anything.
+     * @param quietPeriod ignored
+     * @param timeout ignored
+     * @param region ignored
+     */
+    @Override
+    public void waitForScreenStable(Duration quietPeriod, Duration timeout, @Nullable Rectangle region) {
+    }
+
     /**
      * Does nothing.
      */
@@ -3,6 +3,8 @@ package com.github.mike10004.xvfbtesting;
 import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 
+import java.time.Duration;
+
 import static org.junit.Assert.*;
 
 public class DisabledXvfbControllerTest {
@@ -12,4 +14,9 @@ public class DisabledXvfbControllerTest {
         assertEquals(ImmutableMap.of(), DisabledXvfbController.getInstance().configureEnvironment(ImmutableMap.of()));
     }
 
+    @Test(timeout = 1000)
+    public void waitForScreenStable() throws Exception {
+        DisabledXvfbController.getInstance().waitForScreenStable(Duration.ofMinutes(1), Duration.ofMinutes(5));
+    }
+
 }
\ No newline at end of file